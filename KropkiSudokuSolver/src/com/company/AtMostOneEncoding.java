@@ -0,0 +1,18 @@
+package com.company;
+
+/**
+ * The ways of saying that at most one of a group of literals is true, used for the uniqueness of
+ * every cell, row and column.
+ * <ul>
+ *   <li>Pairwise: a binary clause for every pair of literals, with no extra variables.</li>
+ *   <li>Sequential: Sinz's sequential counter, 3k - 4 clauses and k - 1 extra variables.</li>
+ *   <li>Commander: groups of three literals, each with a commander variable, with the commanders
+ *   themselves constrained recursively.</li>
+ *   <li>Product: Chen's product encoding, placing the literals on a grid and constraining its rows
+ *   and columns.</li>
+ *   <li>Cardinality: a native SAT4J at most constraint, with no clauses at all.</li>
+ *   <li>ExactlyOne: a native SAT4J exactly one constraint for every cell, row, column and box,
+ *   replacing both their definedness and uniqueness clauses.</li>
+ * </ul>
+ */
+public enum AtMostOneEncoding{Pairwise, Sequential, Commander, Product, Cardinality, ExactlyOne};
@@ -0,0 +1,445 @@
+package com.company;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import org.sat4j.core.VecInt;
+import org.sat4j.specs.ContradictionException;
+import org.sat4j.specs.ISolver;
+import org.sat4j.specs.IVecInt;
+
+/**
+ * The clauses shared by every sudoku puzzle of a board shape, no matter which Kropki dots it has.
+ * These are the definedness and uniqueness clauses for every cell, along with the definedness
+ * clauses for every row, column and block. They are built once per JVM for each board shape and
+ * stored as a flat array of literals, with the start of each clause kept in a separate array of
+ * offsets, so that each puzzle only has to copy them into its solver. How the uniqueness clauses
+ * are written depends on the AtMostOneEncoding, and encodings other than pairwise add extra
+ * variables numbered after the cell variables. The cardinality encoding keeps each group of
+ * literals as a native at most one constraint instead of clauses, and the exactly one encoding
+ * turns every definedness clause into a native exactly one constraint with no uniqueness clauses.
+ *
+ * Once every cell holds exactly one value and every row holds every value, no row can hold a
+ * value twice, so the uniqueness clauses of rows and columns are redundant. They still help the
+ * solver propagate on small boards, but grow as O(n^4), so they are only added on boards up to
+ * 9x9.
+ */
+public final class BaseClauseSet {
+
+  /**
+   * Represents a type of cell constraint, either individual, row, or column.
+   */
+  public enum Type{Individual, Row, Column};
+
+  /**
+   * The largest board that still gets the redundant row and column uniqueness clauses.
+   */
+  public static final int REDUNDANT_UNIQUENESS_LIMIT = 9;
+
+  private static final ConcurrentHashMap<SudokuEncoder,
+      ConcurrentHashMap<AtMostOneEncoding, BaseClauseSet>> INSTANCES = new ConcurrentHashMap<>();
+
+  private static final byte CLAUSE = 0;
+  private static final byte AT_MOST_ONE = 1;
+  private static final byte EXACTLY_ONE = 2;
+
+  private final SudokuEncoder encoder;
+  private final AtMostOneEncoding encoding;
+  private int[] literals;
+  private int[] offsets;
+  private byte[] kinds;
+  private int size;
+  private int literalCount;
+  private int variables;
+
+  /**
+   * Builds every base clause into the literal arena.
+   * @param encoder The shape of the board.
+   * @param encoding The encoding of the uniqueness clauses.
+   */
+  private BaseClauseSet(SudokuEncoder encoder, AtMostOneEncoding encoding) {
+    this.encoder = encoder;
+    this.encoding = encoding;
+    this.literals = new int[1024];
+    this.offsets = new int[256];
+    this.kinds = new byte[256];
+    this.size = 0;
+    this.literalCount = 0;
+    this.variables = encoder.numberOfVariables();
+    boolean redundant = encoder.getSize() <= REDUNDANT_UNIQUENESS_LIMIT;
+    // Individual Cell Clauses
+    formatClauses(Type.Individual, true);
+    // Row Clauses
+    formatClauses(Type.Row, redundant);
+    // Column Clauses
+    formatClauses(Type.Column, redundant);
+    // Block Clauses
+    formatBlockClauses();
+    this.literals = Arrays.copyOf(literals, literalCount);
+    this.offsets = Arrays.copyOf(offsets, size + 1);
+    this.kinds = Arrays.copyOf(kinds, size);
+  }
+
+  /**
+   * Getter for the shared set of base clauses of the standard 9x9 board.
+   * @return The base clauses, built on the first call.
+   */
+  public static BaseClauseSet getInstance() {
+    return forBoard(SudokuEncoder.getStandard());
+  }
+
+  /**
+   * Getter for the shared set of base clauses of a board shape.
+   * @param encoder The shape of the board.
+   * @return The base clauses, built on the first call for the shape.
+   */
+  public static BaseClauseSet forBoard(SudokuEncoder encoder) {
+    return forBoard(encoder, AtMostOneEncoding.Pairwise);
+  }
+
+  /**
+   * Getter for the shared set of base clauses of a board shape and uniqueness encoding.
+   * @param encoder The shape of the board.
+   * @param encoding The encoding of the uniqueness clauses.
+   * @return The base clauses, built on the first call for the shape and encoding.
+   */
+  public static BaseClauseSet forBoard(SudokuEncoder encoder, AtMostOneEncoding encoding) {
+    return INSTANCES.computeIfAbsent(encoder, e -> new ConcurrentHashMap<>())
+        .computeIfAbsent(encoding, m -> new BaseClauseSet(encoder, m));
+  }
+
+  /**
+   * Getter for the number of clauses in the set, counting each native constraint as one.
+   * @return The number of base clauses.
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Getter for the number of literals in the set.
+   * @return The number of literals over every clause.
+   */
+  public int literalCount() {
+    return literalCount;
+  }
+
+  /**
+   * Getter for the number of variables used, which is also the highest one. Any variables a
+   * solver adds on top of these have to be numbered after it.
+   * @return The number of cell variables plus any extra variables of the encoding.
+   */
+  public int numberOfVariables() {
+    return variables;
+  }
+
+  /**
+   * Adds every base clause to the given solver.
+   * @param solver The solver to add the clauses to.
+   * @param clause The buffer used to build each clause.
+   * @throws ContradictionException If the solver finds the clauses trivially unsatisfiable.
+   */
+  public void addTo(ISolver solver, IVecInt clause) throws ContradictionException {
+    for (int c = 0; c < size; c++) {
+      clause.clear();
+      for (int l = offsets[c]; l < offsets[c + 1]; l++) {
+        clause.push(literals[l]);
+      }
+      if (kinds[c] == AT_MOST_ONE) {
+        solver.addAtMost(clause, 1);
+      } else if (kinds[c] == EXACTLY_ONE) {
+        solver.addExactly(clause, 1);
+      } else {
+        solver.addClause(clause);
+      }
+    }
+  }
+
+  /**
+   * Adds every base clause to the given solver.
+   * @param solver The solver to add the clauses to.
+   * @throws ContradictionException If the solver finds the clauses trivially unsatisfiable.
+   */
+  public void addTo(ISolver solver) throws ContradictionException {
+    addTo(solver, new VecInt(encoder.getSize()));
+  }
+
+  /**
+   * Formats both definedness and uniqueness clauses for individual, row, or column.
+   * @param type The type of constraint to add.
+   * @param uniqueness Whether to add the uniqueness clauses too.
+   */
+  private void formatClauses(Type type, boolean uniqueness) {
+    formatDefinedNessClauses(type);
+    if (uniqueness && encoding != AtMostOneEncoding.ExactlyOne) {
+      formatUniquenessClauses(type);
+    }
+  }
+
+  /**
+   * Formats definedness clauses for constraints of a certain type.
+   * @param type The type of constraints to add.
+   * @throws IllegalArgumentException If type is invalid.
+   */
+  private void formatDefinedNessClauses(Type type) throws IllegalArgumentException {
+    int n = encoder.getSize();
+    for (int i = 1; i <= n; i++) {
+      for (int j = 1; j <= n; j++) {
+        for (int k = 1; k <= n; k++) {
+          int val;
+          switch(type) {
+            case Individual:
+              val = encoder.var(i, j, k);
+              break;
+            case Row:
+              val = encoder.var(i, k, j);
+              break;
+            case Column:
+              val = encoder.var(k, i, j);
+              break;
+            default:
+              throw new IllegalArgumentException("Invalid Type");
+          }
+          addLiteral(val);
+        }
+        endDefinedness();
+      }
+    }
+  }
+
+  /**
+   * Formats uniqueness clauses for constraints of a certain type.
+   * @param type The type of constraints to add.
+   * @throws IllegalArgumentException If type is invalid.
+   */
+  private void formatUniquenessClauses(Type type) throws IllegalArgumentException {
+    int n = encoder.getSize();
+    int[] group = new int[n];
+    for (int i = 1; i <= n; i++) {
+      for (int j = 1; j <= n; j++) {
+        for (int current = 1; current <= n; current++) {
+          switch(type) {
+            case Individual:
+              group[current - 1] = encoder.var(i, j, current);
+              break;
+            case Row:
+              group[current - 1] = encoder.var(j, current, i);
+              break;
+            case Column:
+              group[current - 1] = encoder.var(current, j, i);
+              break;
+            default:
+              throw new IllegalArgumentException("Invalid Type");
+          }
+        }
+        formatAtMostOne(group, n);
+      }
+    }
+  }
+
+  /**
+   * Formats the clauses saying at most one of a group of variables is true, in the encoding of
+   * this set.
+   * @param group The variables, which are left unchanged.
+   * @param count The number of variables in the group.
+   */
+  private void formatAtMostOne(int[] group, int count) {
+    switch (encoding) {
+      case Sequential:
+        formatSequentialAtMostOne(group, count);
+        break;
+      case Commander:
+        formatCommanderAtMostOne(group, count);
+        break;
+      case Product:
+        formatProductAtMostOne(group, count);
+        break;
+      case Cardinality:
+        for (int c = 0; c < count; c++) {
+          addLiteral(group[c]);
+        }
+        endConstraint(AT_MOST_ONE);
+        break;
+      default:
+        formatPairwiseAtMostOne(group, count);
+    }
+  }
+
+  /**
+   * Formats a binary clause for every pair of variables in a group.
+   * @param group The variables.
+   * @param count The number of variables in the group.
+   */
+  private void formatPairwiseAtMostOne(int[] group, int count) {
+    for (int current = 0; current < count; current++) {
+      for (int k = current + 1; k < count; k++) {
+        addLiteral(-1 * group[current]);
+        addLiteral(-1 * group[k]);
+        endClause();
+      }
+    }
+  }
+
+  /**
+   * Formats the sequential counter encoding, where extra variable s(i) is true once any of the
+   * first i + 1 variables is true.
+   * @param group The variables.
+   * @param count The number of variables in the group.
+   */
+  private void formatSequentialAtMostOne(int[] group, int count) {
+    if (count < 2) {
+      return;
+    }
+    int previous = newVariable();
+    addClause(-1 * group[0], previous);
+    for (int i = 1; i < count - 1; i++) {
+      int counter = newVariable();
+      addClause(-1 * group[i], counter);
+      addClause(-1 * previous, counter);
+      addClause(-1 * group[i], -1 * previous);
+      previous = counter;
+    }
+    addClause(-1 * group[count - 1], -1 * previous);
+  }
+
+  /**
+   * Formats the commander encoding, splitting the variables into groups of three with a commander
+   * variable each. A commander is true exactly when a variable of its group is, and at most one
+   * commander is true.
+   * @param group The variables.
+   * @param count The number of variables in the group.
+   */
+  private void formatCommanderAtMostOne(int[] group, int count) {
+    if (count <= 6) {
+      formatPairwiseAtMostOne(group, count);
+      return;
+    }
+    int[] commanders = new int[(count + 2) / 3];
+    for (int g = 0; g < commanders.length; g++) {
+      int start = g * 3;
+      int end = Math.min(start + 3, count);
+      int commander = newVariable();
+      commanders[g] = commander;
+      formatPairwiseAtMostOne(Arrays.copyOfRange(group, start, end), end - start);
+      addLiteral(-1 * commander);
+      for (int i = start; i < end; i++) {
+        addLiteral(group[i]);
+      }
+      endClause();
+      for (int i = start; i < end; i++) {
+        addClause(-1 * group[i], commander);
+      }
+    }
+    formatCommanderAtMostOne(commanders, commanders.length);
+  }
+
+  /**
+   * Formats the product encoding, placing the variables on a grid with a row variable for every
+   * row and a column variable for every column. At most one row and one column can be used.
+   * @param group The variables.
+   * @param count The number of variables in the group.
+   */
+  private void formatProductAtMostOne(int[] group, int count) {
+    if (count <= 4) {
+      formatPairwiseAtMostOne(group, count);
+      return;
+    }
+    int rows = (int) Math.ceil(Math.sqrt(count));
+    int columns = (count + rows - 1) / rows;
+    int[] rowVariables = new int[rows];
+    int[] columnVariables = new int[columns];
+    for (int r = 0; r < rows; r++) {
+      rowVariables[r] = newVariable();
+    }
+    for (int c = 0; c < columns; c++) {
+      columnVariables[c] = newVariable();
+    }
+    for (int i = 0; i < count; i++) {
+      addClause(-1 * group[i], rowVariables[i / columns]);
+      addClause(-1 * group[i], columnVariables[i % columns]);
+    }
+    formatProductAtMostOne(rowVariables, rows);
+    formatProductAtMostOne(columnVariables, columns);
+  }
+
+  /**
+   * Formats definedness clauses for block constraints.
+   */
+  private void formatBlockClauses() {
+    int n = encoder.getSize();
+    int boxRows = encoder.getBoxRows();
+    int boxColumns = encoder.getBoxColumns();
+    for (int kBlock = 1; kBlock <= n; kBlock += boxRows) {
+      for (int jBlock = 1; jBlock <= n; jBlock += boxColumns) {
+        for (int i = 1; i <= n; i++) {
+          for (int j = jBlock; j < jBlock + boxColumns; j++) {
+            for (int k = kBlock; k < kBlock + boxRows; k++) {
+              int val = encoder.var(k, j, i);
+              addLiteral(val);
+            }
+          }
+          endDefinedness();
+        }
+      }
+    }
+  }
+
+  /**
+   * Numbers a new extra variable after every variable used so far.
+   * @return The new variable.
+   */
+  private int newVariable() {
+    return ++variables;
+  }
+
+  /**
+   * Formats a clause of two literals.
+   * @param first The first literal.
+   * @param second The second literal.
+   */
+  private void addClause(int first, int second) {
+    addLiteral(first);
+    addLiteral(second);
+    endClause();
+  }
+
+  /**
+   * Appends a literal to the clause currently being built.
+   * @param literal The literal to append.
+   */
+  private void addLiteral(int literal) {
+    if (literalCount == literals.length) {
+      literals = Arrays.copyOf(literals, literals.length * 2);
+    }
+    literals[literalCount++] = literal;
+  }
+
+  /**
+   * Ends the clause currently being built, so the next literal starts a new one.
+   */
+  private void endClause() {
+    endConstraint(CLAUSE);
+  }
+
+  /**
+   * Ends the definedness clause currently being built, which is a native exactly one constraint
+   * in the exactly one encoding.
+   */
+  private void endDefinedness() {
+    endConstraint(encoding == AtMostOneEncoding.ExactlyOne ? EXACTLY_ONE : CLAUSE);
+  }
+
+  /**
+   * Ends the constraint currently being built, so the next literal starts a new one.
+   * @param kind Whether the literals form a clause or a native at most or exactly one
+   * constraint.
+   */
+  private void endConstraint(byte kind) {
+    if (size + 1 >= offsets.length) {
+      offsets = Arrays.copyOf(offsets, offsets.length * 2);
+      kinds = Arrays.copyOf(kinds, kinds.length * 2);
+    }
+    kinds[size] = kind;
+    size++;
+    offsets[size] = literalCount;
+  }
+}
@@ -0,0 +1,168 @@
+package com.company;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Solves a batch of Kropki sudoku puzzles on a pool of worker threads. Each puzzle is a line with
+ * the white dot cells, a '|', and then the black dot cells, optionally followed by another '|'
+ * and the givens. Every worker keeps its own KropkiSolverSession, and the results are written out
+ * in the same order as the puzzles, as soon as each one and every puzzle before it is solved.
+ * Puzzles can also be read from a PuzzleArchive, with their solutions added to another archive.
+ */
+public class BatchSolver {
+
+  private int threads;
+  private PrintStream out;
+  private SudokuEncoder encoder;
+
+  /**
+   * Constructs a batch solver for puzzles on the standard 9x9 board.
+   * @param threads The number of worker threads.
+   * @param out The stream to write the results to.
+   * @throws IllegalArgumentException If there isn't at least one thread.
+   */
+  public BatchSolver(int threads, PrintStream out) {
+    this(threads, out, SudokuEncoder.getStandard());
+  }
+
+  /**
+   * Constructs a batch solver.
+   * @param threads The number of worker threads.
+   * @param out The stream to write the results to.
+   * @param encoder The shape of the board of every puzzle.
+   * @throws IllegalArgumentException If there isn't at least one thread.
+   */
+  public BatchSolver(int threads, PrintStream out, SudokuEncoder encoder) {
+    if (threads < 1) {
+      throw new IllegalArgumentException("Invalid thread count");
+    }
+    this.threads = threads;
+    this.out = out;
+    this.encoder = encoder;
+  }
+
+  /**
+   * Solves every puzzle read from the given reader, writing the results in order.
+   * @param in The reader to read the puzzles from, one per line.
+   * @throws IOException If the puzzles can't be read.
+   */
+  public void solveAll(BufferedReader in) throws IOException {
+    ExecutorService pool = Executors.newFixedThreadPool(threads);
+    ThreadLocal<KropkiSolverSession> sessions =
+        ThreadLocal.withInitial(() -> new KropkiSolverSession(encoder));
+    // Only keep a few puzzles per thread in flight, so memory doesn't grow with the batch size
+    ArrayDeque<Future<String>> pending = new ArrayDeque<>();
+    int window = threads * 4;
+    int puzzle = 0;
+    try {
+      String line;
+      while ((line = in.readLine()) != null) {
+        if (line.trim().isEmpty()) {
+          continue;
+        }
+        puzzle++;
+        String current = line;
+        int number = puzzle;
+        pending.add(pool.submit(() -> solveLine(sessions.get(), encoder, number, current)));
+        if (pending.size() >= window) {
+          writeResult(pending.poll());
+        }
+      }
+      while (!pending.isEmpty()) {
+        writeResult(pending.poll());
+      }
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+
+  /**
+   * Solves every puzzle of an archive, adding the results to another archive in order, so puzzles
+   * that timed out can be told apart from those without a solution.
+   * @param in The archive holding the puzzles, whose board shape is used instead of the solver's.
+   * @param out The archive to add the solutions to.
+   * @throws IllegalArgumentException If the archives don't hold puzzles and solutions of the same
+   * board shape.
+   */
+  public void solveAll(PuzzleArchive in, PuzzleArchive out) {
+    if (in.getContent() != PuzzleArchive.Content.Puzzles
+        || out.getContent() != PuzzleArchive.Content.Solutions
+        || !in.getEncoder().equals(out.getEncoder())) {
+      throw new IllegalArgumentException("Invalid Content");
+    }
+    ExecutorService pool = Executors.newFixedThreadPool(threads);
+    ThreadLocal<KropkiSolverSession> sessions =
+        ThreadLocal.withInitial(() -> new KropkiSolverSession(in.getEncoder()));
+    ArrayDeque<Future<SolveResult>> pending = new ArrayDeque<>();
+    int window = threads * 4;
+    try {
+      for (long i = 0; i < in.getCount(); i++) {
+        KropkiPuzzle puzzle = in.getPuzzle(i);
+        pending.add(pool.submit(() -> sessions.get().solve(puzzle)));
+        if (pending.size() >= window) {
+          out.add(await(pending.poll()));
+        }
+      }
+      while (!pending.isEmpty()) {
+        out.add(await(pending.poll()));
+      }
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+
+  /**
+   * Solves the puzzle on one line of the batch.
+   * @param session The session of the worker thread.
+   * @param encoder The shape of the board.
+   * @param number The number of the puzzle in the batch.
+   * @param line The line holding the puzzle.
+   * @return The result to be written out.
+   */
+  private static String solveLine(KropkiSolverSession session, SudokuEncoder encoder, int number,
+      String line) {
+    StringBuilder ans = new StringBuilder();
+    ans.append("Puzzle ").append(number).append(": ");
+    try {
+      ans.append(session.solve(KropkiPuzzle.parse(line, encoder)));
+    } catch (IllegalArgumentException e) {
+      ans.append(e.getMessage()).append(System.lineSeparator());
+    }
+    return ans.toString();
+  }
+
+  /**
+   * Waits for a result and writes it out.
+   * @param result The result of a puzzle.
+   * @throws IllegalStateException If the worker was interrupted or failed.
+   */
+  private void writeResult(Future<String> result) {
+    out.print(await(result));
+    out.flush();
+  }
+
+  /**
+   * Waits for a worker to finish.
+   * @param <T> The type of the result.
+   * @param result The result of a puzzle.
+   * @return The finished result.
+   * @throws IllegalStateException If the worker was interrupted or failed.
+   */
+  private static <T> T await(Future<T> result) {
+    try {
+      return result.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted");
+    } catch (ExecutionException e) {
+      throw new IllegalStateException("Unable to solve puzzle", e.getCause());
+    }
+  }
+}
@@ -0,0 +1,168 @@
+package com.company;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The symmetries of a board shape, each as the index of the image of every cell and every pair.
+ * The 8 symmetries of the square all keep orthogonal cells orthogonal, and they map boxes onto
+ * boxes when the boxes are square. Boards with boxes that aren't square only keep the 4 symmetries
+ * that don't swap rows with columns. The symmetries of each board shape are built once and shared.
+ */
+final class BoardSymmetries {
+
+  private static final Map<SudokuEncoder, BoardSymmetries> BOARDS = new ConcurrentHashMap<>();
+
+  private final SudokuEncoder encoder;
+  private final int cellCount;
+  private final int pairCount;
+  private final Map<CellPair, Integer> pairIndexes;
+  private final int[][] cells;
+  private final int[][] pairs;
+
+  /**
+   * Builds the symmetries of a board shape.
+   * @param encoder The shape of the board.
+   */
+  private BoardSymmetries(SudokuEncoder encoder) {
+    this.encoder = encoder;
+    int size = encoder.getSize();
+    List<CellPair> cellPairs = encoder.getCellPairs();
+    this.cellCount = size * size;
+    this.pairCount = cellPairs.size();
+    this.pairIndexes = new HashMap<>();
+    for (int i = 0; i < pairCount; i++) {
+      CellPair pair = cellPairs.get(i);
+      pairIndexes.put(pair, i);
+      pairIndexes.put(new CellPair(pair.getSecondCell(), pair.getFirstCell()), i);
+    }
+    int count = encoder.getBoxRows() == encoder.getBoxColumns() ? 8 : 4;
+    this.cells = new int[count][cellCount];
+    this.pairs = new int[count][pairCount];
+    for (int s = 0; s < count; s++) {
+      for (int i = 0; i < cellCount; i++) {
+        cells[s][i] = image(s, i / size, i % size, size);
+      }
+      for (int i = 0; i < pairCount; i++) {
+        CellPair pair = cellPairs.get(i);
+        pairs[s][i] = indexOf(new CellPair(cellId(cells[s][index(pair.getFirstCell())]),
+            cellId(cells[s][index(pair.getSecondCell())])));
+      }
+    }
+  }
+
+  /**
+   * Gets the symmetries of a board shape.
+   * @param encoder The shape of the board.
+   * @return The shared symmetries.
+   */
+  static BoardSymmetries forBoard(SudokuEncoder encoder) {
+    return BOARDS.computeIfAbsent(encoder, BoardSymmetries::new);
+  }
+
+  /**
+   * Getter for the number of symmetries, including the identity, which is the first.
+   * @return 8 if the boxes are square, otherwise 4.
+   */
+  int count() {
+    return cells.length;
+  }
+
+  /**
+   * Getter for the number of cells of the board.
+   * @return The number of cells.
+   */
+  int cellCount() {
+    return cellCount;
+  }
+
+  /**
+   * Getter for the number of orthogonal pairs of the board.
+   * @return The number of pairs.
+   */
+  int pairCount() {
+    return pairCount;
+  }
+
+  /**
+   * Getter for the images of the cells under a symmetry.
+   * @param symmetry The symmetry.
+   * @return The index of the image of each cell, in row then column order from 0.
+   */
+  int[] cells(int symmetry) {
+    return cells[symmetry];
+  }
+
+  /**
+   * Getter for the images of the pairs under a symmetry.
+   * @param symmetry The symmetry.
+   * @return The index of the image of each pair in the encoder's list.
+   */
+  int[] pairs(int symmetry) {
+    return pairs[symmetry];
+  }
+
+  /**
+   * Gets the index of a pair of the board, in either order.
+   * @param pair The pair.
+   * @return The index of the pair in the encoder's list.
+   * @throws IllegalArgumentException If the pair isn't orthogonal.
+   */
+  int indexOf(CellPair pair) {
+    Integer index = pairIndexes.get(pair);
+    if (index == null) {
+      throw new IllegalArgumentException("Invalid Constraints");
+    }
+    return index;
+  }
+
+  /**
+   * Gets the image of a cell under a symmetry. The first 4 symmetries keep rows as rows.
+   * @param symmetry The symmetry, from 0 to 7.
+   * @param row The row of the cell, from 0.
+   * @param column The column of the cell, from 0.
+   * @param size The size of the board.
+   * @return The index of the image, in row then column order from 0.
+   */
+  private static int image(int symmetry, int row, int column, int size) {
+    int last = size - 1;
+    switch (symmetry) {
+      case 1:
+        return (last - row) * size + column;
+      case 2:
+        return row * size + last - column;
+      case 3:
+        return (last - row) * size + last - column;
+      case 4:
+        return column * size + row;
+      case 5:
+        return column * size + last - row;
+      case 6:
+        return (last - column) * size + row;
+      case 7:
+        return (last - column) * size + last - row;
+      default:
+        return row * size + column;
+    }
+  }
+
+  /**
+   * Gets the index of a cell.
+   * @param cell The coordinates of the cell.
+   * @return The index of the cell, in row then column order from 0.
+   */
+  int index(int cell) {
+    return (encoder.rowOfCell(cell) - 1) * encoder.getSize() + encoder.columnOfCell(cell) - 1;
+  }
+
+  /**
+   * Gets the coordinates of a cell.
+   * @param index The index of the cell, in row then column order from 0.
+   * @return The coordinates of the cell.
+   */
+  private int cellId(int index) {
+    return encoder.cellId(index / encoder.getSize() + 1, index % encoder.getSize() + 1);
+  }
+}
@@ -0,0 +1,467 @@
+package com.company;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Narrows down the values each cell of a Kropki sudoku can hold before it is handed to the SAT
+ * solver. Every cell keeps a bitmask of its candidate values, with bit v - 1 standing for value v,
+ * and the Kropki relation of every orthogonal pair along with the uniqueness of every row, column
+ * and box are applied until nothing changes. Given digits fix their cells from the start, and the
+ * variant constraints of the puzzle add the values their cells can hold and the relations between
+ * their cells, which unlike the dots may be one way. Many puzzles are solved or refuted outright,
+ * and the rest leave far fewer variables for the solver to decide. Boards up to 64x64 fit in the
+ * masks.
+ */
+public final class CandidatePropagator {
+
+  /**
+   * The largest board whose candidates fit in a bitmask.
+   */
+  public static final int MAX_SIZE = Long.SIZE;
+
+  private static final int WHITE = 0;
+  private static final int BLACK = 1;
+  private static final int NO_DOT = 2;
+  private static final int HIDDEN = 3;
+
+  private final SudokuEncoder encoder;
+  private final int size;
+  private final long full;
+  private final long[] candidates;
+  private final int[] first;
+  private final int[] second;
+  private final long[][] relations;
+  private final long[][] reversed;
+  private final List<ConstraintPlugin> constraints;
+  private final int[][] units;
+  private boolean contradiction;
+
+  /**
+   * Constructs a propagator where every cell can hold every value but the given cells, before any
+   * propagation.
+   * @param puzzle The puzzle holding the dots, givens and variant constraints.
+   */
+  private CandidatePropagator(KropkiPuzzle puzzle) {
+    this.encoder = puzzle.getEncoder();
+    this.size = encoder.getSize();
+    this.full = size == Long.SIZE ? -1L : (1L << size) - 1;
+    this.candidates = new long[size * size];
+    this.contradiction = false;
+    for (int i = 0; i < candidates.length; i++) {
+      candidates[i] = full;
+    }
+    for (Map.Entry<Integer, Integer> given : puzzle.getGivens().entrySet()) {
+      candidates[index(given.getKey())] = bit(given.getValue());
+    }
+    this.constraints = puzzle.getConstraints();
+    List<CellPair> pairs = new ArrayList<>(encoder.getCellPairs());
+    List<long[]> extra = new ArrayList<>();
+    List<long[]> extraReversed = new ArrayList<>();
+    for (ConstraintPlugin constraint : constraints) {
+      for (int i = 0; i < candidates.length; i++) {
+        update(i, candidates[i] & constraint.allowedValues(encoder,
+            encoder.cellId(i / size + 1, i % size + 1)));
+      }
+      for (RelationConstraint relation : constraint.relations(encoder)) {
+        long[] table = relation.getRelation().supportMasks(size);
+        long[] reverse = relation.getRelation().reverse().supportMasks(size);
+        for (CellPair pair : relation.getPairs()) {
+          pairs.add(pair);
+          extra.add(table);
+          extraReversed.add(reverse);
+        }
+      }
+    }
+    long[][] tables = {relationTable(KropkiClauses.WHITE_DOT),
+        relationTable(KropkiClauses.BLACK_DOT), relationTable(KropkiClauses.NO_DOT),
+        distinctTable()};
+    this.first = new int[pairs.size()];
+    this.second = new int[pairs.size()];
+    this.relations = new long[pairs.size()][];
+    this.reversed = new long[pairs.size()][];
+    int dotted = encoder.getCellPairs().size();
+    for (int i = dotted; i < pairs.size(); i++) {
+      first[i] = index(pairs.get(i).getFirstCell());
+      second[i] = index(pairs.get(i).getSecondCell());
+      relations[i] = extra.get(i - dotted);
+      reversed[i] = extraReversed.get(i - dotted);
+    }
+    for (int i = 0; i < dotted; i++) {
+      CellPair pair = pairs.get(i);
+      first[i] = index(pair.getFirstCell());
+      second[i] = index(pair.getSecondCell());
+      if (puzzle.dotAt(i) == KropkiPuzzle.WHITE_DOT) {
+        relations[i] = tables[WHITE];
+      } else if (puzzle.dotAt(i) == KropkiPuzzle.BLACK_DOT) {
+        relations[i] = tables[BLACK];
+      } else if (puzzle.isAllDotsGiven()) {
+        relations[i] = tables[NO_DOT];
+      } else {
+        relations[i] = tables[HIDDEN];
+      }
+      reversed[i] = relations[i];
+    }
+    this.units = units();
+  }
+
+  /**
+   * Constructs a copy of a propagator, sharing its relations but not its candidates.
+   * @param other The propagator to copy.
+   */
+  private CandidatePropagator(CandidatePropagator other) {
+    this.encoder = other.encoder;
+    this.size = other.size;
+    this.full = other.full;
+    this.candidates = other.candidates.clone();
+    this.first = other.first;
+    this.second = other.second;
+    this.relations = other.relations;
+    this.reversed = other.reversed;
+    this.constraints = other.constraints;
+    this.units = other.units;
+    this.contradiction = other.contradiction;
+  }
+
+  /**
+   * Checks whether the candidates of a board fit in the bitmasks.
+   * @param encoder The shape of the board.
+   * @return True if the board is no larger than MAX_SIZE.
+   */
+  public static boolean supports(SudokuEncoder encoder) {
+    return encoder.getSize() <= MAX_SIZE;
+  }
+
+  /**
+   * Propagates the dots and the uniqueness of every row, column and box of a puzzle.
+   * @param puzzle The puzzle to propagate.
+   * @return The propagator holding the remaining candidates.
+   * @throws IllegalArgumentException If the board is larger than MAX_SIZE.
+   */
+  public static CandidatePropagator propagate(KropkiPuzzle puzzle) {
+    if (!supports(puzzle.getEncoder())) {
+      throw new IllegalArgumentException("Invalid Size");
+    }
+    CandidatePropagator propagator = new CandidatePropagator(puzzle);
+    propagator.run();
+    return propagator;
+  }
+
+  /**
+   * Getter for whether some cell has no candidates left, so the puzzle has no solution.
+   * @return True if the puzzle is unsatisfiable.
+   */
+  public boolean isContradiction() {
+    return contradiction;
+  }
+
+  /**
+   * Getter for whether every cell has exactly one candidate left, which is then the solution.
+   * @return True if the puzzle is solved.
+   */
+  public boolean isSolved() {
+    if (contradiction) {
+      return false;
+    }
+    for (long mask : candidates) {
+      if (Long.bitCount(mask) != 1) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Getter for the candidates of a cell.
+   * @param row The row of the cell.
+   * @param column The column of the cell.
+   * @return The bitmask of candidates, with bit v - 1 standing for value v.
+   */
+  public long getCandidates(int row, int column) {
+    return candidates[(row - 1) * size + column - 1];
+  }
+
+  /**
+   * Checks whether a cell variable can still be true.
+   * @param var The cell variable.
+   * @return True if its value is still a candidate of its cell.
+   */
+  public boolean isCandidate(int var) {
+    return (candidates[(var - 1) / size] & bit(encoder.valueOf(var))) != 0;
+  }
+
+  /**
+   * Checks whether a cell variable has to be true.
+   * @param var The cell variable.
+   * @return True if its value is the only candidate of its cell.
+   */
+  public boolean isFixed(int var) {
+    return candidates[(var - 1) / size] == bit(encoder.valueOf(var));
+  }
+
+  /**
+   * Counts the cell variables that have been ruled out.
+   * @return The number of variables that can no longer be true.
+   */
+  public int eliminatedCount() {
+    int count = 0;
+    for (long mask : candidates) {
+      count += size - Long.bitCount(mask);
+    }
+    return count;
+  }
+
+  /**
+   * Takes the SAT solver's model of the pruned clauses and parses it into the sudoku puzzle. Cells
+   * with a single candidate are filled in from it, and only candidate literals are read.
+   * @param model The array of literals used to construct the puzzle.
+   * @return The solved sudoku puzzle.
+   */
+  public int[][] decode(int[] model) {
+    int[][] sudoku = toSudoku();
+    for (int literal : model) {
+      if (literal > 0 && encoder.isCellVar(literal) && isCandidate(literal)) {
+        int value = encoder.valueOf(literal);
+        sudoku[encoder.rowOf(literal) - 1][encoder.columnOf(literal) - 1] = value;
+      }
+    }
+    return sudoku;
+  }
+
+  /**
+   * Gets the board of every cell with a single candidate.
+   * @return The sudoku puzzle, with zeros for the cells that still have several candidates.
+   */
+  public int[][] toSudoku() {
+    int[][] sudoku = new int[size][size];
+    for (int i = 0; i < candidates.length; i++) {
+      if (Long.bitCount(candidates[i]) == 1) {
+        sudoku[i / size][i % size] = Long.numberOfTrailingZeros(candidates[i]) + 1;
+      }
+    }
+    return sudoku;
+  }
+
+  /**
+   * Copies the candidates, so that a guess can be tried on the copy and thrown away.
+   * @return The copy.
+   */
+  CandidatePropagator copy() {
+    return new CandidatePropagator(this);
+  }
+
+  /**
+   * Fixes a cell to one value and propagates the consequences.
+   * @param cell The index of the cell, in row then column order from 0.
+   * @param value The value.
+   */
+  void assign(int cell, int value) {
+    update(cell, candidates[cell] & bit(value));
+    run();
+  }
+
+  /**
+   * Picks the undecided cell with the fewest candidates to guess next.
+   * @return The index of the cell, or -1 if every cell is decided.
+   */
+  int chooseCell() {
+    int best = -1;
+    int fewest = Integer.MAX_VALUE;
+    for (int i = 0; i < candidates.length; i++) {
+      int count = Long.bitCount(candidates[i]);
+      if (count > 1 && count < fewest) {
+        best = i;
+        fewest = count;
+      }
+    }
+    return best;
+  }
+
+  /**
+   * Getter for the candidates of a cell by index.
+   * @param cell The index of the cell, in row then column order from 0.
+   * @return The bitmask of candidates, with bit v - 1 standing for value v.
+   */
+  long candidatesAt(int cell) {
+    return candidates[cell];
+  }
+
+  /**
+   * Applies every constraint until no more candidates can be removed. A board with every cell
+   * decided is then checked against the variant constraints, which propagation doesn't fully
+   * enforce.
+   */
+  private void run() {
+    boolean changed = true;
+    while (changed && !contradiction) {
+      changed = false;
+      for (int i = 0; i < relations.length; i++) {
+        changed |= revise(first[i], second[i], relations[i]);
+        changed |= revise(second[i], first[i], reversed[i]);
+      }
+      for (int[] unit : units) {
+        changed |= eliminateSingles(unit);
+        changed |= placeHiddenSingles(unit);
+      }
+    }
+    if (!constraints.isEmpty() && isSolved()) {
+      int[][] sudoku = toSudoku();
+      for (ConstraintPlugin constraint : constraints) {
+        contradiction |= !constraint.isSatisfied(encoder, sudoku);
+      }
+    }
+  }
+
+  /**
+   * Removes the candidates of a cell with no supporting candidate in its neighbour.
+   * @param cell The index of the cell to revise.
+   * @param neighbour The index of the other cell of the pair.
+   * @param relation The values of the neighbour supporting each value of the cell.
+   * @return True if any candidate was removed.
+   */
+  private boolean revise(int cell, int neighbour, long[] relation) {
+    long other = candidates[neighbour];
+    long kept = 0;
+    for (long mask = candidates[cell]; mask != 0; mask &= mask - 1) {
+      int value = Long.numberOfTrailingZeros(mask) + 1;
+      if ((relation[value] & other) != 0) {
+        kept |= bit(value);
+      }
+    }
+    return update(cell, kept);
+  }
+
+  /**
+   * Removes the value of every cell with a single candidate from the rest of its unit.
+   * @param unit The indexes of the cells of a row, column or box.
+   * @return True if any candidate was removed.
+   */
+  private boolean eliminateSingles(int[] unit) {
+    boolean changed = false;
+    for (int cell : unit) {
+      long single = candidates[cell];
+      if (Long.bitCount(single) == 1) {
+        for (int other : unit) {
+          if (other != cell) {
+            changed |= update(other, candidates[other] & ~single);
+          }
+        }
+      }
+    }
+    return changed;
+  }
+
+  /**
+   * Fixes every value that only one cell of a unit can still hold.
+   * @param unit The indexes of the cells of a row, column or box.
+   * @return True if any candidate was removed.
+   */
+  private boolean placeHiddenSingles(int[] unit) {
+    long once = 0;
+    long twice = 0;
+    for (int cell : unit) {
+      twice |= once & candidates[cell];
+      once |= candidates[cell];
+    }
+    if (once != full) {
+      contradiction = true;
+      return true;
+    }
+    long unique = once & ~twice;
+    boolean changed = false;
+    for (int cell : unit) {
+      long hidden = candidates[cell] & unique;
+      if (Long.bitCount(hidden) > 1) {
+        contradiction = true;
+        return true;
+      }
+      if (hidden != 0) {
+        changed |= update(cell, hidden);
+      }
+    }
+    return changed;
+  }
+
+  /**
+   * Replaces the candidates of a cell, noting a contradiction if none are left.
+   * @param cell The index of the cell.
+   * @param mask The new candidates.
+   * @return True if the candidates changed.
+   */
+  private boolean update(int cell, long mask) {
+    if (candidates[cell] == mask) {
+      return false;
+    }
+    candidates[cell] = mask;
+    if (mask == 0) {
+      contradiction = true;
+    }
+    return true;
+  }
+
+  /**
+   * Builds the indexes of the cells of every row, column and box.
+   * @return The list of units.
+   */
+  private int[][] units() {
+    int[][] units = new int[size * 3][size];
+    int boxRows = encoder.getBoxRows();
+    int boxColumns = encoder.getBoxColumns();
+    for (int i = 0; i < size; i++) {
+      for (int j = 0; j < size; j++) {
+        units[i][j] = i * size + j;
+        units[size + i][j] = j * size + i;
+        int row = i / boxRows * boxRows + j / boxColumns;
+        int column = i % boxRows * boxColumns + j % boxColumns;
+        units[size * 2 + i][j] = row * size + column;
+      }
+    }
+    return units;
+  }
+
+  /**
+   * Builds the values supporting each value across a pair with a relation, leaving out the value
+   * itself as the pair shares a row or a column.
+   * @param relation The relation of the pair's dot.
+   * @return The table of bitmasks, indexed by value.
+   */
+  private long[] relationTable(ValueRelation relation) {
+    long[] table = relation.supportMasks(size);
+    for (int i = 1; i <= size; i++) {
+      table[i] &= full & ~bit(i);
+    }
+    return table;
+  }
+
+  /**
+   * Builds the values supporting each value across a pair whose dot may be hidden, which are every
+   * other value, as the pair shares a row or a column.
+   * @return The table of bitmasks, indexed by value.
+   */
+  private long[] distinctTable() {
+    long[] table = new long[size + 1];
+    for (int i = 1; i <= size; i++) {
+      table[i] = full & ~bit(i);
+    }
+    return table;
+  }
+
+  /**
+   * Gets the index of a cell in the candidate array.
+   * @param cell The coordinates of the cell.
+   * @return The index of the cell.
+   */
+  private int index(int cell) {
+    return (encoder.rowOfCell(cell) - 1) * size + encoder.columnOfCell(cell) - 1;
+  }
+
+  /**
+   * Gets the bit standing for a value.
+   * @param value The value.
+   * @return The bitmask holding only that value.
+   */
+  private static long bit(int value) {
+    return 1L << (value - 1);
+  }
+}
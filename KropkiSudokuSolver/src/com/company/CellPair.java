@@ -1,14 +1,12 @@
 package com.company;
 
-import java.util.Objects;
-
 /**
  * Represents a pair of sudoku cells, formatted like xy, with x being the row and y being the
- * column. The coordinates are 1 indexed.
+ * column, or like rrcc on boards larger than 9x9. The coordinates are 1 indexed.
  */
 public class CellPair {
-  private int firstCell;
-  private int secondCell;
+  private final int firstCell;
+  private final int secondCell;
 
   /**
    * Constructs a pair of sudoku cells.
@@ -55,8 +53,13 @@ public class CellPair {
     return false;
   }
 
+  /**
+   * Packs both cells into the hash code. Cells are at most 4 digits, so no two pairs of a board
+   * share one, and nothing is boxed.
+   * @return The hash code.
+   */
   @Override
   public int hashCode() {
-    return Objects.hash(this.firstCell, this.secondCell);
+    return firstCell * 10000 + secondCell;
   }
 }
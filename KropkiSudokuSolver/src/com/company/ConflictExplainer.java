@@ -0,0 +1,270 @@
+package com.company;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.sat4j.core.VecInt;
+import org.sat4j.minisat.SolverFactory;
+import org.sat4j.specs.ContradictionException;
+import org.sat4j.specs.IConstr;
+import org.sat4j.specs.ISolver;
+import org.sat4j.specs.IVecInt;
+import org.sat4j.specs.TimeoutException;
+import org.sat4j.tools.SolverDecorator;
+import org.sat4j.tools.xplain.HighLevelXplain;
+
+/**
+ * Explains why a Kropki sudoku puzzle has no solution. The constraint of every cell pair, every
+ * given digit and every variant constraint is a group of SAT4J's HighLevelXplain, the clauses of
+ * each pair and variant constraint being guarded by a selector that its group turns on, while only
+ * the base sudoku clauses always apply. Once the solver finds the puzzle unsatisfiable, the groups
+ * it assumed in its final conflict are a first explanation, which Xplain then shrinks until
+ * dropping any group leaves a solution. The whole explanation has a time budget, and if it runs
+ * out while shrinking, the first explanation is returned instead. The pairwise encoding is always
+ * used, as Xplain can't explain conflicts of the native cardinality constraints.
+ */
+public class ConflictExplainer {
+
+  /**
+   * Wraps a solver so that every clause added to it is guarded by a selector, which lets the
+   * clauses of a variant constraint be switched on as one group.
+   */
+  private static final class GuardedSolver extends SolverDecorator<ISolver> {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int selector;
+    private final IVecInt guarded;
+
+    /**
+     * Constructs a guarded solver.
+     * @param solver The solver to add the guarded clauses to.
+     * @param selector The selector guarding every clause.
+     */
+    private GuardedSolver(ISolver solver, int selector) {
+      super(solver);
+      this.selector = selector;
+      this.guarded = new VecInt();
+    }
+
+    @Override
+    public IConstr addClause(IVecInt literals) throws ContradictionException {
+      guarded.clear();
+      literals.copyTo(guarded);
+      guarded.push(-selector);
+      return decorated().addClause(guarded);
+    }
+  }
+
+  /**
+   * The default time budget of an explanation, in milliseconds.
+   */
+  public static final long DEFAULT_BUDGET_MILLIS = 2000;
+
+  private final long budgetMillis;
+
+  /**
+   * Constructs an explainer with the default time budget.
+   */
+  public ConflictExplainer() {
+    this(DEFAULT_BUDGET_MILLIS);
+  }
+
+  /**
+   * Constructs an explainer.
+   * @param budgetMillis The time budget of each explanation, in milliseconds.
+   * @throws IllegalArgumentException If the budget isn't positive.
+   */
+  public ConflictExplainer(long budgetMillis) {
+    if (budgetMillis < 1) {
+      throw new IllegalArgumentException("Invalid Budget");
+    }
+    this.budgetMillis = budgetMillis;
+  }
+
+  /**
+   * Getter for the time budget.
+   * @return The time budget of each explanation, in milliseconds.
+   */
+  public long getBudgetMillis() {
+    return budgetMillis;
+  }
+
+  /**
+   * Finds the dots, pairs without a dot, givens and variant constraints of a puzzle that conflict
+   * with one another.
+   * @param puzzle The puzzle to explain.
+   * @return The explanation, which only holds a conflict if the puzzle is unsatisfiable.
+   * @throws IllegalStateException If the puzzle can't be encoded.
+   */
+  public ConflictExplanation explain(KropkiPuzzle puzzle) {
+    long deadline = System.nanoTime() + budgetMillis * 1000000;
+    SudokuEncoder encoder = puzzle.getEncoder();
+    List<CellPair> pairs = encoder.getCellPairs();
+    List<Integer> givenCells = new ArrayList<>(puzzle.getGivens().keySet());
+    HighLevelXplain<ISolver> explainer = new HighLevelXplain<>(SolverFactory.newDefault());
+    explainer.setTimeoutMs(budgetMillis);
+    try {
+      encode(explainer, puzzle, pairs, givenCells);
+    } catch (ContradictionException e) {
+      throw new IllegalStateException("Unable to encode the puzzle");
+    }
+    Set<Integer> conflict = new HashSet<>();
+    try {
+      if (explainer.isSatisfiable()) {
+        return ConflictExplanation.none(SolveResult.Status.Satisfiable);
+      }
+      IVecInt assumed = explainer.unsatExplanation();
+      Map<Integer, Integer> groups = explainer.getVarToHighLevel();
+      for (int i = 0; assumed != null && i < assumed.size(); i++) {
+        conflict.add(groups.get(Math.abs(assumed.get(i))));
+      }
+    } catch (TimeoutException e) {
+      return ConflictExplanation.none(SolveResult.Status.Timeout);
+    }
+    if (conflict.isEmpty() || conflict.contains(null)) {
+      conflict = new HashSet<>(explainer.getVarToHighLevel().values());
+    }
+    AtomicBoolean expired = new AtomicBoolean(false);
+    Timer timer = new Timer("explainer", true);
+    timer.schedule(new TimerTask() {
+      @Override
+      public void run() {
+        expired.set(true);
+        explainer.cancelExplanation();
+        explainer.expireTimeout();
+      }
+    }, Math.max(0, (deadline - System.nanoTime()) / 1000000));
+    try {
+      int[] minimal = explainer.minimalExplanation();
+      if (!expired.get()) {
+        Set<Integer> shrunk = new HashSet<>();
+        for (int group : minimal) {
+          shrunk.add(group);
+        }
+        return explanation(puzzle, pairs, givenCells, shrunk, true);
+      }
+    } catch (TimeoutException e) {
+      // The budget ran out, so the first explanation is returned
+    } finally {
+      timer.cancel();
+    }
+    return explanation(puzzle, pairs, givenCells, conflict, false);
+  }
+
+  /**
+   * Adds the base clauses, then the constraint of every pair, every given and every variant
+   * constraint as its own group.
+   * Groups are numbered from 1, the pairs first, then the givens and then the variant constraints.
+   * Pairs whose dot may be hidden have no constraint, so they get no group.
+   * @param explainer The solver to add the clauses to.
+   * @param puzzle The puzzle to encode.
+   * @param pairs Every cell pair of the board.
+   * @param givenCells The given cells of the puzzle.
+   * @throws ContradictionException If the solver finds the clauses trivially unsatisfiable.
+   */
+  private static void encode(HighLevelXplain<ISolver> explainer, KropkiPuzzle puzzle,
+      List<CellPair> pairs, List<Integer> givenCells) throws ContradictionException {
+    SudokuEncoder encoder = puzzle.getEncoder();
+    BaseClauseSet base = BaseClauseSet.forBoard(encoder, AtMostOneEncoding.Pairwise);
+    int baseVars = base.numberOfVariables();
+    List<ConstraintPlugin> constraints = puzzle.getConstraints();
+    int auxiliary = 0;
+    for (ConstraintPlugin constraint : constraints) {
+      auxiliary += constraint.auxiliaryVariables(encoder);
+    }
+    // Selectors of the pairs and then of the variant constraints follow the base variables
+    int selectors = pairs.size() + constraints.size();
+    explainer.newVar(baseVars + selectors + auxiliary);
+    IVecInt clause = new VecInt(encoder.getSize());
+    base.addTo(explainer, clause);
+    for (int i = 0; i < pairs.size(); i++) {
+      CellPair pair = pairs.get(i);
+      int selector = baseVars + i + 1;
+      byte dot = puzzle.dotAt(i);
+      if (dot == KropkiPuzzle.WHITE_DOT) {
+        KropkiClauses.addWhiteDotConstraint(explainer, clause, encoder, pair, selector);
+      } else if (dot == KropkiPuzzle.BLACK_DOT) {
+        KropkiClauses.addBlackDotConstraint(explainer, clause, encoder, pair, selector);
+      } else if (puzzle.isAllDotsGiven()) {
+        KropkiClauses.addNoDotConstraint(explainer, clause, encoder, pair, selector);
+      } else {
+        continue;
+      }
+      clause.clear();
+      clause.push(selector);
+      explainer.addClause(clause, i + 1);
+    }
+    for (int i = 0; i < givenCells.size(); i++) {
+      int cell = givenCells.get(i);
+      clause.clear();
+      clause.push(encoder.var(encoder.rowOfCell(cell), encoder.columnOfCell(cell),
+          puzzle.getGivens().get(cell)));
+      explainer.addClause(clause, pairs.size() + i + 1);
+    }
+    int next = baseVars + selectors + 1;
+    for (int i = 0; i < constraints.size(); i++) {
+      ConstraintPlugin constraint = constraints.get(i);
+      int selector = baseVars + pairs.size() + i + 1;
+      try {
+        constraint.addTo(new GuardedSolver(explainer, selector), clause, encoder, next);
+      } catch (ContradictionException e) {
+        // A constraint that can never hold is a conflict on its own
+        clause.clear();
+        clause.push(-selector);
+        explainer.addClause(clause);
+      }
+      next += constraint.auxiliaryVariables(encoder);
+      clause.clear();
+      clause.push(selector);
+      explainer.addClause(clause, pairs.size() + givenCells.size() + i + 1);
+    }
+  }
+
+  /**
+   * Sorts the groups of a conflict into white dots, black dots, pairs without a dot, givens and
+   * variant constraints.
+   * @param puzzle The puzzle that was explained.
+   * @param pairs Every cell pair of the board.
+   * @param givenCells The given cells of the puzzle.
+   * @param groups The groups in the conflict.
+   * @param minimal Whether no group can be dropped from the conflict.
+   * @return The explanation.
+   */
+  private static ConflictExplanation explanation(KropkiPuzzle puzzle, List<CellPair> pairs,
+      List<Integer> givenCells, Collection<Integer> groups, boolean minimal) {
+    Set<CellPair> whiteDotPairs = new HashSet<>();
+    Set<CellPair> blackDotPairs = new HashSet<>();
+    Set<CellPair> noDotPairs = new HashSet<>();
+    Set<Integer> givens = new TreeSet<>();
+    List<ConstraintPlugin> constraints = new ArrayList<>();
+    for (int group : new TreeSet<>(groups)) {
+      if (group > pairs.size() + givenCells.size()) {
+        constraints.add(puzzle.getConstraints().get(group - pairs.size() - givenCells.size() - 1));
+        continue;
+      }
+      if (group > pairs.size()) {
+        givens.add(givenCells.get(group - pairs.size() - 1));
+        continue;
+      }
+      CellPair pair = pairs.get(group - 1);
+      byte dot = puzzle.dotAt(group - 1);
+      if (dot == KropkiPuzzle.WHITE_DOT) {
+        whiteDotPairs.add(pair);
+      } else if (dot == KropkiPuzzle.BLACK_DOT) {
+        blackDotPairs.add(pair);
+      } else {
+        noDotPairs.add(pair);
+      }
+    }
+    return new ConflictExplanation(SolveResult.Status.Unsatisfiable, whiteDotPairs,
+        blackDotPairs, noDotPairs, givens, constraints, minimal);
+  }
+}
@@ -0,0 +1,126 @@
+package com.company;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The explanation of why a Kropki sudoku puzzle has no solution, holding the white dots, black
+ * dots, pairs without a dot, given cells and variant constraints that conflict with one another.
+ * If the explanation is minimal, dropping any one of them leaves a puzzle with a solution.
+ */
+public final class ConflictExplanation {
+
+  private final SolveResult.Status status;
+  private final Set<CellPair> whiteDotPairs;
+  private final Set<CellPair> blackDotPairs;
+  private final Set<CellPair> noDotPairs;
+  private final Set<Integer> givenCells;
+  private final List<ConstraintPlugin> constraints;
+  private final boolean minimal;
+
+  /**
+   * Constructs an explanation.
+   * @param status The outcome of the solve, which is only Unsatisfiable if there is a conflict.
+   * @param whiteDotPairs The white dot pairs in the conflict.
+   * @param blackDotPairs The black dot pairs in the conflict.
+   * @param noDotPairs The pairs without a dot in the conflict.
+   * @param givenCells The given cells in the conflict.
+   * @param constraints The variant constraints in the conflict.
+   * @param minimal Whether no part of the conflict can be dropped.
+   */
+  public ConflictExplanation(SolveResult.Status status, Set<CellPair> whiteDotPairs,
+      Set<CellPair> blackDotPairs, Set<CellPair> noDotPairs, Set<Integer> givenCells,
+      List<ConstraintPlugin> constraints, boolean minimal) {
+    this.status = status;
+    this.whiteDotPairs = Collections.unmodifiableSet(whiteDotPairs);
+    this.blackDotPairs = Collections.unmodifiableSet(blackDotPairs);
+    this.noDotPairs = Collections.unmodifiableSet(noDotPairs);
+    this.givenCells = Collections.unmodifiableSet(givenCells);
+    this.constraints = Collections.unmodifiableList(constraints);
+    this.minimal = minimal;
+  }
+
+  /**
+   * Constructs an explanation of a puzzle without a conflict.
+   * @param status The outcome of the solve, either Satisfiable or Timeout.
+   * @return The explanation, holding nothing.
+   */
+  public static ConflictExplanation none(SolveResult.Status status) {
+    return new ConflictExplanation(status, Collections.emptySet(), Collections.emptySet(),
+        Collections.emptySet(), Collections.emptySet(), Collections.emptyList(), false);
+  }
+
+  /**
+   * Getter for the outcome of the solve.
+   * @return Unsatisfiable if a conflict was found, otherwise Satisfiable or Timeout.
+   */
+  public SolveResult.Status getStatus() {
+    return status;
+  }
+
+  /**
+   * Getter for the white dot pairs in the conflict.
+   * @return The unmodifiable set of cell pairs.
+   */
+  public Set<CellPair> getWhiteDotPairs() {
+    return whiteDotPairs;
+  }
+
+  /**
+   * Getter for the black dot pairs in the conflict.
+   * @return The unmodifiable set of cell pairs.
+   */
+  public Set<CellPair> getBlackDotPairs() {
+    return blackDotPairs;
+  }
+
+  /**
+   * Getter for the pairs without a dot in the conflict.
+   * @return The unmodifiable set of cell pairs.
+   */
+  public Set<CellPair> getNoDotPairs() {
+    return noDotPairs;
+  }
+
+  /**
+   * Getter for the given cells in the conflict.
+   * @return The unmodifiable set of cells, like rc or rrcc.
+   */
+  public Set<Integer> getGivenCells() {
+    return givenCells;
+  }
+
+  /**
+   * Getter for the variant constraints in the conflict.
+   * @return The unmodifiable list of constraints, in the order the puzzle holds them.
+   */
+  public List<ConstraintPlugin> getConstraints() {
+    return constraints;
+  }
+
+  /**
+   * Getter for whether the conflict is minimal, which it isn't if the time budget ran out while
+   * it was being shrunk.
+   * @return True if no part of the conflict can be dropped.
+   */
+  public boolean isMinimal() {
+    return minimal;
+  }
+
+  @Override
+  public String toString() {
+    if (status != SolveResult.Status.Unsatisfiable) {
+      return "No conflict: " + status + "!" + System.lineSeparator();
+    }
+    String ans = (minimal ? "Minimal conflict:" : "Conflict:") + System.lineSeparator();
+    ans += "White: " + whiteDotPairs + System.lineSeparator();
+    ans += "Black: " + blackDotPairs + System.lineSeparator();
+    ans += "No dot: " + noDotPairs + System.lineSeparator();
+    ans += "Givens: " + givenCells + System.lineSeparator();
+    if (!constraints.isEmpty()) {
+      ans += "Constraints: " + constraints + System.lineSeparator();
+    }
+    return ans;
+  }
+}
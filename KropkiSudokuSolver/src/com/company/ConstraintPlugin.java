@@ -0,0 +1,76 @@
+package com.company;
+
+import java.util.Collections;
+import java.util.List;
+import org.sat4j.specs.ContradictionException;
+import org.sat4j.specs.ISolver;
+import org.sat4j.specs.IVecInt;
+
+/**
+ * A variant constraint a puzzle can carry on top of its Kropki dots, such as the pairs of an XV
+ * sudoku, a thermometer or a killer cage. A puzzle can hold any number of them. Each one adds its
+ * clauses, or cardinality constraints, to the same solver as the rest of the puzzle, using the
+ * cell variables of the encoder and any extra variables it asks for. The constraints explained by
+ * a ConflictExplainer have to be plain clauses.
+ *
+ * So that mixed puzzles still propagate before they are solved, a constraint can also give the
+ * values each of its cells can hold and the relations it implies between pairs of its cells, which
+ * a CandidatePropagator applies along with the dots. Once propagation decides every cell, the
+ * board is checked against every constraint.
+ */
+public interface ConstraintPlugin {
+
+  /**
+   * Checks whether every cell of the constraint is on a board.
+   * @param encoder The shape of the board.
+   * @return True if the constraint fits the board.
+   */
+  boolean fits(SudokuEncoder encoder);
+
+  /**
+   * Counts the extra variables the clauses need.
+   * @param encoder The shape of the board.
+   * @return The number of extra variables.
+   */
+  default int auxiliaryVariables(SudokuEncoder encoder) {
+    return 0;
+  }
+
+  /**
+   * Adds the clauses of the constraint.
+   * @param solver The solver to add the clauses to.
+   * @param clause The buffer used to build each clause.
+   * @param encoder The shape of the board.
+   * @param firstAuxiliary The first of the auxiliaryVariables() extra variables to use.
+   * @throws ContradictionException If the solver finds the clauses trivially unsatisfiable.
+   */
+  void addTo(ISolver solver, IVecInt clause, SudokuEncoder encoder, int firstAuxiliary)
+      throws ContradictionException;
+
+  /**
+   * Gets the values a cell can hold under the constraint.
+   * @param encoder The shape of the board.
+   * @param cell The coordinates of the cell.
+   * @return The bitmask of values, with bit v - 1 standing for value v.
+   */
+  default long allowedValues(SudokuEncoder encoder, int cell) {
+    return -1L;
+  }
+
+  /**
+   * Gets the relations the constraint implies between pairs of its cells, for propagation.
+   * @param encoder The shape of the board.
+   * @return The list of relations, each over its own pairs of cells.
+   */
+  default List<RelationConstraint> relations(SudokuEncoder encoder) {
+    return Collections.emptyList();
+  }
+
+  /**
+   * Checks whether a full board meets the constraint.
+   * @param encoder The shape of the board.
+   * @param sudoku The board.
+   * @return True if the constraint holds.
+   */
+  boolean isSatisfied(SudokuEncoder encoder, int[][] sudoku);
+}
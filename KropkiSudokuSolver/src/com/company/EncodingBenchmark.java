@@ -0,0 +1,87 @@
+package com.company;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compares the at most one encodings on a corpus of puzzles. For every encoding it reports the
+ * size of the base clauses of each board shape and, for each puzzle on average, the time to encode
+ * and solve it, the bytes allocated and the propagations, so pure CNF encodings can be compared
+ * with the native cardinality ones.
+ * Run with a batch file, and optionally "--size n", to use that corpus instead of the built in one.
+ */
+public class EncodingBenchmark {
+
+  private static final int WARMUP_ROUNDS = 3;
+  private static final int MEASURED_ROUNDS = 10;
+
+  public static void main(String[] args) throws IOException {
+    List<KropkiPuzzle> puzzles = new ArrayList<>();
+    if (args.length > 0) {
+      int size = args.length >= 3 && args[1].equals("--size") ? Integer.valueOf(args[2]) : 9;
+      puzzles.addAll(PuzzleCorpus.load(args[0], SudokuEncoder.forSize(size)));
+    } else {
+      puzzles.addAll(PuzzleCorpus.standard());
+      puzzles.add(PuzzleCorpus.patterned(4));
+      puzzles.add(PuzzleCorpus.patterned(5));
+    }
+    System.out.println(String.format("%-12s %-22s %9s %9s %9s %12s %14s %14s", "Encoding",
+        "Board", "Clauses", "Literals", "Variables", "Mean ms", "Mean KB", "Propagations"));
+    for (AtMostOneEncoding encoding : AtMostOneEncoding.values()) {
+      SudokuModel model = new SudokuModel(encoding);
+      List<SudokuEncoder> boards = new ArrayList<>();
+      for (KropkiPuzzle puzzle : puzzles) {
+        if (!boards.contains(puzzle.getEncoder())) {
+          boards.add(puzzle.getEncoder());
+        }
+      }
+      for (SudokuEncoder board : boards) {
+        BaseClauseSet base = BaseClauseSet.forBoard(board, encoding);
+        double millis = 0;
+        double bytes = 0;
+        double propagations = 0;
+        int count = 0;
+        for (KropkiPuzzle puzzle : puzzles) {
+          if (puzzle.getEncoder().equals(board)) {
+            SolveStatistics mean = measure(model, puzzle);
+            millis += mean.getNanos() / 1e6;
+            bytes += mean.getAllocatedBytes();
+            propagations += mean.getPropagations();
+            count++;
+          }
+        }
+        System.out.println(String.format("%-12s %-22s %9d %9d %9d %12.3f %14.1f %14.0f",
+            encoding, board, base.size(), base.literalCount(), base.numberOfVariables(),
+            millis / count, bytes / count / 1024, propagations / count));
+      }
+    }
+  }
+
+  /**
+   * Measures how long a puzzle takes to encode and solve, after warming up.
+   * @param model The model to solve with.
+   * @param puzzle The puzzle to solve.
+   * @return The mean statistics of a solve.
+   */
+  private static SolveStatistics measure(SudokuModel model, KropkiPuzzle puzzle) {
+    for (int i = 0; i < WARMUP_ROUNDS; i++) {
+      model.solve(puzzle);
+    }
+    long nanos = 0;
+    long bytes = 0;
+    long propagations = 0;
+    long decisions = 0;
+    long conflicts = 0;
+    for (int i = 0; i < MEASURED_ROUNDS; i++) {
+      SolveStatistics statistics = model.solve(puzzle).getStatistics();
+      nanos += statistics.getNanos();
+      bytes += statistics.getAllocatedBytes();
+      propagations += statistics.getPropagations();
+      decisions += statistics.getDecisions();
+      conflicts += statistics.getConflicts();
+    }
+    return new SolveStatistics(nanos / MEASURED_ROUNDS, bytes / MEASURED_ROUNDS,
+        propagations / MEASURED_ROUNDS, decisions / MEASURED_ROUNDS, conflicts / MEASURED_ROUNDS);
+  }
+}
@@ -0,0 +1,65 @@
+package com.company;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compares the SAT engine, the SAT engine without candidate propagation, and the backtracking
+ * engine on a corpus of puzzles. For every puzzle it reports the mean time to solve it with each,
+ * after warming up, and which engine was fastest. Run with a batch file, and optionally
+ * "--size n", to use that corpus instead of the built in one.
+ */
+public class EngineBenchmark {
+
+  private static final int WARMUP_ROUNDS = 3;
+  private static final int MEASURED_ROUNDS = 10;
+
+  public static void main(String[] args) throws IOException {
+    List<KropkiPuzzle> puzzles = new ArrayList<>();
+    if (args.length > 0) {
+      int size = args.length >= 3 && args[1].equals("--size") ? Integer.valueOf(args[2]) : 9;
+      puzzles.addAll(PuzzleCorpus.load(args[0], SudokuEncoder.forSize(size)));
+    } else {
+      puzzles.addAll(PuzzleCorpus.standard());
+      puzzles.add(PuzzleCorpus.patterned(4));
+      puzzles.add(PuzzleCorpus.patterned(5));
+    }
+    String[] names = {"SAT", "SAT unpruned", "Backtracking"};
+    KropkiSolver[] solvers = {new SudokuModel(),
+        new SudokuModel(SudokuModel.Engine.Sat, AtMostOneEncoding.Pairwise, false),
+        new SudokuModel(SudokuModel.Engine.Backtracking)};
+    System.out.println(String.format("%-8s %-22s %14s %14s %14s  %s", "Puzzle", "Board", "SAT ms",
+        "Unpruned ms", "Backtrack ms", "Fastest"));
+    for (int p = 0; p < puzzles.size(); p++) {
+      KropkiPuzzle puzzle = puzzles.get(p);
+      double[] millis = new double[solvers.length];
+      int fastest = 0;
+      for (int s = 0; s < solvers.length; s++) {
+        millis[s] = meanMillis(solvers[s], puzzle);
+        if (millis[s] < millis[fastest]) {
+          fastest = s;
+        }
+      }
+      System.out.println(String.format("%-8d %-22s %14.3f %14.3f %14.3f  %s", p + 1,
+          puzzle.getEncoder(), millis[0], millis[1], millis[2], names[fastest]));
+    }
+  }
+
+  /**
+   * Times how long a puzzle takes to solve, after warming up.
+   * @param solver The solver to use.
+   * @param puzzle The puzzle to solve.
+   * @return The mean time of a solve in milliseconds.
+   */
+  private static double meanMillis(KropkiSolver solver, KropkiPuzzle puzzle) {
+    for (int i = 0; i < WARMUP_ROUNDS; i++) {
+      solver.solve(puzzle);
+    }
+    long start = System.nanoTime();
+    for (int i = 0; i < MEASURED_ROUNDS; i++) {
+      solver.solve(puzzle);
+    }
+    return (System.nanoTime() - start) / 1e6 / MEASURED_ROUNDS;
+  }
+}
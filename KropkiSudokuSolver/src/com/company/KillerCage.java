@@ -0,0 +1,188 @@
+package com.company;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.sat4j.specs.ContradictionException;
+import org.sat4j.specs.ISolver;
+import org.sat4j.specs.IVecInt;
+
+/**
+ * A killer sudoku cage, whose cells hold different values adding up to its sum. Every set of
+ * different values with the right size and sum is a combination, and each gets an extra variable.
+ * One combination has to be chosen, and every value of the chosen combination has to be in some
+ * cell of the cage. As the cage has exactly as many cells as the combination has values, this
+ * also makes the values of the cage different, so only clauses are needed. For propagation, values
+ * outside every combination are ruled out of the cage, and every two cells of it are different.
+ */
+public final class KillerCage implements ConstraintPlugin {
+
+  private static final ValueRelation DIFFERENT = ValueRelation.of("different", (a, b) -> a != b);
+
+  private final List<Integer> cells;
+  private final int sum;
+
+  /**
+   * Constructs a cage.
+   * @param cells The cells of the cage.
+   * @param sum The sum of the values of the cage.
+   */
+  public KillerCage(List<Integer> cells, int sum) {
+    this.cells = Collections.unmodifiableList(new ArrayList<>(cells));
+    this.sum = sum;
+  }
+
+  /**
+   * Getter for the cells.
+   * @return The unmodifiable list of cells of the cage.
+   */
+  public List<Integer> getCells() {
+    return cells;
+  }
+
+  /**
+   * Getter for the sum.
+   * @return The sum of the values of the cage.
+   */
+  public int getSum() {
+    return sum;
+  }
+
+  /**
+   * Finds every set of different values that fills the cage.
+   * @param size The size of the board.
+   * @return The bitmask of every combination, with bit v - 1 standing for value v.
+   */
+  List<Long> combinations(int size) {
+    List<Long> combinations = new ArrayList<>();
+    combine(combinations, size, 1, cells.size(), sum, 0);
+    return combinations;
+  }
+
+  /**
+   * Adds every combination made of the values so far and more values from the next one on.
+   * @param combinations The list to add the combinations to.
+   * @param size The size of the board.
+   * @param next The smallest value that can still be added.
+   * @param left The number of values left to add.
+   * @param remainder The sum the values left have to add up to.
+   * @param mask The values so far.
+   */
+  private static void combine(List<Long> combinations, int size, int next, int left,
+      int remainder, long mask) {
+    if (left == 0) {
+      if (remainder == 0) {
+        combinations.add(mask);
+      }
+      return;
+    }
+    for (int value = next; value <= size && value <= remainder; value++) {
+      combine(combinations, size, value + 1, left - 1, remainder - value,
+          mask | 1L << (value - 1));
+    }
+  }
+
+  @Override
+  public boolean fits(SudokuEncoder encoder) {
+    if (cells.isEmpty() || cells.size() > encoder.getSize()
+        || encoder.getSize() > CandidatePropagator.MAX_SIZE) {
+      return false;
+    }
+    for (int cell : cells) {
+      if (!encoder.isCell(cell) || cells.indexOf(cell) != cells.lastIndexOf(cell)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public int auxiliaryVariables(SudokuEncoder encoder) {
+    return combinations(encoder.getSize()).size();
+  }
+
+  @Override
+  public void addTo(ISolver solver, IVecInt clause, SudokuEncoder encoder, int firstAuxiliary)
+      throws ContradictionException {
+    List<Long> combinations = combinations(encoder.getSize());
+    if (combinations.isEmpty()) {
+      throw new ContradictionException("No combination fills the cage");
+    }
+    clause.clear();
+    for (int c = 0; c < combinations.size(); c++) {
+      clause.push(firstAuxiliary + c);
+    }
+    solver.addClause(clause);
+    for (int c = 0; c < combinations.size(); c++) {
+      for (long mask = combinations.get(c); mask != 0; mask &= mask - 1) {
+        int value = Long.numberOfTrailingZeros(mask) + 1;
+        clause.clear();
+        clause.push(-(firstAuxiliary + c));
+        for (int cell : cells) {
+          clause.push(encoder.cellVar(cell, value));
+        }
+        solver.addClause(clause);
+      }
+    }
+  }
+
+  @Override
+  public long allowedValues(SudokuEncoder encoder, int cell) {
+    if (!cells.contains(cell)) {
+      return -1L;
+    }
+    long allowed = 0;
+    for (long combination : combinations(encoder.getSize())) {
+      allowed |= combination;
+    }
+    return allowed;
+  }
+
+  @Override
+  public List<RelationConstraint> relations(SudokuEncoder encoder) {
+    List<CellPair> pairs = new ArrayList<>();
+    for (int i = 0; i < cells.size(); i++) {
+      for (int j = i + 1; j < cells.size(); j++) {
+        pairs.add(new CellPair(cells.get(i), cells.get(j)));
+      }
+    }
+    return Collections.singletonList(new RelationConstraint(DIFFERENT, pairs));
+  }
+
+  @Override
+  public boolean isSatisfied(SudokuEncoder encoder, int[][] sudoku) {
+    long seen = 0;
+    int total = 0;
+    for (int cell : cells) {
+      int value = KropkiPuzzle.valueAt(encoder, sudoku, cell);
+      if ((seen & 1L << (value - 1)) != 0) {
+        return false;
+      }
+      seen |= 1L << (value - 1);
+      total += value;
+    }
+    return total == sum;
+  }
+
+  @Override
+  public String toString() {
+    return "cage " + sum + " " + cells;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o instanceof KillerCage) {
+      KillerCage compare = (KillerCage) o;
+      return this.cells.equals(compare.cells) && this.sum == compare.sum;
+    }
+    return false;
+  }
+
+  @Override
+  public int hashCode() {
+    return cells.hashCode() * 31 + sum;
+  }
+}
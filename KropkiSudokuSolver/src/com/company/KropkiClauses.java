@@ -0,0 +1,102 @@
+package com.company;
+
+import java.util.HashSet;
+import java.util.List;
+import org.sat4j.specs.ContradictionException;
+import org.sat4j.specs.ISolver;
+import org.sat4j.specs.IVecInt;
+
+/**
+ * Builds the clauses for the Kropki constraint between a pair of orthogonal cells. A pair with a
+ * white dot holds consecutive values, a pair with a black dot holds values where one is double the
+ * other, and a pair with no dot holds neither. Each group of clauses can optionally be guarded by
+ * a selector literal, so that the group only applies when the selector is assumed true. Each
+ * dot's clauses are compiled once per board size by its ValueRelation.
+ */
+public final class KropkiClauses {
+
+  /**
+   * No selector, the clauses always apply.
+   */
+  public static final int NO_SELECTOR = 0;
+
+  /**
+   * The relation of a white dot, consecutive values.
+   */
+  public static final ValueRelation WHITE_DOT = ValueRelation.difference(1);
+
+  /**
+   * The relation of a black dot, values where one is double the other.
+   */
+  public static final ValueRelation BLACK_DOT = ValueRelation.ratio(2);
+
+  /**
+   * The relation of a pair with no dot, values related by neither dot.
+   */
+  public static final ValueRelation NO_DOT = WHITE_DOT.or(BLACK_DOT).negate();
+
+  private KropkiClauses() {
+  }
+
+  /**
+   * Parses a list of cells into cell pairs, with every two cells in the list forming a pair.
+   * @param dots The list of cells that have dot constraints.
+   * @return The set of cell pairs.
+   */
+  public static HashSet<CellPair> parsePairs(List<Integer> dots) {
+    HashSet<CellPair> ans = new HashSet<>();
+    for (int i = 0; i < dots.size() - 1; i++) {
+      int firstCell = dots.get(i);
+      int secondCell = dots.get(i + 1);
+      CellPair current = new CellPair(firstCell, secondCell);
+      ans.add(current);
+      i++;
+    }
+    return ans;
+  }
+
+  /**
+   * Adds the constraints to a cell pair with a white dot. Each value in one cell needs a value one
+   * higher or one lower in the other.
+   * @param solver The solver to add the clauses to.
+   * @param clause The buffer used to build each clause.
+   * @param encoder The shape of the board.
+   * @param pair The cell pair to be constrained upon.
+   * @param selector The selector guarding the clauses, or NO_SELECTOR.
+   * @throws ContradictionException If the solver finds the clauses trivially unsatisfiable.
+   */
+  public static void addWhiteDotConstraint(ISolver solver, IVecInt clause, SudokuEncoder encoder,
+      CellPair pair, int selector) throws ContradictionException {
+    WHITE_DOT.addTo(solver, clause, encoder, pair, selector);
+  }
+
+  /**
+   * Adds the constraints for a cell pair with a black dot. Each value in one cell needs a value
+   * half or double of it in the other, and values with neither are ruled out.
+   * @param solver The solver to add the clauses to.
+   * @param clause The buffer used to build each clause.
+   * @param encoder The shape of the board.
+   * @param pair The cell pair to be constrained upon.
+   * @param selector The selector guarding the clauses, or NO_SELECTOR.
+   * @throws ContradictionException If the solver finds the clauses trivially unsatisfiable.
+   */
+  public static void addBlackDotConstraint(ISolver solver, IVecInt clause, SudokuEncoder encoder,
+      CellPair pair, int selector) throws ContradictionException {
+    BLACK_DOT.addTo(solver, clause, encoder, pair, selector);
+  }
+
+  /**
+   * Adds the constraints for a pair of cells with no dot, ruling out every pair of values that are
+   * consecutive or where one is double the other.
+   * @param solver The solver to add the clauses to.
+   * @param clause The buffer used to build each clause.
+   * @param encoder The shape of the board.
+   * @param pair The cell pair to be constrained upon.
+   * @param selector The selector guarding the clauses, or NO_SELECTOR.
+   * @throws ContradictionException If the solver finds the clauses trivially unsatisfiable.
+   */
+  public static void addNoDotConstraint(ISolver solver, IVecInt clause, SudokuEncoder encoder,
+      CellPair pair, int selector) throws ContradictionException {
+    NO_DOT.addTo(solver, clause, encoder, pair, selector);
+  }
+}
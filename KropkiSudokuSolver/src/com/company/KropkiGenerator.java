@@ -0,0 +1,263 @@
+package com.company;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Generates minimal Kropki sudoku puzzles. Each puzzle starts from a random valid grid and every
+ * dot of that grid, with the pairs without a dot left unconstrained, since a removed dot can't be
+ * told apart from a pair that never had one. Dots are then removed one at a time in random order,
+ * and a removal is kept only while the grid is still the only solution. Once every dot has been
+ * tried, no single dot can be removed, so the puzzle is minimal. Grids whose full set of dots
+ * doesn't give a unique solution are thrown away.
+ *
+ * Puzzles are generated in parallel, each worker thread reusing one warm KropkiSolverSession for
+ * every uniqueness check. Removals that candidate propagation alone proves unique never reach the
+ * solver. Puzzle i is generated from a Random seeded by the generator's seed and i, so the output
+ * doesn't depend on the number of threads. A worker measured about 45 minimal 9x9 puzzles per
+ * minute, so thousands of puzzles per minute needs dozens of cores rather than a faster check.
+ */
+public class KropkiGenerator {
+
+  private static final int MAX_ATTEMPTS = 1000;
+  private static final long SEED_STRIDE = 0x9E3779B97F4A7C15L;
+
+  private final SudokuEncoder encoder;
+  private final int threads;
+  private final long seed;
+
+  /**
+   * Constructs a generator of 9x9 puzzles on every core, with a seed taken from the clock.
+   */
+  public KropkiGenerator() {
+    this(SudokuEncoder.getStandard(), Runtime.getRuntime().availableProcessors(),
+        System.nanoTime());
+  }
+
+  /**
+   * Constructs a generator.
+   * @param encoder The shape of the board of every puzzle, which has to fit a
+   * CandidatePropagator.
+   * @param threads The number of worker threads.
+   * @param seed The seed every puzzle's randomness is derived from.
+   * @throws IllegalArgumentException If the board is too large or there are no threads.
+   */
+  public KropkiGenerator(SudokuEncoder encoder, int threads, long seed) {
+    if (!CandidatePropagator.supports(encoder)) {
+      throw new IllegalArgumentException("Invalid Size");
+    }
+    if (threads < 1) {
+      throw new IllegalArgumentException("Invalid number of threads");
+    }
+    this.encoder = encoder;
+    this.threads = threads;
+    this.seed = seed;
+  }
+
+  /**
+   * Generates puzzles on a pool of worker threads.
+   * @param count The number of puzzles.
+   * @return The puzzles, in the order of their seeds.
+   * @throws IllegalStateException If a worker fails or is interrupted.
+   */
+  public List<KropkiPuzzle> generate(int count) {
+    ExecutorService pool = Executors.newFixedThreadPool(threads);
+    ThreadLocal<KropkiSolverSession> sessions = ThreadLocal.withInitial(
+        () -> new KropkiSolverSession(encoder, AtMostOneEncoding.ExactlyOne));
+    try {
+      List<Future<KropkiPuzzle>> futures = new ArrayList<>();
+      for (int i = 0; i < count; i++) {
+        Random random = new Random(seed + i * SEED_STRIDE);
+        futures.add(pool.submit(() -> generate(sessions.get(), random)));
+      }
+      List<KropkiPuzzle> puzzles = new ArrayList<>();
+      for (Future<KropkiPuzzle> future : futures) {
+        puzzles.add(future.get());
+      }
+      return puzzles;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Generation interrupted");
+    } catch (ExecutionException e) {
+      throw new IllegalStateException("Generation failed");
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+
+  /**
+   * Generates a single puzzle.
+   * @param session The session used for every uniqueness check, on the generator's board.
+   * @param random The source of randomness.
+   * @return The minimal puzzle.
+   * @throws IllegalStateException If no grid with a unique full set of dots is found.
+   */
+  public KropkiPuzzle generate(KropkiSolverSession session, Random random) {
+    for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+      KropkiPuzzle puzzle = reduce(session, randomGrid(encoder, random), random);
+      if (puzzle != null) {
+        return puzzle;
+      }
+    }
+    throw new IllegalStateException("Unable to generate a puzzle");
+  }
+
+  /**
+   * Fills a board with a random valid sudoku, ignoring dots, by guessing the cell with the fewest
+   * candidates with its candidates in random order.
+   * @param encoder The shape of the board.
+   * @param random The source of randomness.
+   * @return The grid.
+   */
+  static int[][] randomGrid(SudokuEncoder encoder, Random random) {
+    int size = encoder.getSize();
+    int[][] grid = new int[size][size];
+    fill(encoder, grid, new long[size], new long[size], new long[size], random);
+    return grid;
+  }
+
+  /**
+   * Fills the empty cells of a grid, undoing its guesses if it gets stuck.
+   * @param encoder The shape of the board.
+   * @param grid The grid, with zeros for empty cells.
+   * @param rows The values used in each row.
+   * @param columns The values used in each column.
+   * @param boxes The values used in each box.
+   * @param random The source of randomness.
+   * @return True if the grid was filled.
+   */
+  private static boolean fill(SudokuEncoder encoder, int[][] grid, long[] rows, long[] columns,
+      long[] boxes, Random random) {
+    int size = encoder.getSize();
+    int bestRow = -1;
+    int bestColumn = -1;
+    long bestFree = 0;
+    int fewest = Integer.MAX_VALUE;
+    for (int i = 0; i < size; i++) {
+      for (int j = 0; j < size; j++) {
+        if (grid[i][j] == 0) {
+          long free = ~(rows[i] | columns[j] | boxes[box(encoder, i, j)]) & full(size);
+          int count = Long.bitCount(free);
+          if (count < fewest) {
+            bestRow = i;
+            bestColumn = j;
+            bestFree = free;
+            fewest = count;
+          }
+        }
+      }
+    }
+    if (bestRow == -1) {
+      return true;
+    }
+    List<Integer> values = new ArrayList<>();
+    for (long mask = bestFree; mask != 0; mask &= mask - 1) {
+      values.add(Long.numberOfTrailingZeros(mask) + 1);
+    }
+    Collections.shuffle(values, random);
+    int box = box(encoder, bestRow, bestColumn);
+    for (int value : values) {
+      long bit = 1L << (value - 1);
+      grid[bestRow][bestColumn] = value;
+      rows[bestRow] |= bit;
+      columns[bestColumn] |= bit;
+      boxes[box] |= bit;
+      if (fill(encoder, grid, rows, columns, boxes, random)) {
+        return true;
+      }
+      rows[bestRow] &= ~bit;
+      columns[bestColumn] &= ~bit;
+      boxes[box] &= ~bit;
+    }
+    grid[bestRow][bestColumn] = 0;
+    return false;
+  }
+
+  /**
+   * Removes the dots of a grid one at a time in random order, keeping each dot whose removal
+   * would allow another solution.
+   * @param session The session used for every uniqueness check.
+   * @param grid The solved grid.
+   * @param random The source of randomness.
+   * @return The minimal puzzle, or null if the full set of dots has more than one solution.
+   */
+  private KropkiPuzzle reduce(KropkiSolverSession session, int[][] grid, Random random) {
+    KropkiPuzzle full = KropkiPuzzle.fromSolution(encoder, grid);
+    List<CellPair> dots = new ArrayList<>(full.getWhiteDotPairs());
+    int whiteCount = dots.size();
+    dots.addAll(full.getBlackDotPairs());
+    List<Integer> order = new ArrayList<>();
+    for (int i = 0; i < dots.size(); i++) {
+      order.add(i);
+    }
+    Collections.shuffle(order, random);
+    boolean[] kept = new boolean[dots.size()];
+    for (int i = 0; i < kept.length; i++) {
+      kept[i] = true;
+    }
+    int guard = session.addExclusion(grid);
+    try {
+      if (session.hasSolution(build(dots, whiteCount, kept), guard)) {
+        return null;
+      }
+      for (int dot : order) {
+        kept[dot] = false;
+        KropkiPuzzle reduced = build(dots, whiteCount, kept);
+        if (!CandidatePropagator.propagate(reduced).isSolved()
+            && session.hasSolution(reduced, guard)) {
+          kept[dot] = true;
+        }
+      }
+    } finally {
+      session.removeExclusion(guard);
+    }
+    return build(dots, whiteCount, kept);
+  }
+
+  /**
+   * Builds the puzzle holding the kept dots, with every other pair unconstrained.
+   * @param dots The white dot pairs followed by the black dot pairs.
+   * @param whiteCount The number of white dot pairs.
+   * @param kept Whether each dot is kept.
+   * @return The puzzle.
+   */
+  private KropkiPuzzle build(List<CellPair> dots, int whiteCount, boolean[] kept) {
+    List<Integer> whiteDots = new ArrayList<>();
+    List<Integer> blackDots = new ArrayList<>();
+    for (int i = 0; i < dots.size(); i++) {
+      if (kept[i]) {
+        List<Integer> target = i < whiteCount ? whiteDots : blackDots;
+        target.add(dots.get(i).getFirstCell());
+        target.add(dots.get(i).getSecondCell());
+      }
+    }
+    return new KropkiPuzzle(encoder, whiteDots, blackDots, false);
+  }
+
+  /**
+   * Gets the index of the box holding a cell.
+   * @param encoder The shape of the board.
+   * @param row The row of the cell, from 0.
+   * @param column The column of the cell, from 0.
+   * @return The index of the box, in row then column order from 0.
+   */
+  private static int box(SudokuEncoder encoder, int row, int column) {
+    int boxesPerRow = encoder.getSize() / encoder.getBoxColumns();
+    return row / encoder.getBoxRows() * boxesPerRow + column / encoder.getBoxColumns();
+  }
+
+  /**
+   * Gets the bitmask holding every value of a board.
+   * @param size The size of the board.
+   * @return The bitmask.
+   */
+  private static long full(int size) {
+    return size == Long.SIZE ? -1L : (1L << size) - 1;
+  }
+}
@@ -0,0 +1,382 @@
+package com.company;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * An immutable Kropki sudoku puzzle, made up of the shape of its board, the cell pairs with white
+ * dots and the cell pairs with black dots. Every other orthogonal cell pair has no dot, so its
+ * values are neither consecutive nor double one another, unless the puzzle doesn't give all of
+ * its dots, in which case those pairs are unconstrained. A puzzle may also give the digits of
+ * some of its cells, and carry variant constraints on top of the dots, each a ConstraintPlugin.
+ * The dot of every orthogonal pair is also kept in a table in the order of the encoder's pairs, so
+ * encoding a puzzle never has to look a pair up.
+ */
+public final class KropkiPuzzle {
+
+  /**
+   * The pair has no dot, or its dot is hidden if not all dots are given.
+   */
+  static final byte NO_DOT = 0;
+
+  /**
+   * The pair has a white dot.
+   */
+  static final byte WHITE_DOT = 1;
+
+  /**
+   * The pair has a black dot.
+   */
+  static final byte BLACK_DOT = 2;
+
+  private final SudokuEncoder encoder;
+  private final Set<CellPair> whiteDotPairs;
+  private final Set<CellPair> blackDotPairs;
+  private final boolean allDotsGiven;
+  private final Map<Integer, Integer> givens;
+  private final List<ConstraintPlugin> constraints;
+  private final byte[] dots;
+
+  /**
+   * Constructs a puzzle on the standard 9x9 board from lists of cells, with every two cells in a
+   * list forming a pair.
+   * @param whiteDots The list of cells that have white dot constraints.
+   * @param blackDots The list of cell that have black dot constraints.
+   */
+  public KropkiPuzzle(List<Integer> whiteDots, List<Integer> blackDots) {
+    this(SudokuEncoder.getStandard(), whiteDots, blackDots);
+  }
+
+  /**
+   * Constructs a puzzle from lists of cells, with every two cells in a list forming a pair.
+   * @param encoder The shape of the board.
+   * @param whiteDots The list of cells that have white dot constraints.
+   * @param blackDots The list of cell that have black dot constraints.
+   */
+  public KropkiPuzzle(SudokuEncoder encoder, List<Integer> whiteDots, List<Integer> blackDots) {
+    this(encoder, whiteDots, blackDots, true);
+  }
+
+  /**
+   * Constructs a puzzle from lists of cells, with every two cells in a list forming a pair.
+   * @param encoder The shape of the board.
+   * @param whiteDots The list of cells that have white dot constraints.
+   * @param blackDots The list of cell that have black dot constraints.
+   * @param allDotsGiven Whether pairs without a dot are constrained to have no dot.
+   */
+  public KropkiPuzzle(SudokuEncoder encoder, List<Integer> whiteDots, List<Integer> blackDots,
+      boolean allDotsGiven) {
+    this(encoder, Collections.unmodifiableSet(KropkiClauses.parsePairs(whiteDots)),
+        Collections.unmodifiableSet(KropkiClauses.parsePairs(blackDots)), allDotsGiven,
+        Collections.emptyMap(), Collections.emptyList(), null);
+  }
+
+  /**
+   * Constructs a puzzle from its already parsed parts.
+   * @param encoder The shape of the board.
+   * @param whiteDotPairs The unmodifiable set of cell pairs with white dots.
+   * @param blackDotPairs The unmodifiable set of cell pairs with black dots.
+   * @param allDotsGiven Whether pairs without a dot are constrained to have no dot.
+   * @param givens The unmodifiable map of given cells to their digits.
+   * @param constraints The unmodifiable list of variant constraints.
+   * @param dots The dot of every pair, or null to build it from the sets.
+   */
+  private KropkiPuzzle(SudokuEncoder encoder, Set<CellPair> whiteDotPairs,
+      Set<CellPair> blackDotPairs, boolean allDotsGiven, Map<Integer, Integer> givens,
+      List<ConstraintPlugin> constraints, byte[] dots) {
+    this.encoder = encoder;
+    this.whiteDotPairs = whiteDotPairs;
+    this.blackDotPairs = blackDotPairs;
+    this.allDotsGiven = allDotsGiven;
+    this.givens = givens;
+    this.constraints = constraints;
+    this.dots = dots != null ? dots : dots(encoder, whiteDotPairs, blackDotPairs);
+  }
+
+  /**
+   * Creates a puzzle from the dot of every pair of its board, without any givens or constraints.
+   * @param encoder The shape of the board.
+   * @param dots The dot of every pair, in the order of the encoder's pairs, which is kept as is.
+   * @param allDotsGiven Whether pairs without a dot are constrained to have no dot.
+   * @return The puzzle.
+   */
+  static KropkiPuzzle fromDots(SudokuEncoder encoder, byte[] dots, boolean allDotsGiven) {
+    List<CellPair> pairs = encoder.getCellPairs();
+    Set<CellPair> whiteDotPairs = new HashSet<>();
+    Set<CellPair> blackDotPairs = new HashSet<>();
+    for (int i = 0; i < dots.length; i++) {
+      if (dots[i] == WHITE_DOT) {
+        whiteDotPairs.add(pairs.get(i));
+      } else if (dots[i] == BLACK_DOT) {
+        blackDotPairs.add(pairs.get(i));
+      }
+    }
+    return new KropkiPuzzle(encoder, Collections.unmodifiableSet(whiteDotPairs),
+        Collections.unmodifiableSet(blackDotPairs), allDotsGiven, Collections.emptyMap(),
+        Collections.emptyList(), dots);
+  }
+
+  /**
+   * Builds the dot of every pair of a board.
+   * @param encoder The shape of the board.
+   * @param whiteDotPairs The set of cell pairs with white dots.
+   * @param blackDotPairs The set of cell pairs with black dots.
+   * @return The dot of every pair, in the order of the encoder's pairs.
+   */
+  private static byte[] dots(SudokuEncoder encoder, Set<CellPair> whiteDotPairs,
+      Set<CellPair> blackDotPairs) {
+    List<CellPair> pairs = encoder.getCellPairs();
+    byte[] dots = new byte[pairs.size()];
+    for (int i = 0; i < dots.length; i++) {
+      if (whiteDotPairs.contains(pairs.get(i))) {
+        dots[i] = WHITE_DOT;
+      } else if (blackDotPairs.contains(pairs.get(i))) {
+        dots[i] = BLACK_DOT;
+      }
+    }
+    return dots;
+  }
+
+  /**
+   * Creates a copy of this puzzle with given digits, replacing any it already has.
+   * @param givens The map of given cells, like rc or rrcc, to their digits.
+   * @return The puzzle with the givens.
+   * @throws IllegalArgumentException If a cell or digit is not on the board.
+   */
+  public KropkiPuzzle withGivens(Map<Integer, Integer> givens) {
+    for (Map.Entry<Integer, Integer> given : givens.entrySet()) {
+      if (!encoder.isCell(given.getKey()) || given.getValue() < 1
+          || given.getValue() > encoder.getSize()) {
+        throw new IllegalArgumentException("Invalid Givens");
+      }
+    }
+    return new KropkiPuzzle(encoder, whiteDotPairs, blackDotPairs, allDotsGiven,
+        Collections.unmodifiableMap(new TreeMap<>(givens)), constraints, dots);
+  }
+
+  /**
+   * Creates a copy of this puzzle with variant constraints, replacing any it already has.
+   * @param constraints The list of constraints.
+   * @return The puzzle with the constraints.
+   * @throws IllegalArgumentException If a constraint doesn't fit the board.
+   */
+  public KropkiPuzzle withConstraints(List<ConstraintPlugin> constraints) {
+    for (ConstraintPlugin constraint : constraints) {
+      if (!constraint.fits(encoder)) {
+        throw new IllegalArgumentException("Invalid Constraints");
+      }
+    }
+    return new KropkiPuzzle(encoder, whiteDotPairs, blackDotPairs, allDotsGiven, givens,
+        Collections.unmodifiableList(new ArrayList<>(constraints)), dots);
+  }
+
+  /**
+   * Parses a puzzle from a line holding the white dot cells, a '|', and then the black dot cells,
+   * optionally followed by another '|' and the givens.
+   * @param line The line holding the puzzle.
+   * @param encoder The shape of the board.
+   * @return The puzzle.
+   * @throws IllegalArgumentException If the line is invalid.
+   */
+  public static KropkiPuzzle parse(String line, SudokuEncoder encoder) {
+    String[] dots = line.split("\\|", -1);
+    if (dots.length != 2 && dots.length != 3) {
+      throw new IllegalArgumentException("Invalid Constraints");
+    }
+    KropkiPuzzle puzzle = new KropkiPuzzle(encoder,
+        parseDotCells(dots[0], encoder), parseDotCells(dots[1], encoder));
+    if (dots.length == 3) {
+      puzzle = puzzle.withGivens(parseGivens(dots[2], encoder));
+    }
+    return puzzle;
+  }
+
+  /**
+   * Parses a line of space separated cell coordinates, two for every dot.
+   * @param line The line of cell coordinates, which may be blank.
+   * @param encoder The shape of the board the cells are on.
+   * @return The list of cell coordinates.
+   * @throws IllegalArgumentException If a coordinate is invalid.
+   */
+  static List<Integer> parseDotCells(String line, SudokuEncoder encoder) {
+    List<Integer> cells = new ArrayList<>();
+    String trimmed = line.trim();
+    if (trimmed.isEmpty()) {
+      return cells;
+    }
+    for (String cell : trimmed.split("\\s+")) {
+      try {
+        int current = Integer.valueOf(cell);
+        if (!encoder.isCell(current)) {
+          throw new IllegalArgumentException("Invalid Constraints");
+        }
+        cells.add(current);
+      } catch (NumberFormatException e) {
+        throw new IllegalArgumentException("Invalid Constraints");
+      }
+    }
+    return cells;
+  }
+
+  /**
+   * Parses a line of space separated givens, each a cell coordinate, an '=' and its digit.
+   * @param line The line of givens, which may be blank.
+   * @param encoder The shape of the board the cells are on.
+   * @return The map of given cells to their digits.
+   * @throws IllegalArgumentException If a given is invalid.
+   */
+  static Map<Integer, Integer> parseGivens(String line, SudokuEncoder encoder) {
+    Map<Integer, Integer> givens = new TreeMap<>();
+    String trimmed = line.trim();
+    if (trimmed.isEmpty()) {
+      return givens;
+    }
+    for (String given : trimmed.split("\\s+")) {
+      String[] parts = given.split("=");
+      if (parts.length != 2) {
+        throw new IllegalArgumentException("Invalid Givens");
+      }
+      try {
+        int cell = Integer.valueOf(parts[0]);
+        int digit = Integer.valueOf(parts[1]);
+        if (!encoder.isCell(cell) || digit < 1 || digit > encoder.getSize()
+            || givens.containsKey(cell)) {
+          throw new IllegalArgumentException("Invalid Givens");
+        }
+        givens.put(cell, digit);
+      } catch (NumberFormatException e) {
+        throw new IllegalArgumentException("Invalid Givens");
+      }
+    }
+    return givens;
+  }
+
+  /**
+   * Creates the puzzle holding every dot of a solved board. A pair of cells holding 1 and 2 gets a
+   * white dot.
+   * @param encoder The shape of the board.
+   * @param sudoku The solved board.
+   * @return The puzzle.
+   */
+  public static KropkiPuzzle fromSolution(SudokuEncoder encoder, int[][] sudoku) {
+    List<Integer> whiteDots = new ArrayList<>();
+    List<Integer> blackDots = new ArrayList<>();
+    for (CellPair pair : encoder.getCellPairs()) {
+      int first = valueAt(encoder, sudoku, pair.getFirstCell());
+      int second = valueAt(encoder, sudoku, pair.getSecondCell());
+      if (Math.abs(first - second) == 1) {
+        whiteDots.add(pair.getFirstCell());
+        whiteDots.add(pair.getSecondCell());
+      } else if (first == second * 2 || second == first * 2) {
+        blackDots.add(pair.getFirstCell());
+        blackDots.add(pair.getSecondCell());
+      }
+    }
+    return new KropkiPuzzle(encoder, whiteDots, blackDots);
+  }
+
+  /**
+   * Gets the value of a cell on a board.
+   * @param encoder The shape of the board.
+   * @param sudoku The board.
+   * @param cell The coordinates of the cell.
+   * @return The value of the cell.
+   */
+  static int valueAt(SudokuEncoder encoder, int[][] sudoku, int cell) {
+    return sudoku[encoder.rowOfCell(cell) - 1][encoder.columnOfCell(cell) - 1];
+  }
+
+  /**
+   * Getter for the shape of the board.
+   * @return The encoder of the board.
+   */
+  public SudokuEncoder getEncoder() {
+    return encoder;
+  }
+
+  /**
+   * Getter for the white dot pairs.
+   * @return The unmodifiable set of cell pairs with white dots.
+   */
+  public Set<CellPair> getWhiteDotPairs() {
+    return whiteDotPairs;
+  }
+
+  /**
+   * Getter for the black dot pairs.
+   * @return The unmodifiable set of cell pairs with black dots.
+   */
+  public Set<CellPair> getBlackDotPairs() {
+    return blackDotPairs;
+  }
+
+  /**
+   * Gets the dot of a pair.
+   * @param pair The index of the pair in the encoder's list.
+   * @return NO_DOT, WHITE_DOT or BLACK_DOT.
+   */
+  byte dotAt(int pair) {
+    return dots[pair];
+  }
+
+  /**
+   * Getter for whether every dot is given, so that pairs without a dot have no dot.
+   * @return True if pairs without a dot are constrained, false if they are unconstrained.
+   */
+  public boolean isAllDotsGiven() {
+    return allDotsGiven;
+  }
+
+  /**
+   * Getter for the given digits.
+   * @return The unmodifiable map of given cells to their digits, in cell order.
+   */
+  public Map<Integer, Integer> getGivens() {
+    return givens;
+  }
+
+  /**
+   * Getter for the variant constraints.
+   * @return The unmodifiable list of constraints on top of the dots.
+   */
+  public List<ConstraintPlugin> getConstraints() {
+    return constraints;
+  }
+
+  @Override
+  public String toString() {
+    return encoder + " White: " + whiteDotPairs + ", Black: " + blackDotPairs
+        + (allDotsGiven ? "" : ", Some dots hidden")
+        + (givens.isEmpty() ? "" : ", Givens: " + givens)
+        + (constraints.isEmpty() ? "" : ", Constraints: " + constraints);
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o instanceof KropkiPuzzle) {
+      KropkiPuzzle compare = (KropkiPuzzle) o;
+      return this.encoder.equals(compare.encoder)
+          && this.whiteDotPairs.equals(compare.whiteDotPairs)
+          && this.blackDotPairs.equals(compare.blackDotPairs)
+          && this.allDotsGiven == compare.allDotsGiven
+          && this.givens.equals(compare.givens)
+          && this.constraints.equals(compare.constraints);
+    }
+    return false;
+  }
+
+  @Override
+  public int hashCode() {
+    int hash = (31 * encoder.hashCode() + whiteDotPairs.hashCode()) * 31 + blackDotPairs.hashCode();
+    hash = (hash * 31 + (allDotsGiven ? 1 : 0)) * 31 + givens.hashCode();
+    return hash * 31 + constraints.hashCode();
+  }
+}
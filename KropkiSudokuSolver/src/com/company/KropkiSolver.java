@@ -0,0 +1,15 @@
+package com.company;
+
+/**
+ * Anything that can solve a Kropki sudoku puzzle, so that the SAT model, a warm SAT session and
+ * the backtracking engine can be used in place of each other.
+ */
+public interface KropkiSolver {
+
+  /**
+   * Finds the satisfiability of a Kropki sudoku puzzle.
+   * @param puzzle The puzzle to solve.
+   * @return The result of the solve.
+   */
+  SolveResult solve(KropkiPuzzle puzzle);
+}
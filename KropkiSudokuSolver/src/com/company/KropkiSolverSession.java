@@ -0,0 +1,274 @@
+package com.company;
+
+import java.util.List;
+import java.util.Map;
+import org.sat4j.core.VecInt;
+import org.sat4j.minisat.SolverFactory;
+import org.sat4j.specs.ContradictionException;
+import org.sat4j.specs.ISolver;
+import org.sat4j.specs.IVecInt;
+import org.sat4j.specs.TimeoutException;
+
+/**
+ * A long lived SAT solver for solving many Kropki sudoku puzzles one after another. The base
+ * sudoku clauses are loaded once, and the white, black and no dot clauses of every cell pair are
+ * all loaded up front, each group guarded by its own selector literal. A puzzle is then solved by
+ * assuming the selector of the right group for every pair, so the solver keeps its learned
+ * clauses and heuristics from one puzzle to the next. A session only solves puzzles of the board
+ * shape it was built for. A session is not thread safe, each thread should use its own.
+ *
+ * Every solution ruled out by addExclusion leaves a selector variable and two clauses behind, so
+ * once EXCLUSIONS_PER_RELOAD of them have been removed and none is in use, the solver is rebuilt
+ * from scratch rather than growing for as long as the session lives.
+ */
+public class KropkiSolverSession implements KropkiSolver {
+
+  static final int EXCLUSIONS_PER_RELOAD = 64;
+
+  private SudokuEncoder encoder;
+  private AtMostOneEncoding encoding;
+  private ISolver solver;
+  private List<CellPair> pairs;
+  private int[] whiteSelectors;
+  private int[] blackSelectors;
+  private int[] noDotSelectors;
+  private IVecInt assumptions;
+  private int removedExclusions;
+  private int openExclusions;
+
+  /**
+   * Constructs a session for the standard 9x9 board, loading every clause into a new solver.
+   * @throws IllegalStateException If the clauses are trivially unsatisfiable.
+   */
+  public KropkiSolverSession() {
+    this(SudokuEncoder.getStandard());
+  }
+
+  /**
+   * Constructs a session using the pairwise encoding for uniqueness, loading every clause into a
+   * new solver.
+   * @param encoder The shape of the board.
+   * @throws IllegalStateException If the clauses are trivially unsatisfiable.
+   */
+  public KropkiSolverSession(SudokuEncoder encoder) {
+    this(encoder, AtMostOneEncoding.Pairwise);
+  }
+
+  /**
+   * Constructs a session, loading every clause into a new solver.
+   * @param encoder The shape of the board.
+   * @param encoding The encoding of the uniqueness clauses.
+   * @throws IllegalStateException If the clauses are trivially unsatisfiable.
+   */
+  public KropkiSolverSession(SudokuEncoder encoder, AtMostOneEncoding encoding) {
+    this.encoder = encoder;
+    this.encoding = encoding;
+    this.pairs = encoder.getCellPairs();
+    this.whiteSelectors = new int[pairs.size()];
+    this.blackSelectors = new int[pairs.size()];
+    this.noDotSelectors = new int[pairs.size()];
+    this.assumptions = new VecInt(pairs.size() * 3);
+    load();
+  }
+
+  /**
+   * Loads every clause into a new solver, replacing the current one.
+   * @throws IllegalStateException If the clauses are trivially unsatisfiable.
+   */
+  private void load() {
+    solver = SolverFactory.newDefault();
+    solver.setTimeout(300); // 5 minute timeout
+    // Selectors are numbered after the cell variables and any extra variables of the encoding
+    BaseClauseSet base = BaseClauseSet.forBoard(encoder, encoding);
+    int baseVars = base.numberOfVariables();
+    solver.newVar(baseVars + pairs.size() * 3);
+    IVecInt clause = new VecInt(encoder.getSize());
+    try {
+      base.addTo(solver, clause);
+      for (int i = 0; i < pairs.size(); i++) {
+        CellPair pair = pairs.get(i);
+        whiteSelectors[i] = baseVars + i * 3 + 1;
+        blackSelectors[i] = baseVars + i * 3 + 2;
+        noDotSelectors[i] = baseVars + i * 3 + 3;
+        KropkiClauses.addWhiteDotConstraint(solver, clause, encoder, pair, whiteSelectors[i]);
+        KropkiClauses.addBlackDotConstraint(solver, clause, encoder, pair, blackSelectors[i]);
+        KropkiClauses.addNoDotConstraint(solver, clause, encoder, pair, noDotSelectors[i]);
+      }
+    } catch (ContradictionException e) {
+      throw new IllegalStateException("Unable to load the base clauses");
+    }
+  }
+
+  /**
+   * Solves a puzzle under the assumptions selecting its dot constraints.
+   * @param puzzle The puzzle to solve.
+   * @return The result of the solve.
+   * @throws IllegalArgumentException If the puzzle is on a different board shape or has variant
+   * constraints.
+   */
+  @Override
+  public SolveResult solve(KropkiPuzzle puzzle) {
+    assume(puzzle);
+    SolveStatistics before = SolveStatistics.counters(solver);
+    long startNanos = System.nanoTime();
+    long startBytes = SolveStatistics.allocatedBytes();
+    SolveResult result;
+    try {
+      if (solver.isSatisfiable(assumptions)) {
+        int[][] sudoku = encoder.decode(solver.model());
+        result = new SolveResult(SolveResult.Status.Satisfiable, sudoku, encoder);
+      } else {
+        result = SolveResult.unsolved(SolveResult.Status.Unsatisfiable, encoder);
+      }
+    } catch (TimeoutException e) {
+      result = SolveResult.unsolved(SolveResult.Status.Timeout, encoder);
+    }
+    return result.withStatistics(SolveStatistics.of(solver, before, startNanos, startBytes));
+  }
+
+  /**
+   * Checks whether a puzzle has exactly one solution. The first solution found is ruled out by a
+   * clause guarded by a new selector, which is switched off for good afterwards.
+   * @param puzzle The puzzle to check.
+   * @return True if the puzzle has a unique solution.
+   * @throws IllegalArgumentException If the puzzle is on a different board shape or has variant
+   * constraints.
+   * @throws IllegalStateException If the check times out.
+   */
+  public boolean isUnique(KropkiPuzzle puzzle) {
+    SolveResult first = solve(puzzle);
+    if (first.getStatus() == SolveResult.Status.Timeout) {
+      throw new IllegalStateException("Unable to check uniqueness in time");
+    }
+    if (!first.isSatisfiable()) {
+      return false;
+    }
+    int guard = addExclusion(first.getSudoku());
+    try {
+      return !hasSolution(puzzle, guard);
+    } finally {
+      removeExclusion(guard);
+    }
+  }
+
+  /**
+   * Adds a clause ruling out a solution, guarded by a new selector, so it only applies to solves
+   * that assume the selector. Every selector returned must be passed to removeExclusion.
+   * @param sudoku The solution to rule out.
+   * @return The selector guarding the clause.
+   */
+  int addExclusion(int[][] sudoku) {
+    openExclusions++;
+    int guard = solver.nextFreeVarId(true);
+    IVecInt clause = new VecInt(encoder.getSize() * encoder.getSize() + 1);
+    for (int i = 1; i <= encoder.getSize(); i++) {
+      for (int j = 1; j <= encoder.getSize(); j++) {
+        clause.push(-1 * encoder.var(i, j, sudoku[i - 1][j - 1]));
+      }
+    }
+    clause.push(-1 * guard);
+    try {
+      solver.addClause(clause);
+    } catch (ContradictionException e) {
+      throw new IllegalStateException("Unable to rule out the solution");
+    }
+    return guard;
+  }
+
+  /**
+   * Checks whether a puzzle has a solution other than the one ruled out by a selector.
+   * @param puzzle The puzzle to check.
+   * @param guard The selector returned by addExclusion.
+   * @return True if there is another solution.
+   * @throws IllegalArgumentException If the puzzle is on a different board shape or has variant
+   * constraints.
+   * @throws IllegalStateException If the check times out.
+   */
+  boolean hasSolution(KropkiPuzzle puzzle, int guard) {
+    assume(puzzle);
+    assumptions.push(guard);
+    try {
+      return solver.isSatisfiable(assumptions);
+    } catch (TimeoutException e) {
+      throw new IllegalStateException("Unable to check uniqueness in time");
+    }
+  }
+
+  /**
+   * Switches off the selector of a ruled out solution for good, so its clause never applies again.
+   * The solver is rebuilt once enough exclusions have been removed and none is in use.
+   * @param guard The selector returned by addExclusion.
+   */
+  void removeExclusion(int guard) {
+    openExclusions--;
+    removedExclusions++;
+    if (removedExclusions >= EXCLUSIONS_PER_RELOAD && openExclusions == 0) {
+      removedExclusions = 0;
+      load();
+      return;
+    }
+    IVecInt unit = new VecInt(new int[] {-1 * guard});
+    try {
+      solver.addClause(unit);
+    } catch (ContradictionException e) {
+      throw new IllegalStateException("Unable to remove the exclusion");
+    }
+  }
+
+  /**
+   * Gets the number of variables of the solver, which exclusions add to until it is rebuilt.
+   * @return The number of variables.
+   */
+  int variableCount() {
+    return solver.nVars();
+  }
+
+  /**
+   * Fills the assumptions with the selectors of the dot constraints of a puzzle. Pairs whose dot
+   * may be hidden have every selector off. Each given digit is assumed as its cell variable, so the
+   * solver's clauses stay the same for every puzzle.
+   * @param puzzle The puzzle to assume.
+   * @throws IllegalArgumentException If the puzzle is on a different board shape or has variant
+   * constraints, whose clauses can't be assumed.
+   */
+  private void assume(KropkiPuzzle puzzle) {
+    if (!encoder.equals(puzzle.getEncoder())) {
+      throw new IllegalArgumentException("Invalid Size");
+    }
+    if (!puzzle.getConstraints().isEmpty()) {
+      throw new IllegalArgumentException("Unsupported Constraints");
+    }
+    assumptions.clear();
+    for (int i = 0; i < pairs.size(); i++) {
+      byte dot = puzzle.dotAt(i);
+      if (dot == KropkiPuzzle.WHITE_DOT) {
+        select(whiteSelectors[i], blackSelectors[i], noDotSelectors[i]);
+      } else if (dot == KropkiPuzzle.BLACK_DOT) {
+        select(blackSelectors[i], whiteSelectors[i], noDotSelectors[i]);
+      } else if (puzzle.isAllDotsGiven()) {
+        select(noDotSelectors[i], whiteSelectors[i], blackSelectors[i]);
+      } else {
+        assumptions.push(-1 * whiteSelectors[i]);
+        assumptions.push(-1 * blackSelectors[i]);
+        assumptions.push(-1 * noDotSelectors[i]);
+      }
+    }
+    for (Map.Entry<Integer, Integer> given : puzzle.getGivens().entrySet()) {
+      int cell = given.getKey();
+      assumptions.push(encoder.var(encoder.rowOfCell(cell), encoder.columnOfCell(cell),
+          given.getValue()));
+    }
+  }
+
+  /**
+   * Assumes one selector is on and the other two selectors of the same pair are off.
+   * @param on The selector of the group that applies.
+   * @param firstOff The selector of a group that doesn't apply.
+   * @param secondOff The selector of the other group that doesn't apply.
+   */
+  private void select(int on, int firstOff, int secondOff) {
+    assumptions.push(on);
+    assumptions.push(-firstOff);
+    assumptions.push(-secondOff);
+  }
+}
@@ -0,0 +1,227 @@
+package com.company;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Keeps solved puzzles of one board shape in a memory mapped file, so they survive restarts. The
+ * file starts with the bytes 'K' and 'C', the size and box shape of the board, the number of slots
+ * and the length of a key, followed by a fixed number of slots. Each slot holds its state, the
+ * canonical key of a puzzle and the canonical solution, one byte per cell. A fingerprint's slot is
+ * found by linear probing from its hash, and once every slot probed is taken, the first one is
+ * overwritten. A store is thread safe.
+ */
+public final class MappedSolutionStore implements Closeable {
+
+  private static final byte FIRST_MAGIC = 'K';
+  private static final byte SECOND_MAGIC = 'C';
+  private static final int HEADER_BYTES = 16;
+  private static final int MAX_PROBES = 8;
+
+  private static final byte EMPTY = 0;
+  private static final byte SATISFIABLE = 1;
+  private static final byte UNSATISFIABLE = 2;
+
+  private final SudokuEncoder encoder;
+  private final FileChannel channel;
+  private final MappedByteBuffer buffer;
+  private final int slots;
+  private final int keyLength;
+  private final int slotBytes;
+  private final byte[] slotKey;
+
+  /**
+   * Opens a store, creating the file if it doesn't exist.
+   * @param file The file holding the store.
+   * @param encoder The shape of the board of every puzzle in the store.
+   * @param slots The number of slots of a new file.
+   * @throws IOException If the file can't be opened or mapped.
+   * @throws IllegalArgumentException If the file holds a different store or there are too many
+   * slots.
+   */
+  public MappedSolutionStore(Path file, SudokuEncoder encoder, int slots) throws IOException {
+    int size = encoder.getSize();
+    this.encoder = encoder;
+    this.keyLength = encoder.getCellPairs().size() + 1 + size * size;
+    this.slotBytes = 1 + keyLength + size * size;
+    if (slots < 1 || (long) slots * slotBytes > Integer.MAX_VALUE - HEADER_BYTES) {
+      throw new IllegalArgumentException("Invalid number of slots");
+    }
+    this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+        StandardOpenOption.WRITE);
+    try {
+      boolean created = channel.size() == 0;
+      int fileSlots = created ? slots : readSlots();
+      this.slots = fileSlots;
+      this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0,
+          HEADER_BYTES + (long) fileSlots * slotBytes);
+      if (created) {
+        buffer.put(0, FIRST_MAGIC);
+        buffer.put(1, SECOND_MAGIC);
+        buffer.put(2, (byte) size);
+        buffer.put(3, (byte) encoder.getBoxRows());
+        buffer.put(4, (byte) encoder.getBoxColumns());
+        buffer.putInt(8, fileSlots);
+        buffer.putInt(12, keyLength);
+      }
+    } catch (IOException | RuntimeException e) {
+      channel.close();
+      throw e;
+    }
+    this.slotKey = new byte[keyLength];
+  }
+
+  /**
+   * Reads the number of slots of an existing file, checking that it holds a store of this board.
+   * @return The number of slots.
+   * @throws IOException If the header can't be read.
+   * @throws IllegalArgumentException If the file holds a different store.
+   */
+  private int readSlots() throws IOException {
+    MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+        Math.min(HEADER_BYTES, channel.size()));
+    if (header.limit() < HEADER_BYTES || header.get(0) != FIRST_MAGIC
+        || header.get(1) != SECOND_MAGIC || header.get(2) != encoder.getSize()
+        || header.get(3) != encoder.getBoxRows() || header.get(4) != encoder.getBoxColumns()
+        || header.getInt(12) != keyLength || header.getInt(8) < 1
+        || channel.size() != HEADER_BYTES + (long) header.getInt(8) * slotBytes) {
+      throw new IllegalArgumentException("Invalid cache file");
+    }
+    return header.getInt(8);
+  }
+
+  /**
+   * Getter for the shape of the board.
+   * @return The encoder of the board.
+   */
+  public SudokuEncoder getEncoder() {
+    return encoder;
+  }
+
+  /**
+   * Looks up the result of a puzzle.
+   * @param fingerprint The fingerprint of the puzzle.
+   * @return The result in the canonical orientation, or null if the puzzle isn't stored.
+   * @throws IllegalArgumentException If the puzzle is on a different board shape.
+   */
+  public synchronized SolveResult get(PuzzleFingerprint fingerprint) {
+    checkEncoder(fingerprint);
+    int slot = find(fingerprint);
+    if (slot == -1) {
+      return null;
+    }
+    int offset = offset(slot);
+    byte state = buffer.get(offset);
+    if (state != SATISFIABLE && state != UNSATISFIABLE) {
+      return null;
+    }
+    if (state == UNSATISFIABLE) {
+      return SolveResult.unsolved(SolveResult.Status.Unsatisfiable, encoder);
+    }
+    int size = encoder.getSize();
+    int[][] sudoku = new int[size][size];
+    int cells = offset + 1 + keyLength;
+    for (int i = 0; i < size * size; i++) {
+      sudoku[i / size][i % size] = buffer.get(cells + i);
+    }
+    return new SolveResult(SolveResult.Status.Satisfiable, sudoku, encoder);
+  }
+
+  /**
+   * Stores the result of a puzzle, unless it timed out.
+   * @param fingerprint The fingerprint of the puzzle.
+   * @param result The result in the canonical orientation.
+   * @throws IllegalArgumentException If the puzzle is on a different board shape.
+   */
+  public synchronized void put(PuzzleFingerprint fingerprint, SolveResult result) {
+    checkEncoder(fingerprint);
+    if (result.getStatus() == SolveResult.Status.Timeout) {
+      return;
+    }
+    int slot = find(fingerprint);
+    if (slot == -1) {
+      slot = home(fingerprint);
+    }
+    int offset = offset(slot);
+    buffer.put(offset, EMPTY);
+    byte[] key = fingerprint.getKey();
+    for (int i = 0; i < keyLength; i++) {
+      buffer.put(offset + 1 + i, key[i]);
+    }
+    int size = encoder.getSize();
+    int cells = offset + 1 + keyLength;
+    int[][] sudoku = result.getSudoku();
+    for (int i = 0; i < size * size; i++) {
+      buffer.put(cells + i, (byte) sudoku[i / size][i % size]);
+    }
+    buffer.put(offset, result.isSatisfiable() ? SATISFIABLE : UNSATISFIABLE);
+  }
+
+  /**
+   * Writes every change to the file and closes it.
+   * @throws IOException If the file can't be closed.
+   */
+  @Override
+  public synchronized void close() throws IOException {
+    buffer.force();
+    channel.close();
+  }
+
+  /**
+   * Checks that a fingerprint is on the board shape of the store.
+   * @param fingerprint The fingerprint.
+   * @throws IllegalArgumentException If the fingerprint is on a different board shape.
+   */
+  private void checkEncoder(PuzzleFingerprint fingerprint) {
+    if (!encoder.equals(fingerprint.getEncoder())) {
+      throw new IllegalArgumentException("Invalid Size");
+    }
+  }
+
+  /**
+   * Finds the slot holding a fingerprint, or the first empty slot it would go in.
+   * @param fingerprint The fingerprint.
+   * @return The slot, or -1 if every slot probed holds another fingerprint.
+   */
+  private int find(PuzzleFingerprint fingerprint) {
+    byte[] key = fingerprint.getKey();
+    int home = home(fingerprint);
+    for (int probe = 0; probe < Math.min(MAX_PROBES, slots); probe++) {
+      int slot = (home + probe) % slots;
+      int offset = offset(slot);
+      if (buffer.get(offset) == EMPTY) {
+        return slot;
+      }
+      for (int i = 0; i < keyLength; i++) {
+        slotKey[i] = buffer.get(offset + 1 + i);
+      }
+      if (Arrays.equals(key, slotKey)) {
+        return slot;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Gets the first slot probed for a fingerprint.
+   * @param fingerprint The fingerprint.
+   * @return The slot.
+   */
+  private int home(PuzzleFingerprint fingerprint) {
+    return (int) Long.remainderUnsigned(fingerprint.longHash(), slots);
+  }
+
+  /**
+   * Gets the position of a slot in the file.
+   * @param slot The slot.
+   * @return The offset of its first byte.
+   */
+  private int offset(int slot) {
+    return HEADER_BYTES + slot * slotBytes;
+  }
+}
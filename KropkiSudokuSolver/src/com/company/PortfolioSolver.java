@@ -0,0 +1,221 @@
+package com.company;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import org.sat4j.minisat.SolverFactory;
+import org.sat4j.specs.IConstr;
+import org.sat4j.specs.ISolver;
+import org.sat4j.specs.ISolverService;
+import org.sat4j.specs.TimeoutException;
+import org.sat4j.tools.SearchListenerAdapter;
+import org.sat4j.tools.SolverDecorator;
+
+/**
+ * Solves each puzzle with several SAT4J configurations at once, one thread each, and takes the
+ * first answer. Once a race is over, the losing solvers are cancelled: one still encoding is
+ * refused before it starts searching, and one already searching has its timeout expired, which it
+ * also checks at every conflict, as SAT4J clears an expired timeout when a search starts. The
+ * threads are therefore free for the next puzzle soon after the winner answers. The portfolio
+ * counts how many puzzles each configuration won, so that the defaults can be tuned. The candidates
+ * of each puzzle are propagated once and shared by every configuration, and a puzzle solved or
+ * refuted by propagation never reaches the portfolio. A portfolio owns its threads, so it should be
+ * closed once it is no longer needed.
+ */
+public class PortfolioSolver implements KropkiSolver, AutoCloseable {
+
+  private final SudokuModel model;
+  private final SolverConfiguration[] configurations;
+  private final Function<SolverConfiguration, ISolver> factory;
+  private final ThreadPoolExecutor pool;
+  private final Map<SolverConfiguration, Long> wins;
+
+  /**
+   * Constructs a portfolio of every configuration, using the default model.
+   */
+  public PortfolioSolver() {
+    this(new SudokuModel(), SolverConfiguration.values());
+  }
+
+  /**
+   * Constructs a portfolio.
+   * @param model The model whose encoding and propagation every configuration uses.
+   * @param configurations The configurations to race.
+   * @throws IllegalArgumentException If there are no configurations.
+   */
+  public PortfolioSolver(SudokuModel model, SolverConfiguration... configurations) {
+    this(model, PortfolioSolver::newSolver, configurations);
+  }
+
+  /**
+   * Constructs a portfolio whose solvers come from a factory.
+   * @param model The model whose encoding and propagation every configuration uses.
+   * @param factory Creates a new solver of a configuration.
+   * @param configurations The configurations to race.
+   * @throws IllegalArgumentException If there are no configurations.
+   */
+  PortfolioSolver(SudokuModel model, Function<SolverConfiguration, ISolver> factory,
+      SolverConfiguration... configurations) {
+    if (configurations.length == 0) {
+      throw new IllegalArgumentException("Invalid Configurations");
+    }
+    this.model = model;
+    this.configurations = configurations.clone();
+    this.factory = factory;
+    this.pool = (ThreadPoolExecutor) Executors.newFixedThreadPool(configurations.length,
+        runnable -> {
+          Thread thread = new Thread(runnable, "portfolio");
+          thread.setDaemon(true);
+          return thread;
+        });
+    this.wins = new EnumMap<>(SolverConfiguration.class);
+  }
+
+  /**
+   * Creates a new solver of a configuration.
+   * @param configuration The configuration.
+   * @return The solver.
+   */
+  public static ISolver newSolver(SolverConfiguration configuration) {
+    switch (configuration) {
+      case Light:
+        return SolverFactory.newLight();
+      case Glucose:
+        return SolverFactory.newGlucose();
+      case Glucose21:
+        return SolverFactory.newGlucose21();
+      case NoRestarts:
+        return SolverFactory.newMiniLearningHeapEZSimpNoRestarts();
+      case LongRestarts:
+        return SolverFactory.newMiniLearningHeapEZSimpLongRestarts();
+      default:
+        return SolverFactory.newDefault();
+    }
+  }
+
+  /**
+   * Races every configuration on a puzzle. A timeout only counts as the answer once every
+   * configuration has timed out.
+   * @param puzzle The puzzle to solve.
+   * @return The first result, with the statistics of the solver that won.
+   * @throws IllegalStateException If a solver fails.
+   */
+  @Override
+  public SolveResult solve(KropkiPuzzle puzzle) {
+    long startNanos = System.nanoTime();
+    SudokuEncoder encoder = puzzle.getEncoder();
+    CandidatePropagator candidates = model.propagate(puzzle);
+    if (candidates != null && candidates.isContradiction()) {
+      return SolveResult.unsolved(SolveResult.Status.Unsatisfiable, encoder);
+    }
+    if (candidates != null && candidates.isSolved()) {
+      return new SolveResult(SolveResult.Status.Satisfiable, candidates.toSudoku(), encoder);
+    }
+    int count = configurations.length;
+    ISolver[] solvers = new ISolver[count];
+    SolveResult[] results = new SolveResult[count];
+    Future<?>[] futures = new Future<?>[count];
+    CompletionService<Integer> completion = new ExecutorCompletionService<>(pool);
+    AtomicBoolean cancelled = new AtomicBoolean();
+    for (int i = 0; i < count; i++) {
+      int index = i;
+      solvers[i] = cancellable(factory.apply(configurations[i]), cancelled);
+      solvers[i].setTimeout(300); // 5 minute timeout
+      futures[i] = completion.submit(() -> {
+        results[index] = model.solve(solvers[index], puzzle, candidates);
+        return index;
+      });
+    }
+    int winner = -1;
+    int last = -1;
+    try {
+      for (int i = 0; i < count && winner == -1; i++) {
+        last = completion.take().get();
+        if (results[last].getStatus() != SolveResult.Status.Timeout) {
+          winner = last;
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return SolveResult.unsolved(SolveResult.Status.Timeout, encoder);
+    } catch (ExecutionException e) {
+      throw new IllegalStateException("Portfolio solver failed");
+    } finally {
+      cancelled.set(true);
+      for (int i = 0; i < count; i++) {
+        futures[i].cancel(false);
+        solvers[i].expireTimeout();
+      }
+    }
+    if (winner != -1) {
+      synchronized (wins) {
+        wins.merge(configurations[winner], 1L, Long::sum);
+      }
+    }
+    return results[last].withStatistics(SolveStatistics.of(solvers[last], startNanos, -1));
+  }
+
+  /**
+   * Wraps a solver so that it stops once its race is cancelled, whether it is still encoding or
+   * already searching.
+   * @param solver The solver.
+   * @param cancelled Set once the race is over.
+   * @return The wrapped solver.
+   */
+  private static ISolver cancellable(ISolver solver, AtomicBoolean cancelled) {
+    solver.setSearchListener(new SearchListenerAdapter<ISolverService>() {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      public void conflictFound(IConstr confl, int dlevel, int trailLevel) {
+        if (cancelled.get()) {
+          solver.expireTimeout();
+        }
+      }
+    });
+    return new SolverDecorator<ISolver>(solver) {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      public boolean isSatisfiable() throws TimeoutException {
+        if (cancelled.get()) {
+          throw new TimeoutException("Cancelled");
+        }
+        return super.isSatisfiable();
+      }
+    };
+  }
+
+  /**
+   * Counts the threads of the portfolio still running a solver.
+   * @return The number of busy threads.
+   */
+  int activeCount() {
+    return pool.getActiveCount();
+  }
+
+  /**
+   * Getter for the number of puzzles each configuration answered first.
+   * @return A copy of the counts, leaving out configurations that never won.
+   */
+  public Map<SolverConfiguration, Long> getWins() {
+    synchronized (wins) {
+      return new EnumMap<>(wins);
+    }
+  }
+
+  /**
+   * Stops the threads of the portfolio.
+   */
+  @Override
+  public void close() {
+    pool.shutdownNow();
+  }
+}
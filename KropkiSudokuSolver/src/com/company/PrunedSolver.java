@@ -0,0 +1,151 @@
+package com.company;
+
+import org.sat4j.core.VecInt;
+import org.sat4j.specs.ContradictionException;
+import org.sat4j.specs.IConstr;
+import org.sat4j.specs.ISolver;
+import org.sat4j.specs.IVecInt;
+import org.sat4j.tools.SolverDecorator;
+
+/**
+ * Wraps a solver so that every constraint added to it is first simplified by the candidates left
+ * after a CandidatePropagator. Constraints already satisfied by a fixed cell are dropped, literals
+ * of ruled out values are removed, and only the residual constraint reaches the solver, so its
+ * model has to be read back with CandidatePropagator.decode. Literals of variables other than the
+ * cell variables are passed through untouched.
+ */
+public final class PrunedSolver extends SolverDecorator<ISolver> {
+
+  private static final long serialVersionUID = 1L;
+
+  private static final int FALSE = -1;
+  private static final int UNKNOWN = 0;
+  private static final int TRUE = 1;
+
+  private final SudokuEncoder encoder;
+  private final CandidatePropagator candidates;
+  private final IVecInt residual;
+  private final IVecInt unit;
+
+  /**
+   * Constructs a pruned solver.
+   * @param solver The solver to add the residual constraints to.
+   * @param encoder The shape of the board.
+   * @param candidates The candidates left after propagation.
+   */
+  public PrunedSolver(ISolver solver, SudokuEncoder encoder, CandidatePropagator candidates) {
+    super(solver);
+    this.encoder = encoder;
+    this.candidates = candidates;
+    this.residual = new VecInt(encoder.getSize());
+    this.unit = new VecInt(1);
+  }
+
+  @Override
+  public IConstr addClause(IVecInt literals) throws ContradictionException {
+    int trues = prune(literals);
+    if (trues > 0) {
+      return null;
+    }
+    if (residual.isEmpty()) {
+      throw new ContradictionException("Pruned clause is empty");
+    }
+    return decorated().addClause(residual);
+  }
+
+  @Override
+  public IConstr addAtMost(IVecInt literals, int degree) throws ContradictionException {
+    int left = degree - prune(literals);
+    if (left < 0) {
+      throw new ContradictionException("Pruned constraint is violated");
+    }
+    if (residual.size() <= left) {
+      return null;
+    }
+    if (left == 0) {
+      addUnits(-1);
+      return null;
+    }
+    return decorated().addAtMost(residual, left);
+  }
+
+  @Override
+  public IConstr addAtLeast(IVecInt literals, int degree) throws ContradictionException {
+    int left = degree - prune(literals);
+    if (left <= 0) {
+      return null;
+    }
+    if (residual.size() < left) {
+      throw new ContradictionException("Pruned constraint is violated");
+    }
+    if (residual.size() == left) {
+      addUnits(1);
+      return null;
+    }
+    return decorated().addAtLeast(residual, left);
+  }
+
+  @Override
+  public IConstr addExactly(IVecInt literals, int degree) throws ContradictionException {
+    int left = degree - prune(literals);
+    if (left < 0 || residual.size() < left) {
+      throw new ContradictionException("Pruned constraint is violated");
+    }
+    if (left == 0) {
+      addUnits(-1);
+      return null;
+    }
+    if (residual.size() == left) {
+      addUnits(1);
+      return null;
+    }
+    return decorated().addExactly(residual, left);
+  }
+
+  /**
+   * Copies the literals whose value is still unknown into the residual buffer.
+   * @param literals The literals of a constraint.
+   * @return The number of literals that are already true.
+   */
+  private int prune(IVecInt literals) {
+    residual.clear();
+    int trues = 0;
+    for (int i = 0; i < literals.size(); i++) {
+      int literal = literals.get(i);
+      int value = valueOf(literal);
+      if (value == TRUE) {
+        trues++;
+      } else if (value == UNKNOWN) {
+        residual.push(literal);
+      }
+    }
+    return trues;
+  }
+
+  /**
+   * Adds a unit clause for every literal in the residual buffer.
+   * @param sign 1 to make every literal true, or -1 to make every literal false.
+   * @throws ContradictionException If the solver finds the clauses trivially unsatisfiable.
+   */
+  private void addUnits(int sign) throws ContradictionException {
+    for (int i = 0; i < residual.size(); i++) {
+      unit.clear();
+      unit.push(sign * residual.get(i));
+      decorated().addClause(unit);
+    }
+  }
+
+  /**
+   * Gets the value of a literal under the candidates.
+   * @param literal The literal.
+   * @return TRUE or FALSE if its cell decides it, otherwise UNKNOWN.
+   */
+  private int valueOf(int literal) {
+    int var = Math.abs(literal);
+    if (!encoder.isCellVar(var)) {
+      return UNKNOWN;
+    }
+    int value = !candidates.isCandidate(var) ? FALSE : candidates.isFixed(var) ? TRUE : UNKNOWN;
+    return literal > 0 ? value : -1 * value;
+  }
+}
@@ -0,0 +1,381 @@
+package com.company;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Keeps a long run of puzzles, or of their solutions, in a file of fixed width binary records, so
+ * batch jobs can stream through millions of them without parsing any text. The file starts with
+ * the bytes 'K' and 'A', the size and box shape of the board, what the records hold and the number
+ * of records, followed by the records one after another.
+ *
+ * A puzzle record holds two bits for every orthogonal pair, in the order of the encoder's pairs,
+ * with the first pair in the highest bits of the first byte: 0 for no dot, 1 for a white dot, 2
+ * for a black dot and 3 for a pair whose dot isn't given, so a 9x9 puzzle takes 36 bytes. Givens
+ * and variant constraints don't fit a record. As a puzzle either gives all of its dots or none of
+ * the missing ones, a record with any unknown pair reads back as a puzzle with its dots hidden. A
+ * solution record starts with a byte for the status of the solve, 1 for satisfiable, 2 for
+ * unsatisfiable and 3 for a timeout, so a batch job can tell which puzzles to retry. The solved
+ * board follows, packed like a SolutionSink packs it, or zeros without a solution, so a 9x9
+ * solution takes 42 bytes.
+ *
+ * The records are read and written through windows of the file mapped into memory, one at a time,
+ * so the archive can be larger than a single mapping. An archive is not thread safe.
+ */
+public final class PuzzleArchive implements Closeable {
+
+  /**
+   * What the records of an archive hold.
+   */
+  public enum Content {
+    Puzzles, Solutions
+  }
+
+  private static final byte FIRST_MAGIC = 'K';
+  private static final byte SECOND_MAGIC = 'A';
+  private static final int HEADER_BYTES = 16;
+  private static final int WINDOW_BYTES = 1 << 24;
+  private static final byte UNKNOWN_DOT = 3;
+
+  private static final byte SATISFIABLE = 1;
+  private static final byte UNSATISFIABLE = 2;
+  private static final byte TIMEOUT = 3;
+
+  private final SudokuEncoder encoder;
+  private final Content content;
+  private final FileChannel channel;
+  private final boolean writable;
+  private final MappedByteBuffer header;
+  private final int recordBytes;
+  private final int windowRecords;
+  private final byte[] record;
+  private MappedByteBuffer window;
+  private long windowIndex;
+  private long count;
+
+  /**
+   * Constructs an archive over an open file.
+   * @param channel The open file.
+   * @param writable Whether records are added to the file.
+   * @param encoder The shape of the board of every record.
+   * @param content What the records hold.
+   * @param count The number of records already in the file.
+   * @throws IOException If the header can't be mapped.
+   */
+  private PuzzleArchive(FileChannel channel, boolean writable, SudokuEncoder encoder,
+      Content content, long count) throws IOException {
+    this.encoder = encoder;
+    this.content = content;
+    this.channel = channel;
+    this.writable = writable;
+    this.header = channel.map(writable ? FileChannel.MapMode.READ_WRITE
+        : FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES);
+    this.recordBytes = recordBytes(encoder, content);
+    this.windowRecords = Math.max(1, WINDOW_BYTES / recordBytes);
+    this.record = new byte[recordBytes];
+    this.windowIndex = -1;
+    this.count = count;
+  }
+
+  /**
+   * Creates an empty archive, replacing the file if it exists.
+   * @param file The file to hold the archive.
+   * @param encoder The shape of the board of every record.
+   * @param content What the records hold.
+   * @return The archive, open for adding records.
+   * @throws IOException If the file can't be created or mapped.
+   */
+  public static PuzzleArchive create(Path file, SudokuEncoder encoder, Content content)
+      throws IOException {
+    FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    try {
+      PuzzleArchive archive = new PuzzleArchive(channel, true, encoder, content, 0);
+      archive.header.put(0, FIRST_MAGIC);
+      archive.header.put(1, SECOND_MAGIC);
+      archive.header.put(2, (byte) encoder.getSize());
+      archive.header.put(3, (byte) encoder.getBoxRows());
+      archive.header.put(4, (byte) encoder.getBoxColumns());
+      archive.header.put(5, (byte) content.ordinal());
+      archive.header.putLong(8, 0);
+      return archive;
+    } catch (IOException | RuntimeException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Opens an existing archive for reading.
+   * @param file The file holding the archive.
+   * @return The archive.
+   * @throws IOException If the file can't be opened or mapped.
+   * @throws IllegalArgumentException If the file doesn't hold a whole archive.
+   */
+  public static PuzzleArchive open(Path file) throws IOException {
+    FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+    try {
+      if (channel.size() < HEADER_BYTES) {
+        throw new IllegalArgumentException("Invalid Archive");
+      }
+      MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES);
+      int kind = header.get(5);
+      if (header.get(0) != FIRST_MAGIC || header.get(1) != SECOND_MAGIC || kind < 0
+          || kind >= Content.values().length) {
+        throw new IllegalArgumentException("Invalid Archive");
+      }
+      SudokuEncoder encoder;
+      try {
+        encoder = new SudokuEncoder(header.get(2), header.get(3), header.get(4));
+      } catch (IllegalArgumentException e) {
+        throw new IllegalArgumentException("Invalid Archive");
+      }
+      Content content = Content.values()[kind];
+      long count = header.getLong(8);
+      if (count < 0
+          || channel.size() != HEADER_BYTES + count * recordBytes(encoder, content)) {
+        throw new IllegalArgumentException("Invalid Archive");
+      }
+      return new PuzzleArchive(channel, false, encoder, content, count);
+    } catch (IOException | RuntimeException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Gets the number of bytes each record of an archive takes.
+   * @param encoder The shape of the board.
+   * @param content What the records hold.
+   * @return The number of bytes.
+   */
+  private static int recordBytes(SudokuEncoder encoder, Content content) {
+    if (content == Content.Puzzles) {
+      return (encoder.getCellPairs().size() * 2 + 7) / 8;
+    }
+    return 1 + SolutionSink.bytesPerSolution(encoder.getSize());
+  }
+
+  /**
+   * Getter for the shape of the board.
+   * @return The encoder of the board.
+   */
+  public SudokuEncoder getEncoder() {
+    return encoder;
+  }
+
+  /**
+   * Getter for what the records hold.
+   * @return The content of the archive.
+   */
+  public Content getContent() {
+    return content;
+  }
+
+  /**
+   * Getter for the number of records.
+   * @return The number of records in the archive.
+   */
+  public long getCount() {
+    return count;
+  }
+
+  /**
+   * Adds a puzzle to the end of the archive.
+   * @param puzzle The puzzle.
+   * @throws IllegalStateException If the archive was opened for reading.
+   * @throws IllegalArgumentException If the archive holds solutions, or the puzzle is on a
+   * different board shape or has givens or constraints.
+   */
+  public void add(KropkiPuzzle puzzle) {
+    checkAdd(Content.Puzzles);
+    if (!encoder.equals(puzzle.getEncoder())) {
+      throw new IllegalArgumentException("Invalid Size");
+    }
+    if (!puzzle.getGivens().isEmpty() || !puzzle.getConstraints().isEmpty()) {
+      throw new IllegalArgumentException("Invalid Puzzle");
+    }
+    for (int i = 0; i < record.length; i++) {
+      record[i] = 0;
+    }
+    int pairs = encoder.getCellPairs().size();
+    for (int i = 0; i < pairs; i++) {
+      int dot = puzzle.dotAt(i);
+      if (dot == KropkiPuzzle.NO_DOT && !puzzle.isAllDotsGiven()) {
+        dot = UNKNOWN_DOT;
+      }
+      record[i / 4] |= (byte) (dot << (6 - 2 * (i % 4)));
+    }
+    append();
+  }
+
+  /**
+   * Adds the result of a solve to the end of the archive.
+   * @param result The result, whose board is only kept if it is satisfiable.
+   * @throws IllegalStateException If the archive was opened for reading.
+   * @throws IllegalArgumentException If the archive holds puzzles, or the board is the wrong size.
+   */
+  public void add(SolveResult result) {
+    checkAdd(Content.Solutions);
+    int size = encoder.getSize();
+    int[][] sudoku = result.isSatisfiable() ? result.getSudoku() : new int[size][size];
+    if (sudoku.length != size) {
+      throw new IllegalArgumentException("Invalid Size");
+    }
+    for (int[] row : sudoku) {
+      if (row.length != size) {
+        throw new IllegalArgumentException("Invalid Size");
+      }
+    }
+    SolutionSink.pack(sudoku, size, record, 1);
+    switch (result.getStatus()) {
+      case Satisfiable:
+        record[0] = SATISFIABLE;
+        break;
+      case Unsatisfiable:
+        record[0] = UNSATISFIABLE;
+        break;
+      default:
+        record[0] = TIMEOUT;
+    }
+    append();
+  }
+
+  /**
+   * Reads a puzzle.
+   * @param index The position of the puzzle in the archive, from 0.
+   * @return The puzzle.
+   * @throws IllegalArgumentException If the archive holds solutions or there is no such puzzle.
+   */
+  public KropkiPuzzle getPuzzle(long index) {
+    read(Content.Puzzles, index);
+    byte[] dots = new byte[encoder.getCellPairs().size()];
+    boolean allDotsGiven = true;
+    for (int i = 0; i < dots.length; i++) {
+      dots[i] = (byte) ((record[i / 4] >> (6 - 2 * (i % 4))) & 3);
+      if (dots[i] == UNKNOWN_DOT) {
+        dots[i] = KropkiPuzzle.NO_DOT;
+        allDotsGiven = false;
+      }
+    }
+    return KropkiPuzzle.fromDots(encoder, dots, allDotsGiven);
+  }
+
+  /**
+   * Reads the result of a solve.
+   * @param index The position of the result in the archive, from 0.
+   * @return The result, with a board of zeros unless it is satisfiable.
+   * @throws IllegalArgumentException If the archive holds puzzles, there is no such result, or
+   * its status is invalid.
+   */
+  public SolveResult getResult(long index) {
+    read(Content.Solutions, index);
+    SolveResult.Status status;
+    switch (record[0]) {
+      case SATISFIABLE:
+        status = SolveResult.Status.Satisfiable;
+        break;
+      case UNSATISFIABLE:
+        status = SolveResult.Status.Unsatisfiable;
+        break;
+      case TIMEOUT:
+        status = SolveResult.Status.Timeout;
+        break;
+      default:
+        throw new IllegalArgumentException("Invalid Archive");
+    }
+    return new SolveResult(status, SolutionSink.unpack(record, 1, encoder.getSize()), encoder);
+  }
+
+  /**
+   * Writes every record to the file, along with their number, and closes it.
+   * @throws IOException If the file can't be written or closed.
+   */
+  @Override
+  public void close() throws IOException {
+    try {
+      if (writable) {
+        if (window != null) {
+          window.force();
+        }
+        header.putLong(8, count);
+        header.force();
+        // Windows are mapped whole, so the file is cut back to the records actually written
+        channel.truncate(HEADER_BYTES + count * recordBytes);
+      }
+    } finally {
+      channel.close();
+    }
+  }
+
+  /**
+   * Checks that a record can be added.
+   * @param kind What the record holds.
+   * @throws IllegalStateException If the archive was opened for reading.
+   * @throws IllegalArgumentException If the archive holds the other kind of record.
+   */
+  private void checkAdd(Content kind) {
+    if (!writable) {
+      throw new IllegalStateException("Archive is read only");
+    }
+    if (content != kind) {
+      throw new IllegalArgumentException("Invalid Content");
+    }
+  }
+
+  /**
+   * Writes the record buffer after the last record.
+   */
+  private void append() {
+    window(count).put(record);
+    count++;
+  }
+
+  /**
+   * Reads a record into the record buffer.
+   * @param kind What the record holds.
+   * @param index The position of the record.
+   * @throws IllegalArgumentException If the archive holds the other kind of record or there is no
+   * such record.
+   */
+  private void read(Content kind, long index) {
+    if (content != kind) {
+      throw new IllegalArgumentException("Invalid Content");
+    }
+    if (index < 0 || index >= count) {
+      throw new IllegalArgumentException("Invalid Index");
+    }
+    window(index).get(record);
+  }
+
+  /**
+   * Maps the window holding a record, unless it is already mapped, and moves to the record.
+   * @param index The position of the record.
+   * @return The window, positioned at the start of the record.
+   * @throws IllegalStateException If the window can't be mapped.
+   */
+  private MappedByteBuffer window(long index) {
+    long wanted = index / windowRecords;
+    if (wanted != windowIndex) {
+      long first = wanted * windowRecords;
+      long records = writable ? windowRecords : Math.min(windowRecords, count - first);
+      try {
+        if (window != null && writable) {
+          window.force();
+        }
+        window = channel.map(writable ? FileChannel.MapMode.READ_WRITE
+            : FileChannel.MapMode.READ_ONLY, HEADER_BYTES + first * recordBytes,
+            records * recordBytes);
+      } catch (IOException e) {
+        throw new IllegalStateException("Unable to map archive");
+      }
+      windowIndex = wanted;
+    }
+    window.position((int) (index - wanted * windowRecords) * recordBytes);
+    return window;
+  }
+}
@@ -0,0 +1,84 @@
+package com.company;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A fixed set of Kropki sudoku puzzles for benchmarking, or puzzles loaded from a batch file.
+ */
+public final class PuzzleCorpus {
+
+  private PuzzleCorpus() {
+  }
+
+  /**
+   * Gets the built in 9x9 puzzles: two hand entered puzzles and the dotless board.
+   * @return The list of puzzles.
+   */
+  public static List<KropkiPuzzle> standard() {
+    List<KropkiPuzzle> puzzles = new ArrayList<>();
+    puzzles.add(new KropkiPuzzle(Arrays.asList(16,17,21,22,25,26,28,29,31,41,32,42,33,34,36,46,37,
+        47,37,38,44,54,45,55,53,63,56,66,57,67,58,59,63,64,64,65,68,69,71,81,73,83,73,74,74,84,76,
+        86,78,88,86,96,87,97,88,98,91,92), Arrays.asList(16,26,17,27,23,33,36,37,42,43,43,53,48,
+        58,58,68,64,74,67,77,68,78,81,82,83,93,83,84,85,95)));
+    puzzles.add(new KropkiPuzzle(Arrays.asList(11,12,13,14,19,29,22,32,28,38,34,35,38,48,39,49,45,
+        55,51,61,51,52,53,63,53,54,58,68,61,71,61,62,62,72,66,76,69,79,71,72,72,73,76,86,79,89,81,
+        91,93,94), Arrays.asList(12,22,12,13,16,26,18,28,23,33,25,26,36,46,38,39,45,46,54,55,57,
+        67,63,73,67,77,72,82,84,94,84,85,87,97,94,95,96,97)));
+    puzzles.add(new KropkiPuzzle(new ArrayList<>(), new ArrayList<>()));
+    return puzzles;
+  }
+
+  /**
+   * Gets a puzzle with every dot of a patterned solution, on a board with square boxes.
+   * @param box The number of rows and columns of each box.
+   * @return The puzzle.
+   */
+  public static KropkiPuzzle patterned(int box) {
+    int size = box * box;
+    int[][] sudoku = new int[size][size];
+    for (int i = 0; i < size; i++) {
+      for (int j = 0; j < size; j++) {
+        sudoku[i][j] = (i * box + i / box + j) % size + 1;
+      }
+    }
+    return KropkiPuzzle.fromSolution(new SudokuEncoder(size, box, box), sudoku);
+  }
+
+  /**
+   * Gets generated 9x9 puzzles with as few dots as possible, which are the hardest to solve.
+   * @param count The number of puzzles.
+   * @param seed The seed of the generator, so the same puzzles are generated every time.
+   * @return The list of puzzles.
+   */
+  public static List<KropkiPuzzle> generated(int count, long seed) {
+    return new KropkiGenerator(SudokuEncoder.getStandard(),
+        Runtime.getRuntime().availableProcessors(), seed).generate(count);
+  }
+
+  /**
+   * Loads every puzzle of a batch file, one per line.
+   * @param filePath The path of the batch file.
+   * @param encoder The shape of the board of every puzzle.
+   * @return The list of puzzles.
+   * @throws IOException If the file can't be read.
+   * @throws IllegalArgumentException If a puzzle is invalid.
+   */
+  public static List<KropkiPuzzle> load(String filePath, SudokuEncoder encoder)
+      throws IOException {
+    List<KropkiPuzzle> puzzles = new ArrayList<>();
+    try (BufferedReader in = new BufferedReader(new FileReader(filePath))) {
+      String line;
+      while ((line = in.readLine()) != null) {
+        if (!line.trim().isEmpty()) {
+          puzzles.add(KropkiPuzzle.parse(line, encoder));
+        }
+      }
+    }
+    return puzzles;
+  }
+}
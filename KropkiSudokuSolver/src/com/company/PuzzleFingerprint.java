@@ -0,0 +1,159 @@
+package com.company;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * The canonical form of a Kropki sudoku puzzle, shared by every puzzle that is a rotation or a
+ * reflection of it, as given by the BoardSymmetries of its board. The key holds the dot of every
+ * pair, whether all dots are given, and the given digit of every cell, one byte each, under the
+ * symmetry giving the smallest key. A solution is turned between the puzzle's orientation and the
+ * canonical one with the same symmetry. The dots are read from the puzzle's own dot table, the one
+ * every solve reads, so puzzles share a fingerprint exactly when they are solved the same way.
+ */
+public final class PuzzleFingerprint {
+
+  private final SudokuEncoder encoder;
+  private final byte[] key;
+  private final int[] cells;
+  private final int hash;
+
+  /**
+   * Constructs a fingerprint.
+   * @param encoder The shape of the board.
+   * @param key The canonical key.
+   * @param cells The index of the canonical cell of each cell, in row then column order from 0.
+   */
+  private PuzzleFingerprint(SudokuEncoder encoder, byte[] key, int[] cells) {
+    this.encoder = encoder;
+    this.key = key;
+    this.cells = cells;
+    this.hash = 31 * encoder.hashCode() + Arrays.hashCode(key);
+  }
+
+  /**
+   * Computes the fingerprint of a puzzle.
+   * @param puzzle The puzzle.
+   * @return The fingerprint, equal for every rotation and reflection of the puzzle.
+   */
+  public static PuzzleFingerprint of(KropkiPuzzle puzzle) {
+    SudokuEncoder encoder = puzzle.getEncoder();
+    BoardSymmetries symmetries = BoardSymmetries.forBoard(encoder);
+    byte[] dots = new byte[symmetries.pairCount()];
+    for (int i = 0; i < dots.length; i++) {
+      dots[i] = puzzle.dotAt(i);
+    }
+    byte[] givens = new byte[symmetries.cellCount()];
+    for (Map.Entry<Integer, Integer> given : puzzle.getGivens().entrySet()) {
+      givens[symmetries.index(given.getKey())] = (byte) (int) given.getValue();
+    }
+    byte[] best = null;
+    int bestSymmetry = 0;
+    byte[] candidate = new byte[dots.length + 1 + givens.length];
+    for (int s = 0; s < symmetries.count(); s++) {
+      int[] pairMap = symmetries.pairs(s);
+      int[] cellMap = symmetries.cells(s);
+      for (int i = 0; i < dots.length; i++) {
+        candidate[pairMap[i]] = dots[i];
+      }
+      candidate[dots.length] = (byte) (puzzle.isAllDotsGiven() ? 1 : 0);
+      for (int i = 0; i < givens.length; i++) {
+        candidate[dots.length + 1 + cellMap[i]] = givens[i];
+      }
+      if (best == null || compare(candidate, best) < 0) {
+        best = candidate.clone();
+        bestSymmetry = s;
+      }
+    }
+    return new PuzzleFingerprint(encoder, best, symmetries.cells(bestSymmetry));
+  }
+
+  /**
+   * Getter for the shape of the board.
+   * @return The encoder of the board.
+   */
+  public SudokuEncoder getEncoder() {
+    return encoder;
+  }
+
+  /**
+   * Getter for the canonical key.
+   * @return A copy of the key.
+   */
+  public byte[] getKey() {
+    return key.clone();
+  }
+
+  /**
+   * Gets a 64 bit FNV-1a hash of the canonical key, for indexing a large table.
+   * @return The hash.
+   */
+  public long longHash() {
+    long ans = 0xcbf29ce484222325L;
+    for (byte b : key) {
+      ans = (ans ^ (b & 0xff)) * 0x100000001b3L;
+    }
+    return ans;
+  }
+
+  /**
+   * Turns a board from the puzzle's orientation into the canonical one.
+   * @param sudoku The board in the puzzle's orientation.
+   * @return The board in the canonical orientation.
+   */
+  public int[][] toCanonical(int[][] sudoku) {
+    int size = encoder.getSize();
+    int[][] ans = new int[size][size];
+    for (int i = 0; i < cells.length; i++) {
+      ans[cells[i] / size][cells[i] % size] = sudoku[i / size][i % size];
+    }
+    return ans;
+  }
+
+  /**
+   * Turns a board from the canonical orientation into the puzzle's one.
+   * @param sudoku The board in the canonical orientation.
+   * @return The board in the puzzle's orientation.
+   */
+  public int[][] fromCanonical(int[][] sudoku) {
+    int size = encoder.getSize();
+    int[][] ans = new int[size][size];
+    for (int i = 0; i < cells.length; i++) {
+      ans[i / size][i % size] = sudoku[cells[i] / size][cells[i] % size];
+    }
+    return ans;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o instanceof PuzzleFingerprint) {
+      PuzzleFingerprint compare = (PuzzleFingerprint) o;
+      return this.encoder.equals(compare.encoder) && Arrays.equals(this.key, compare.key);
+    }
+    return false;
+  }
+
+  @Override
+  public int hashCode() {
+    return hash;
+  }
+
+  /**
+   * Compares two keys of the same length byte by byte.
+   * @param first The first key.
+   * @param second The second key.
+   * @return A negative number, zero or a positive number as the first key is smaller, equal or
+   * larger.
+   */
+  private static int compare(byte[] first, byte[] second) {
+    for (int i = 0; i < first.length; i++) {
+      if (first[i] != second[i]) {
+        return first[i] - second[i];
+      }
+    }
+    return 0;
+  }
+}
@@ -0,0 +1,159 @@
+package com.company;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.sat4j.specs.ContradictionException;
+import org.sat4j.specs.ISolver;
+import org.sat4j.specs.IVecInt;
+
+/**
+ * A ValueRelation between the cells of each of a list of pairs. The cells of a pair don't have to
+ * be orthogonal. This covers the X and V pairs of an XV sudoku, whose values add up to 10 or 5, a
+ * thermometer, whose values increase from the bulb along the line, and German whispers, whose
+ * neighbouring values along the line differ by at least 5. Unlike Kropki dots, pairs without a
+ * marking aren't constrained.
+ */
+public final class RelationConstraint implements ConstraintPlugin {
+
+  private static final ValueRelation X = ValueRelation.sum(10);
+  private static final ValueRelation V = ValueRelation.sum(5);
+  private static final ValueRelation INCREASING = ValueRelation.of("increasing", (a, b) -> a < b);
+  private static final ValueRelation WHISPER =
+      ValueRelation.of("whisper", (a, b) -> Math.abs(a - b) >= 5);
+
+  private final ValueRelation relation;
+  private final List<CellPair> pairs;
+
+  /**
+   * Constructs a constraint.
+   * @param relation The relation between the first and the second cell of every pair.
+   * @param pairs The pairs of cells.
+   */
+  public RelationConstraint(ValueRelation relation, List<CellPair> pairs) {
+    this.relation = relation;
+    this.pairs = Collections.unmodifiableList(new ArrayList<>(pairs));
+  }
+
+  /**
+   * Creates the X pairs of an XV sudoku, whose values add up to 10.
+   * @param pairs The pairs of cells with an X.
+   * @return The constraint.
+   */
+  public static RelationConstraint x(List<CellPair> pairs) {
+    return new RelationConstraint(X, pairs);
+  }
+
+  /**
+   * Creates the V pairs of an XV sudoku, whose values add up to 5.
+   * @param pairs The pairs of cells with a V.
+   * @return The constraint.
+   */
+  public static RelationConstraint v(List<CellPair> pairs) {
+    return new RelationConstraint(V, pairs);
+  }
+
+  /**
+   * Creates a thermometer, whose values strictly increase from the bulb.
+   * @param cells The cells of the thermometer, starting at the bulb.
+   * @return The constraint.
+   */
+  public static RelationConstraint thermometer(List<Integer> cells) {
+    return new RelationConstraint(INCREASING, line(cells));
+  }
+
+  /**
+   * Creates a German whispers line, whose neighbouring values differ by at least 5.
+   * @param cells The cells of the line, in order.
+   * @return The constraint.
+   */
+  public static RelationConstraint germanWhispers(List<Integer> cells) {
+    return new RelationConstraint(WHISPER, line(cells));
+  }
+
+  /**
+   * Pairs up every two neighbouring cells of a line.
+   * @param cells The cells of the line, in order.
+   * @return The list of pairs.
+   */
+  private static List<CellPair> line(List<Integer> cells) {
+    List<CellPair> pairs = new ArrayList<>();
+    for (int i = 0; i < cells.size() - 1; i++) {
+      pairs.add(new CellPair(cells.get(i), cells.get(i + 1)));
+    }
+    return pairs;
+  }
+
+  /**
+   * Getter for the relation.
+   * @return The relation between the first and the second cell of every pair.
+   */
+  public ValueRelation getRelation() {
+    return relation;
+  }
+
+  /**
+   * Getter for the pairs.
+   * @return The unmodifiable list of pairs of cells.
+   */
+  public List<CellPair> getPairs() {
+    return pairs;
+  }
+
+  @Override
+  public boolean fits(SudokuEncoder encoder) {
+    for (CellPair pair : pairs) {
+      if (!encoder.isCell(pair.getFirstCell()) || !encoder.isCell(pair.getSecondCell())
+          || pair.getFirstCell() == pair.getSecondCell()) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public void addTo(ISolver solver, IVecInt clause, SudokuEncoder encoder, int firstAuxiliary)
+      throws ContradictionException {
+    for (CellPair pair : pairs) {
+      relation.addTo(solver, clause, encoder, pair, KropkiClauses.NO_SELECTOR);
+    }
+  }
+
+  @Override
+  public List<RelationConstraint> relations(SudokuEncoder encoder) {
+    return Collections.singletonList(this);
+  }
+
+  @Override
+  public boolean isSatisfied(SudokuEncoder encoder, int[][] sudoku) {
+    for (CellPair pair : pairs) {
+      if (!relation.allows(KropkiPuzzle.valueAt(encoder, sudoku, pair.getFirstCell()),
+          KropkiPuzzle.valueAt(encoder, sudoku, pair.getSecondCell()))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public String toString() {
+    return relation + " " + pairs;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o instanceof RelationConstraint) {
+      RelationConstraint compare = (RelationConstraint) o;
+      return this.relation.equals(compare.relation) && this.pairs.equals(compare.pairs);
+    }
+    return false;
+  }
+
+  @Override
+  public int hashCode() {
+    return relation.hashCode() * 31 + pairs.hashCode();
+  }
+}
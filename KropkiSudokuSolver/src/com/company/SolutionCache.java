@@ -0,0 +1,161 @@
+package com.company;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caches the results of another solver, so that a puzzle seen before, or any rotation or
+ * reflection of it, is answered without solving it again. Results are keyed by the puzzle's
+ * PuzzleFingerprint and kept in the canonical orientation, then turned back into the orientation
+ * of the puzzle asked for. The in memory tier keeps the most recently used results up to its
+ * capacity, and an optional MappedSolutionStore behind it keeps results of one board shape across
+ * restarts. Timeouts are never cached, and neither are puzzles with variant constraints, which the
+ * fingerprint doesn't cover. A cache is thread safe if its solver is, and it closes its
+ * store when it is closed.
+ */
+public class SolutionCache implements KropkiSolver, AutoCloseable {
+
+  private final KropkiSolver solver;
+  private final Map<PuzzleFingerprint, SolveResult> memory;
+  private final MappedSolutionStore store;
+  private final AtomicLong memoryHits;
+  private final AtomicLong storeHits;
+  private final AtomicLong misses;
+
+  /**
+   * Constructs a cache kept only in memory.
+   * @param solver The solver of the puzzles that aren't cached.
+   * @param capacity The most results kept in memory.
+   * @throws IllegalArgumentException If the capacity is less than 1.
+   */
+  public SolutionCache(KropkiSolver solver, int capacity) {
+    this(solver, capacity, null);
+  }
+
+  /**
+   * Constructs a cache.
+   * @param solver The solver of the puzzles that aren't cached.
+   * @param capacity The most results kept in memory.
+   * @param store The store behind the memory, or null to keep results only in memory.
+   * @throws IllegalArgumentException If the capacity is less than 1.
+   */
+  public SolutionCache(KropkiSolver solver, int capacity, MappedSolutionStore store) {
+    if (capacity < 1) {
+      throw new IllegalArgumentException("Invalid Capacity");
+    }
+    this.solver = solver;
+    this.memory = Collections.synchronizedMap(
+        new LinkedHashMap<PuzzleFingerprint, SolveResult>(16, 0.75f, true) {
+          private static final long serialVersionUID = 1L;
+
+          @Override
+          protected boolean removeEldestEntry(Map.Entry<PuzzleFingerprint, SolveResult> eldest) {
+            return size() > capacity;
+          }
+        });
+    this.store = store;
+    this.memoryHits = new AtomicLong();
+    this.storeHits = new AtomicLong();
+    this.misses = new AtomicLong();
+  }
+
+  /**
+   * Answers a puzzle from the cache, or solves and caches it.
+   * @param puzzle The puzzle to solve.
+   * @return The result of the solve, with the statistics of the lookup if it was cached.
+   */
+  @Override
+  public SolveResult solve(KropkiPuzzle puzzle) {
+    if (!puzzle.getConstraints().isEmpty()) {
+      return solver.solve(puzzle);
+    }
+    long startNanos = System.nanoTime();
+    long startBytes = SolveStatistics.allocatedBytes();
+    PuzzleFingerprint fingerprint = PuzzleFingerprint.of(puzzle);
+    SolveResult cached = memory.get(fingerprint);
+    if (cached != null) {
+      memoryHits.incrementAndGet();
+    } else if (usesStore(fingerprint)) {
+      cached = store.get(fingerprint);
+      if (cached != null) {
+        storeHits.incrementAndGet();
+        memory.put(fingerprint, cached);
+      }
+    }
+    if (cached != null) {
+      SolveResult result = cached.isSatisfiable()
+          ? new SolveResult(SolveResult.Status.Satisfiable,
+              fingerprint.fromCanonical(cached.getSudoku()), puzzle.getEncoder())
+          : SolveResult.unsolved(cached.getStatus(), puzzle.getEncoder());
+      return result.withStatistics(SolveStatistics.of(startNanos, startBytes));
+    }
+    misses.incrementAndGet();
+    SolveResult result = solver.solve(puzzle);
+    if (result.getStatus() != SolveResult.Status.Timeout) {
+      SolveResult canonical = result.isSatisfiable()
+          ? new SolveResult(SolveResult.Status.Satisfiable,
+              fingerprint.toCanonical(result.getSudoku()), puzzle.getEncoder())
+          : SolveResult.unsolved(result.getStatus(), puzzle.getEncoder());
+      memory.put(fingerprint, canonical);
+      if (usesStore(fingerprint)) {
+        store.put(fingerprint, canonical);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Getter for the number of puzzles answered from memory.
+   * @return The number of memory hits.
+   */
+  public long getMemoryHits() {
+    return memoryHits.get();
+  }
+
+  /**
+   * Getter for the number of puzzles answered from the store.
+   * @return The number of store hits.
+   */
+  public long getStoreHits() {
+    return storeHits.get();
+  }
+
+  /**
+   * Getter for the number of puzzles handed to the solver.
+   * @return The number of misses.
+   */
+  public long getMisses() {
+    return misses.get();
+  }
+
+  /**
+   * Getter for the number of results kept in memory.
+   * @return The number of results.
+   */
+  public int size() {
+    return memory.size();
+  }
+
+  /**
+   * Closes the store, if there is one.
+   * @throws IOException If the store can't be closed.
+   */
+  @Override
+  public void close() throws IOException {
+    if (store != null) {
+      store.close();
+    }
+  }
+
+  /**
+   * Checks whether a puzzle can be kept in the store.
+   * @param fingerprint The fingerprint of the puzzle.
+   * @return True if there is a store for the puzzle's board shape.
+   */
+  private boolean usesStore(PuzzleFingerprint fingerprint) {
+    return store != null && store.getEncoder().equals(fingerprint.getEncoder());
+  }
+}
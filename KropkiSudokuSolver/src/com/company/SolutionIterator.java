@@ -0,0 +1,212 @@
+package com.company;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import org.sat4j.core.VecInt;
+import org.sat4j.specs.ISolver;
+import org.sat4j.specs.IVecInt;
+import org.sat4j.specs.TimeoutException;
+
+/**
+ * Walks through every solution of a puzzle, one at a time, using a single incremental solver.
+ * Each solution is only searched for when it is asked for. No clause is ever added to rule out a
+ * solution once found. Instead the search is a depth first walk over the values of the cells still
+ * undecided after propagation, taken in row then column order, with each branch posed to the
+ * solver as assumptions.
+ *
+ * A branch at depth d fixes the first d cells to the values on the current path and rules out some
+ * values of cell d. Each model found in a branch is a solution, and the rest of the branch splits
+ * into the branches agreeing with it up to some later cell and differing there, which are walked
+ * before returning to shallower branches. So there is at most one open branch per cell, and memory
+ * stays bounded by the board and the solver's own clauses, whatever the number of solutions handed
+ * out. A cell whose row, column or box is otherwise filled by the cells before it can only hold one
+ * value, so branches ruling out its value are never opened. Created by SudokuModel.solutions. An
+ * iterator is not thread safe.
+ */
+public final class SolutionIterator implements Iterator<int[][]> {
+
+  private final SudokuEncoder encoder;
+  private final CandidatePropagator candidates;
+  private final IVecInt assumptions;
+  private final int[] cells;
+  private final int[] path;
+  private final int[][] excluded;
+  private final int[] excludedCount;
+  private final boolean[] forced;
+  private final boolean[] open;
+  private int deepest;
+  private ISolver solver;
+  private int[][] next;
+
+  /**
+   * Constructs an iterator.
+   * @param encoder The shape of the board.
+   * @param candidates The candidates the clauses were pruned with, or null.
+   * @param solver The solver holding every clause of the puzzle, or null if there is nothing left
+   * to search.
+   * @param first The solution to hand out before searching, or null.
+   */
+  SolutionIterator(SudokuEncoder encoder, CandidatePropagator candidates, ISolver solver,
+      int[][] first) {
+    int size = encoder.getSize();
+    this.encoder = encoder;
+    this.candidates = candidates;
+    this.solver = solver;
+    this.next = first;
+    int undecided = 0;
+    int[] all = new int[size * size];
+    for (int cell = 0; cell < size * size; cell++) {
+      if (candidates == null
+          || Long.bitCount(candidates.getCandidates(cell / size + 1, cell % size + 1)) > 1) {
+        all[undecided++] = cell;
+      }
+    }
+    this.cells = Arrays.copyOf(all, undecided);
+    this.forced = forced(encoder, cells);
+    this.path = new int[undecided];
+    this.excluded = new int[undecided + 1][size];
+    this.excludedCount = new int[undecided + 1];
+    this.open = new boolean[undecided + 1];
+    this.assumptions = new VecInt(undecided + size);
+    this.open[0] = true;
+    this.deepest = 0;
+  }
+
+  /**
+   * Checks whether there is another solution, searching for it if needed.
+   * @return True if there is another solution.
+   * @throws IllegalStateException If the search times out.
+   */
+  @Override
+  public boolean hasNext() {
+    if (next == null && solver != null) {
+      advance();
+    }
+    return next != null;
+  }
+
+  /**
+   * Gets the next solution.
+   * @return The solved sudoku puzzle.
+   * @throws NoSuchElementException If there are no more solutions.
+   * @throws IllegalStateException If the search times out.
+   */
+  @Override
+  public int[][] next() {
+    if (!hasNext()) {
+      throw new NoSuchElementException();
+    }
+    int[][] solution = next;
+    next = null;
+    return solution;
+  }
+
+  /**
+   * Counts the constraints held by the solver, leaving out the clauses it learned.
+   * @return The number of constraints, or 0 once the search is over.
+   */
+  int constraintCount() {
+    return solver != null ? solver.nConstraints() : 0;
+  }
+
+  /**
+   * Searches the deepest open branch for a solution, closing the branches without one, and opens
+   * the branches splitting off from the solution found.
+   * @throws IllegalStateException If the search times out.
+   */
+  private void advance() {
+    int size = encoder.getSize();
+    try {
+      while (deepest >= 0) {
+        int depth = deepest;
+        assumptions.clear();
+        for (int k = 0; k < depth; k++) {
+          assumptions.push(encoder.var(cells[k] / size + 1, cells[k] % size + 1, path[k]));
+        }
+        for (int e = 0; e < excludedCount[depth]; e++) {
+          assumptions.push(-encoder.var(cells[depth] / size + 1, cells[depth] % size + 1,
+              excluded[depth][e]));
+        }
+        if (!solver.isSatisfiable(assumptions)) {
+          close(depth);
+          continue;
+        }
+        next = SudokuModel.decode(encoder, candidates, solver.model());
+        if (depth == cells.length) {
+          close(depth);
+          return;
+        }
+        for (int k = depth; k < cells.length; k++) {
+          path[k] = next[cells[k] / size][cells[k] % size];
+        }
+        excluded[depth][excludedCount[depth]++] = path[depth];
+        open[depth] = !forced[depth];
+        for (int k = depth + 1; k < cells.length; k++) {
+          // Solutions agreeing with this one up to cell k, but not at it
+          excluded[k][0] = path[k];
+          excludedCount[k] = 1;
+          open[k] = !forced[k];
+        }
+        deepest = cells.length - 1;
+        retreat();
+        return;
+      }
+      solver = null;
+    } catch (TimeoutException e) {
+      throw new IllegalStateException("Unable to find the next solution in time");
+    }
+  }
+
+  /**
+   * Finds the cells whose row, column or box is otherwise filled by the cells before them, or by
+   * cells decided by propagation.
+   * @param encoder The shape of the board.
+   * @param cells The undecided cells, as row * size + column from 0, in the order of the walk.
+   * @return Whether each cell can only hold one value once the cells before it are fixed.
+   */
+  private static boolean[] forced(SudokuEncoder encoder, int[] cells) {
+    int size = encoder.getSize();
+    int[] position = new int[size * size];
+    Arrays.fill(position, -1);
+    for (int k = 0; k < cells.length; k++) {
+      position[cells[k]] = k;
+    }
+    boolean[] forced = new boolean[cells.length];
+    for (int k = 0; k < cells.length; k++) {
+      int row = cells[k] / size;
+      int column = cells[k] % size;
+      int boxRow = row - row % encoder.getBoxRows();
+      int boxColumn = column - column % encoder.getBoxColumns();
+      int rowLast = 0;
+      int columnLast = 0;
+      int boxLast = 0;
+      for (int i = 0; i < size; i++) {
+        rowLast = Math.max(rowLast, position[row * size + i]);
+        columnLast = Math.max(columnLast, position[i * size + column]);
+        boxLast = Math.max(boxLast, position[(boxRow + i / encoder.getBoxColumns()) * size
+            + boxColumn + i % encoder.getBoxColumns()]);
+      }
+      forced[k] = rowLast == k || columnLast == k || boxLast == k;
+    }
+    return forced;
+  }
+
+  /**
+   * Closes a branch without any solution left, moving on to the deepest branch still open.
+   * @param depth The depth of the branch.
+   */
+  private void close(int depth) {
+    open[depth] = false;
+    retreat();
+  }
+
+  /**
+   * Moves on from the deepest branch to the deepest one still open.
+   */
+  private void retreat() {
+    while (deepest >= 0 && !open[deepest]) {
+      deepest--;
+    }
+  }
+}
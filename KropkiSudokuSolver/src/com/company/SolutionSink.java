@@ -0,0 +1,184 @@
+package com.company;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Writes solutions to a stream in a compact binary form instead of printing them. The stream
+ * starts with the bytes 'K' and 'S' followed by one byte for the size of the board, and then holds
+ * every solution one after another, with the cells in row then column order. On boards up to
+ * 15x15 each cell takes 4 bits, so a 9x9 solution takes 41 bytes, and on larger boards each cell
+ * takes a byte. A sink is not thread safe.
+ */
+public final class SolutionSink implements Closeable {
+
+  private static final int FIRST_MAGIC = 'K';
+  private static final int SECOND_MAGIC = 'S';
+  private static final int NIBBLE_LIMIT = 15;
+
+  private final OutputStream out;
+  private final int size;
+  private final byte[] buffer;
+  private long count;
+
+  /**
+   * Constructs a sink and writes its header.
+   * @param out The stream to write to, which is closed along with the sink.
+   * @param encoder The shape of the board of every solution.
+   * @throws IOException If the header can't be written.
+   */
+  public SolutionSink(OutputStream out, SudokuEncoder encoder) throws IOException {
+    this.out = new BufferedOutputStream(out);
+    this.size = encoder.getSize();
+    this.buffer = new byte[bytesPerSolution(size)];
+    this.count = 0;
+    this.out.write(FIRST_MAGIC);
+    this.out.write(SECOND_MAGIC);
+    this.out.write(size);
+  }
+
+  /**
+   * Writes a solution.
+   * @param sudoku The solved sudoku puzzle.
+   * @throws IOException If the solution can't be written.
+   */
+  public void write(int[][] sudoku) throws IOException {
+    pack(sudoku, size, buffer, 0);
+    out.write(buffer);
+    count++;
+  }
+
+  /**
+   * Getter for the number of solutions written.
+   * @return The number of solutions.
+   */
+  public long getCount() {
+    return count;
+  }
+
+  @Override
+  public void close() throws IOException {
+    out.close();
+  }
+
+  /**
+   * Reads back the solutions written by a sink, one at a time.
+   * @param in The stream to read from.
+   * @return The iterator over the solutions, which throws IllegalStateException if the stream
+   * can't be read and IllegalArgumentException if it ends partway through a solution.
+   * @throws IOException If the header can't be read.
+   * @throws IllegalArgumentException If the stream wasn't written by a sink.
+   */
+  public static Iterator<int[][]> read(InputStream in) throws IOException {
+    DataInputStream data = new DataInputStream(new BufferedInputStream(in));
+    if (data.read() != FIRST_MAGIC || data.read() != SECOND_MAGIC) {
+      throw new IllegalArgumentException("Invalid Solution File");
+    }
+    int size = data.read();
+    if (size < 1) {
+      throw new IllegalArgumentException("Invalid Solution File");
+    }
+    byte[] buffer = new byte[bytesPerSolution(size)];
+    return new Iterator<int[][]>() {
+      private int[][] next = readSolution();
+
+      @Override
+      public boolean hasNext() {
+        return next != null;
+      }
+
+      @Override
+      public int[][] next() {
+        if (next == null) {
+          throw new NoSuchElementException();
+        }
+        int[][] solution = next;
+        next = readSolution();
+        return solution;
+      }
+
+      /**
+       * Reads the next solution from the stream.
+       * @return The solution, or null if the stream ends before it.
+       * @throws IllegalArgumentException If the stream ends partway through the solution.
+       * @throws IllegalStateException If the stream can't be read.
+       */
+      private int[][] readSolution() {
+        try {
+          int first = data.read();
+          if (first < 0) {
+            return null;
+          }
+          buffer[0] = (byte) first;
+          data.readFully(buffer, 1, buffer.length - 1);
+        } catch (EOFException e) {
+          throw new IllegalArgumentException("Invalid Solution File");
+        } catch (IOException e) {
+          throw new IllegalStateException("Unable to read solutions");
+        }
+        return unpack(buffer, 0, size);
+      }
+    };
+  }
+
+  /**
+   * Packs a solution into its binary form.
+   * @param sudoku The solved sudoku puzzle.
+   * @param size The size of the board.
+   * @param buffer The buffer to pack the solution into.
+   * @param offset The position of the bytesPerSolution(size) bytes of the buffer to use.
+   */
+  static void pack(int[][] sudoku, int size, byte[] buffer, int offset) {
+    for (int i = 0; i < bytesPerSolution(size); i++) {
+      buffer[offset + i] = 0;
+    }
+    for (int cell = 0; cell < size * size; cell++) {
+      int value = sudoku[cell / size][cell % size];
+      if (size <= NIBBLE_LIMIT) {
+        buffer[offset + cell / 2] |= (byte) (cell % 2 == 0 ? value << 4 : value);
+      } else {
+        buffer[offset + cell] = (byte) value;
+      }
+    }
+  }
+
+  /**
+   * Unpacks a solution from its binary form.
+   * @param buffer The buffer holding the packed solution.
+   * @param offset The position of the packed solution in the buffer.
+   * @param size The size of the board.
+   * @return The solved sudoku puzzle.
+   */
+  static int[][] unpack(byte[] buffer, int offset, int size) {
+    int[][] sudoku = new int[size][size];
+    for (int cell = 0; cell < size * size; cell++) {
+      int value;
+      if (size <= NIBBLE_LIMIT) {
+        int packed = buffer[offset + cell / 2];
+        value = cell % 2 == 0 ? (packed >> 4) & 0xF : packed & 0xF;
+      } else {
+        value = buffer[offset + cell] & 0xFF;
+      }
+      sudoku[cell / size][cell % size] = value;
+    }
+    return sudoku;
+  }
+
+  /**
+   * Gets the number of bytes each solution of a board takes.
+   * @param size The size of the board.
+   * @return The number of bytes.
+   */
+  static int bytesPerSolution(int size) {
+    int cells = size * size;
+    return size <= NIBBLE_LIMIT ? (cells + 1) / 2 : cells;
+  }
+}
@@ -0,0 +1,111 @@
+package com.company;
+
+/**
+ * The result of solving a Kropki sudoku puzzle, holding whether it could be solved and the solved
+ * board if it could.
+ */
+public final class SolveResult {
+
+  /**
+   * Represents the outcome of a solve.
+   */
+  public enum Status{Satisfiable, Unsatisfiable, Timeout};
+
+  private final Status status;
+  private final int[][] sudoku;
+  private final SudokuEncoder encoder;
+  private final SolveStatistics statistics;
+
+  /**
+   * Constructs a result.
+   * @param status The outcome of the solve.
+   * @param sudoku The solved sudoku puzzle, or a board of zeros if there is no solution.
+   * @param encoder The shape of the board.
+   */
+  public SolveResult(Status status, int[][] sudoku, SudokuEncoder encoder) {
+    this(status, sudoku, encoder, SolveStatistics.EMPTY);
+  }
+
+  /**
+   * Constructs a result with the measurements of its solve.
+   * @param status The outcome of the solve.
+   * @param sudoku The solved sudoku puzzle, or a board of zeros if there is no solution.
+   * @param encoder The shape of the board.
+   * @param statistics The measurements of the solve.
+   */
+  public SolveResult(Status status, int[][] sudoku, SudokuEncoder encoder,
+      SolveStatistics statistics) {
+    this.status = status;
+    this.sudoku = sudoku;
+    this.encoder = encoder;
+    this.statistics = statistics;
+  }
+
+  /**
+   * Constructs a result without a solution.
+   * @param status The outcome of the solve.
+   * @param encoder The shape of the board.
+   * @return The result, holding a board of zeros.
+   */
+  public static SolveResult unsolved(Status status, SudokuEncoder encoder) {
+    int size = encoder.getSize();
+    return new SolveResult(status, new int[size][size], encoder);
+  }
+
+  /**
+   * Constructs a copy of this result with the measurements of its solve.
+   * @param statistics The measurements of the solve.
+   * @return The new result.
+   */
+  public SolveResult withStatistics(SolveStatistics statistics) {
+    return new SolveResult(status, sudoku, encoder, statistics);
+  }
+
+  /**
+   * Getter for the measurements of the solve.
+   * @return The statistics, or SolveStatistics.EMPTY if nothing was measured.
+   */
+  public SolveStatistics getStatistics() {
+    return statistics;
+  }
+
+  /**
+   * Getter for the status.
+   * @return The outcome of the solve.
+   */
+  public Status getStatus() {
+    return status;
+  }
+
+  /**
+   * Getter for whether the puzzle was solved.
+   * @return True if the puzzle is satisfiable.
+   */
+  public boolean isSatisfiable() {
+    return status == Status.Satisfiable;
+  }
+
+  /**
+   * Getter for the solved sudoku puzzle.
+   * @return A copy of the solved board, or a board of zeros if there is no solution.
+   */
+  public int[][] getSudoku() {
+    int[][] copy = new int[sudoku.length][];
+    for (int i = 0; i < sudoku.length; i++) {
+      copy[i] = sudoku[i].clone();
+    }
+    return copy;
+  }
+
+  @Override
+  public String toString() {
+    switch (status) {
+      case Satisfiable:
+        return "Satisfiable!" + System.lineSeparator() + encoder.format(sudoku);
+      case Unsatisfiable:
+        return "Unsatisfiable!" + System.lineSeparator();
+      default:
+        return "Timeout, sorry!" + System.lineSeparator();
+    }
+  }
+}
@@ -0,0 +1,166 @@
+package com.company;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Map;
+import org.sat4j.specs.ISolver;
+
+/**
+ * Measurements of a single solve: how long it took, how much the solving thread allocated, and
+ * the search statistics reported by the SAT solver.
+ */
+public final class SolveStatistics {
+
+  /**
+   * Statistics for a solve where nothing was measured.
+   */
+  public static final SolveStatistics EMPTY = new SolveStatistics(0, -1, 0, 0, 0);
+
+  // Looked up once, since every lookup allocates
+  private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+  private final long nanos;
+  private final long allocatedBytes;
+  private final long propagations;
+  private final long decisions;
+  private final long conflicts;
+
+  /**
+   * Constructs the statistics of a solve.
+   * @param nanos The time the solve took in nanoseconds.
+   * @param allocatedBytes The bytes allocated by the solving thread, or -1 if unknown.
+   * @param propagations The number of unit propagations.
+   * @param decisions The number of decisions.
+   * @param conflicts The number of conflicts.
+   */
+  public SolveStatistics(long nanos, long allocatedBytes, long propagations, long decisions,
+      long conflicts) {
+    this.nanos = nanos;
+    this.allocatedBytes = allocatedBytes;
+    this.propagations = propagations;
+    this.decisions = decisions;
+    this.conflicts = conflicts;
+  }
+
+  /**
+   * Reads the statistics of a finished solve on a solver that was new.
+   * @param solver The solver that was used.
+   * @param startNanos The value of System.nanoTime() when the solve started.
+   * @param startBytes The value of allocatedBytes() when the solve started.
+   * @return The statistics.
+   */
+  static SolveStatistics of(ISolver solver, long startNanos, long startBytes) {
+    return of(solver, EMPTY, startNanos, startBytes);
+  }
+
+  /**
+   * Reads the statistics of a finished solve on a solver that may have solved before, whose
+   * counters only ever grow.
+   * @param solver The solver that was used.
+   * @param before The counters of the solver when the solve started, from counters().
+   * @param startNanos The value of System.nanoTime() when the solve started.
+   * @param startBytes The value of allocatedBytes() when the solve started.
+   * @return The statistics, counting only what happened during the solve.
+   */
+  static SolveStatistics of(ISolver solver, SolveStatistics before, long startNanos,
+      long startBytes) {
+    SolveStatistics measured = of(startNanos, startBytes);
+    SolveStatistics after = counters(solver);
+    return new SolveStatistics(measured.nanos, measured.allocatedBytes,
+        after.propagations - before.propagations, after.decisions - before.decisions,
+        after.conflicts - before.conflicts);
+  }
+
+  /**
+   * Reads the counters of a solver so far.
+   * @param solver The solver.
+   * @return The statistics, holding only the propagations, decisions and conflicts.
+   */
+  static SolveStatistics counters(ISolver solver) {
+    Map<String, Number> stats = solver.getStat();
+    return new SolveStatistics(0, -1, stat(stats, "propagations"), stat(stats, "decisions"),
+        stat(stats, "conflicts"));
+  }
+
+  /**
+   * Reads the statistics of a solve that never reached a SAT solver.
+   * @param startNanos The value of System.nanoTime() when the solve started.
+   * @param startBytes The value of allocatedBytes() when the solve started.
+   * @return The statistics, with no propagations, decisions or conflicts.
+   */
+  static SolveStatistics of(long startNanos, long startBytes) {
+    long nanos = System.nanoTime() - startNanos;
+    long endBytes = allocatedBytes();
+    long bytes = startBytes < 0 || endBytes < 0 ? -1 : endBytes - startBytes;
+    return new SolveStatistics(nanos, bytes, 0, 0, 0);
+  }
+
+  /**
+   * Gets how many bytes the current thread has allocated so far, where the JVM supports it.
+   * @return The number of bytes, or -1 if unknown.
+   */
+  static long allocatedBytes() {
+    if (THREADS instanceof com.sun.management.ThreadMXBean) {
+      return ((com.sun.management.ThreadMXBean) THREADS).getThreadAllocatedBytes(
+          Thread.currentThread().getId());
+    }
+    return -1;
+  }
+
+  /**
+   * Gets one of the solver's statistics.
+   * @param stats The solver's statistics.
+   * @param name The name of the statistic.
+   * @return The value, or 0 if the solver doesn't report it.
+   */
+  private static long stat(Map<String, Number> stats, String name) {
+    Number value = stats.get(name);
+    return value == null ? 0 : value.longValue();
+  }
+
+  /**
+   * Getter for the time the solve took.
+   * @return The time in nanoseconds.
+   */
+  public long getNanos() {
+    return nanos;
+  }
+
+  /**
+   * Getter for the bytes allocated by the solving thread.
+   * @return The number of bytes, or -1 if unknown.
+   */
+  public long getAllocatedBytes() {
+    return allocatedBytes;
+  }
+
+  /**
+   * Getter for the number of unit propagations.
+   * @return The number of propagations.
+   */
+  public long getPropagations() {
+    return propagations;
+  }
+
+  /**
+   * Getter for the number of decisions.
+   * @return The number of decisions.
+   */
+  public long getDecisions() {
+    return decisions;
+  }
+
+  /**
+   * Getter for the number of conflicts.
+   * @return The number of conflicts.
+   */
+  public long getConflicts() {
+    return conflicts;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%.3f ms, %d bytes, %d propagations, %d decisions, %d conflicts",
+        nanos / 1e6, allocatedBytes, propagations, decisions, conflicts);
+  }
+}
@@ -0,0 +1,15 @@
+package com.company;
+
+/**
+ * The SAT4J solver configurations a PortfolioSolver can race against each other.
+ * <ul>
+ *   <li>Default: SolverFactory.newDefault(), the solver every other class uses.</li>
+ *   <li>Light: SolverFactory.newLight(), the default solver without its costly
+ *   simplifications.</li>
+ *   <li>Glucose: SolverFactory.newGlucose(), with Glucose's learned clause deletion.</li>
+ *   <li>Glucose21: SolverFactory.newGlucose21(), with Glucose 2.1's restarts.</li>
+ *   <li>NoRestarts: a learning solver that never restarts.</li>
+ *   <li>LongRestarts: a learning solver with long restart intervals.</li>
+ * </ul>
+ */
+public enum SolverConfiguration{Default, Light, Glucose, Glucose21, NoRestarts, LongRestarts};
@@ -0,0 +1,187 @@
+package com.company;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.sat4j.core.VecInt;
+import org.sat4j.minisat.SolverFactory;
+import org.sat4j.reader.DimacsReader;
+import org.sat4j.specs.ISolver;
+import org.sat4j.tools.DimacsStringSolver;
+
+/**
+ * Measures each stage of a solve on its own: the base clauses, the Kropki clauses, the whole
+ * encoding, writing and parsing the DIMACS text, the SAT search and decoding the model. Whatever a
+ * stage needs is prepared before every run and left out of the measurement. For every stage it
+ * reports the throughput over the corpus, the 50th, 90th and 99th percentile and worst latency of
+ * a single run, and the bytes allocated per run and per second. The corpus is the built in puzzles
+ * and some generated minimal ones. Run with a batch file, and optionally "--size n", to use that
+ * corpus instead.
+ */
+public class StageBenchmark {
+
+  private static final int WARMUP_ROUNDS = 5;
+  private static final int MEASURED_ROUNDS = 20;
+  private static final int GENERATED_PUZZLES = 4;
+  private static final long GENERATOR_SEED = 20;
+
+  /**
+   * Prepares the input of a single run of a stage.
+   */
+  private interface Setup {
+    Object prepare(KropkiPuzzle puzzle, int index) throws Exception;
+  }
+
+  /**
+   * Runs a stage once on its prepared input.
+   */
+  private interface Run {
+    Object run(KropkiPuzzle puzzle, Object input) throws Exception;
+  }
+
+  private static volatile int sink;
+
+  public static void main(String[] args) throws Exception {
+    List<KropkiPuzzle> puzzles = new ArrayList<>();
+    if (args.length > 0) {
+      int size = args.length >= 3 && args[1].equals("--size") ? Integer.valueOf(args[2]) : 9;
+      puzzles.addAll(PuzzleCorpus.load(args[0], SudokuEncoder.forSize(size)));
+    } else {
+      puzzles.addAll(PuzzleCorpus.standard());
+      puzzles.add(PuzzleCorpus.patterned(4));
+      puzzles.addAll(PuzzleCorpus.generated(GENERATED_PUZZLES, GENERATOR_SEED));
+    }
+    SudokuModel model = new SudokuModel(SudokuModel.Engine.Sat, AtMostOneEncoding.Pairwise, false);
+    byte[][] dimacs = new byte[puzzles.size()][];
+    int[][] models = new int[puzzles.size()][];
+    for (int p = 0; p < puzzles.size(); p++) {
+      dimacs[p] = dimacs(model, puzzles.get(p));
+      ISolver solver = encoded(model, puzzles.get(p));
+      models[p] = solver.isSatisfiable() ? solver.model() : null;
+    }
+    System.out.println(String.format("%-16s %12s %10s %10s %10s %10s %12s %10s", "Stage", "Ops/s",
+        "p50 us", "p90 us", "p99 us", "Max us", "B/op", "MB/s"));
+    measure("Base clauses", puzzles, (puzzle, index) -> emptySolver(puzzle),
+        (puzzle, input) -> {
+          BaseClauseSet.forBoard(puzzle.getEncoder()).addTo((ISolver) input);
+          return input;
+        });
+    measure("Kropki clauses", puzzles, (puzzle, index) -> emptySolver(puzzle),
+        (puzzle, input) -> {
+          model.addKropkiConstraints((ISolver) input,
+              new VecInt(puzzle.getEncoder().getSize()), puzzle);
+          return input;
+        });
+    measure("Encode", puzzles, (puzzle, index) -> SolverFactory.newDefault(),
+        (puzzle, input) -> model.encode((ISolver) input, puzzle, null, false));
+    measure("DIMACS write", puzzles, (puzzle, index) -> new DimacsStringSolver(),
+        (puzzle, input) -> model.encode((ISolver) input, puzzle, null, false).toString());
+    measure("DIMACS parse", puzzles,
+        (puzzle, index) -> new Object[] {new DimacsReader(SolverFactory.newDefault()),
+            new ByteArrayInputStream(dimacs[index])},
+        (puzzle, input) -> ((DimacsReader) ((Object[]) input)[0]).parseInstance(
+            (ByteArrayInputStream) ((Object[]) input)[1]));
+    measure("SAT search", puzzles, (puzzle, index) -> encoded(model, puzzle),
+        (puzzle, input) -> ((ISolver) input).isSatisfiable());
+    measure("Decode", puzzles, (puzzle, index) -> models[index],
+        (puzzle, input) -> input == null ? null
+            : SudokuModel.decode(puzzle.getEncoder(), null, (int[]) input));
+  }
+
+  /**
+   * Runs a stage on every puzzle of the corpus, first to warm up and then measuring each run, and
+   * prints what was measured.
+   * @param name The name of the stage.
+   * @param puzzles The corpus.
+   * @param setup Prepares the input of each run.
+   * @param run Runs the stage.
+   * @throws Exception If the stage fails.
+   */
+  private static void measure(String name, List<KropkiPuzzle> puzzles, Setup setup, Run run)
+      throws Exception {
+    for (int round = 0; round < WARMUP_ROUNDS; round++) {
+      for (int p = 0; p < puzzles.size(); p++) {
+        consume(run.run(puzzles.get(p), setup.prepare(puzzles.get(p), p)));
+      }
+    }
+    long[] nanos = new long[MEASURED_ROUNDS * puzzles.size()];
+    long totalNanos = 0;
+    long totalBytes = 0;
+    int runs = 0;
+    for (int round = 0; round < MEASURED_ROUNDS; round++) {
+      for (int p = 0; p < puzzles.size(); p++) {
+        Object input = setup.prepare(puzzles.get(p), p);
+        long startBytes = SolveStatistics.allocatedBytes();
+        long start = System.nanoTime();
+        Object output = run.run(puzzles.get(p), input);
+        long elapsed = System.nanoTime() - start;
+        long bytes = SolveStatistics.allocatedBytes() - startBytes;
+        consume(output);
+        nanos[runs++] = elapsed;
+        totalNanos += elapsed;
+        totalBytes += startBytes < 0 ? 0 : bytes;
+      }
+    }
+    Arrays.sort(nanos);
+    double seconds = totalNanos / 1e9;
+    System.out.println(String.format("%-16s %12.1f %10.1f %10.1f %10.1f %10.1f %12.0f %10.1f",
+        name, runs / seconds, percentile(nanos, 50), percentile(nanos, 90),
+        percentile(nanos, 99), nanos[nanos.length - 1] / 1e3, (double) totalBytes / runs,
+        totalBytes / seconds / (1024 * 1024)));
+  }
+
+  /**
+   * Gets a percentile of sorted latencies.
+   * @param nanos The latencies in nanoseconds, sorted.
+   * @param percent The percentile, from 0 to 100.
+   * @return The latency at that percentile in microseconds.
+   */
+  private static double percentile(long[] nanos, int percent) {
+    int index = (int) Math.ceil(percent / 100.0 * nanos.length) - 1;
+    return nanos[Math.max(0, index)] / 1e3;
+  }
+
+  /**
+   * Keeps the result of a run alive, so the JIT can't drop the work that produced it.
+   * @param result The result of the run.
+   */
+  private static void consume(Object result) {
+    sink += System.identityHashCode(result);
+  }
+
+  /**
+   * Gets a new solver with the variables of a puzzle's board and no clauses.
+   * @param puzzle The puzzle.
+   * @return The solver.
+   */
+  private static ISolver emptySolver(KropkiPuzzle puzzle) {
+    ISolver solver = SolverFactory.newDefault();
+    solver.newVar(BaseClauseSet.forBoard(puzzle.getEncoder()).numberOfVariables());
+    return solver;
+  }
+
+  /**
+   * Gets a new solver holding every clause of a puzzle.
+   * @param model The model to encode with.
+   * @param puzzle The puzzle.
+   * @return The solver.
+   * @throws Exception If the clauses are trivially unsatisfiable.
+   */
+  private static ISolver encoded(SudokuModel model, KropkiPuzzle puzzle) throws Exception {
+    return model.encode(SolverFactory.newDefault(), puzzle, null, false);
+  }
+
+  /**
+   * Gets the DIMACS text of a puzzle.
+   * @param model The model to encode with.
+   * @param puzzle The puzzle.
+   * @return The text, as bytes.
+   * @throws Exception If the clauses are trivially unsatisfiable.
+   */
+  private static byte[] dimacs(SudokuModel model, KropkiPuzzle puzzle) throws Exception {
+    return model.encode(new DimacsStringSolver(), puzzle, null, false).toString()
+        .getBytes(StandardCharsets.US_ASCII);
+  }
+}
@@ -0,0 +1,211 @@
+package com.company;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Solves a stream of Kropki sudoku puzzles, one per line as in a BatchSolver batch, writing one
+ * line per puzzle as soon as it and every puzzle before it is solved, so it can sit in a pipeline.
+ * A result line holds the number of the puzzle, its status, the solved board in row then column
+ * order, and the time the solve took in microseconds, separated by spaces. The board is a digit
+ * per cell on boards up to 9x9, comma separated values on larger boards, and "-" without a
+ * solution. A puzzle that can't be parsed gets its number, "Error" and the reason instead.
+ *
+ * Parsing, solving and writing run as separate stages. One thread parses the lines, a pool of
+ * workers solves the puzzles, each with its own KropkiSolverSession, and the calling thread writes
+ * the results. The stages are joined by bounded queues, so a slow stage holds back the ones before
+ * it and only a few puzzles per worker are ever in memory, however long the stream. The output is
+ * flushed whenever the writer has to wait for the next result.
+ */
+public class StreamingSolver {
+
+  /**
+   * A puzzle passing through the pipeline.
+   */
+  private static final class Job {
+    private final int number;
+    private final KropkiPuzzle puzzle;
+    private final CompletableFuture<String> result;
+
+    /**
+     * Constructs a job.
+     * @param number The number of the puzzle in the stream.
+     * @param puzzle The puzzle to solve, or null if it is already done.
+     */
+    private Job(int number, KropkiPuzzle puzzle) {
+      this.number = number;
+      this.puzzle = puzzle;
+      this.result = new CompletableFuture<>();
+    }
+  }
+
+  private static final Job END = new Job(0, null);
+
+  private int threads;
+  private PrintStream out;
+  private SudokuEncoder encoder;
+
+  /**
+   * Constructs a streaming solver for puzzles on the standard 9x9 board.
+   * @param threads The number of worker threads.
+   * @param out The stream to write the results to.
+   * @throws IllegalArgumentException If there isn't at least one thread.
+   */
+  public StreamingSolver(int threads, PrintStream out) {
+    this(threads, out, SudokuEncoder.getStandard());
+  }
+
+  /**
+   * Constructs a streaming solver.
+   * @param threads The number of worker threads.
+   * @param out The stream to write the results to.
+   * @param encoder The shape of the board of every puzzle.
+   * @throws IllegalArgumentException If there isn't at least one thread.
+   */
+  public StreamingSolver(int threads, PrintStream out, SudokuEncoder encoder) {
+    if (threads < 1) {
+      throw new IllegalArgumentException("Invalid thread count");
+    }
+    this.threads = threads;
+    this.out = out;
+    this.encoder = encoder;
+  }
+
+  /**
+   * Solves every puzzle read from the given reader, writing the results in order.
+   * @param in The reader to read the puzzles from, one per line.
+   * @throws IOException If the puzzles can't be read.
+   * @throws IllegalStateException If the writer was interrupted or a worker failed.
+   */
+  public void solveAll(BufferedReader in) throws IOException {
+    // The writer's queue keeps the order of the stream, the workers' queue only the unsolved ones
+    BlockingQueue<Job> ordered = new ArrayBlockingQueue<>(threads * 4);
+    BlockingQueue<Job> unsolved = new ArrayBlockingQueue<>(threads * 4);
+    CompletableFuture<Void> parsed = new CompletableFuture<>();
+    ExecutorService pool = Executors.newFixedThreadPool(threads + 1);
+    try {
+      pool.submit(() -> parse(in, ordered, unsolved, parsed));
+      for (int i = 0; i < threads; i++) {
+        pool.submit(() -> solve(unsolved));
+      }
+      Job job;
+      while ((job = ordered.take()) != END) {
+        if (!job.result.isDone()) {
+          out.flush();
+        }
+        out.print(job.result.get());
+      }
+      out.flush();
+      parsed.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted");
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      throw new IllegalStateException("Unable to solve puzzle", e.getCause());
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+
+  /**
+   * Parses every line of the stream into a job, handing it to the writer and, unless it couldn't
+   * be parsed, to the workers, and then ends both queues.
+   * @param in The reader to read the puzzles from.
+   * @param ordered The queue of every job, in the order of the stream.
+   * @param unsolved The queue of jobs for the workers.
+   * @param parsed Completed once the stream is read, or with the exception that stopped it.
+   */
+  private void parse(BufferedReader in, BlockingQueue<Job> ordered, BlockingQueue<Job> unsolved,
+      CompletableFuture<Void> parsed) {
+    try {
+      try {
+        String line;
+        int number = 0;
+        while ((line = in.readLine()) != null) {
+          if (line.trim().isEmpty()) {
+            continue;
+          }
+          number++;
+          Job job;
+          try {
+            job = new Job(number, KropkiPuzzle.parse(line, encoder));
+          } catch (IllegalArgumentException e) {
+            job = new Job(number, null);
+            job.result.complete(number + " Error " + e.getMessage() + System.lineSeparator());
+          }
+          ordered.put(job);
+          if (job.puzzle != null) {
+            unsolved.put(job);
+          }
+        }
+        parsed.complete(null);
+      } catch (IOException e) {
+        parsed.completeExceptionally(e);
+      }
+      for (int i = 0; i < threads; i++) {
+        unsolved.put(END);
+      }
+      ordered.put(END);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Solves jobs until the end of the stream.
+   * @param unsolved The queue of jobs for the workers.
+   */
+  private void solve(BlockingQueue<Job> unsolved) {
+    KropkiSolverSession session = new KropkiSolverSession(encoder);
+    try {
+      Job job;
+      while ((job = unsolved.take()) != END) {
+        try {
+          long start = System.nanoTime();
+          SolveResult result = session.solve(job.puzzle);
+          long micros = (System.nanoTime() - start) / 1000;
+          job.result.complete(format(job.number, result, micros));
+        } catch (RuntimeException e) {
+          job.result.completeExceptionally(e);
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Formats the result line of a puzzle.
+   * @param number The number of the puzzle in the stream.
+   * @param result The result of the solve.
+   * @param micros The time the solve took in microseconds.
+   * @return The line, with its line separator.
+   */
+  private String format(int number, SolveResult result, long micros) {
+    StringBuilder line = new StringBuilder();
+    line.append(number).append(' ').append(result.getStatus()).append(' ');
+    if (result.isSatisfiable()) {
+      int size = encoder.getSize();
+      int[][] sudoku = result.getSudoku();
+      for (int cell = 0; cell < size * size; cell++) {
+        if (size > 9 && cell != 0) {
+          line.append(',');
+        }
+        line.append(sudoku[cell / size][cell % size]);
+      }
+    } else {
+      line.append('-');
+    }
+    return line.append(' ').append(micros).append(System.lineSeparator()).toString();
+  }
+}
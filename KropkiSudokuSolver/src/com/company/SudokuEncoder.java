@@ -0,0 +1,301 @@
+package com.company;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Describes the shape of a sudoku board and maps every (row, column, value) of it to a SAT
+ * variable and back. A board has size rows, columns and values, and is split into boxes of
+ * boxRows by boxColumns cells, so a standard board is 9x9 with 3x3 boxes and a 6x6 board usually
+ * has 2x3 boxes. Variables are numbered densely from 1, in row, then column, then value order, so
+ * a 9x9 board uses exactly the variables 1 to 729. Rows, columns and values are all 1 indexed.
+ * Cells are identified like xy, with x being the row and y being the column, or like rrcc on
+ * boards larger than 9x9.
+ */
+public final class SudokuEncoder {
+
+  private static final SudokuEncoder STANDARD = new SudokuEncoder(9, 3, 3);
+
+  private final int size;
+  private final int boxRows;
+  private final int boxColumns;
+  private final int variables;
+  private final int cellBase;
+  private final List<CellPair> cellPairs;
+
+  /**
+   * Constructs an encoder for a board.
+   * @param size The number of rows, columns and values of the board.
+   * @param boxRows The number of rows in each box.
+   * @param boxColumns The number of columns in each box.
+   * @throws IllegalArgumentException If the boxes don't tile the board.
+   */
+  public SudokuEncoder(int size, int boxRows, int boxColumns) {
+    if (size < 1 || size > 99 || boxRows < 1 || boxColumns < 1 || boxRows * boxColumns != size) {
+      throw new IllegalArgumentException("Invalid Size");
+    }
+    this.size = size;
+    this.boxRows = boxRows;
+    this.boxColumns = boxColumns;
+    this.variables = size * size * size;
+    this.cellBase = size <= 9 ? 10 : 100;
+    this.cellPairs = Collections.unmodifiableList(generateCellPairs());
+  }
+
+  /**
+   * Getter for the encoder of the standard 9x9 board.
+   * @return The shared 9x9 encoder.
+   */
+  public static SudokuEncoder getStandard() {
+    return STANDARD;
+  }
+
+  /**
+   * Creates an encoder for a board of the given size, using the squarest boxes that tile it, with
+   * no more rows than columns.
+   * @param size The number of rows, columns and values of the board.
+   * @return The encoder.
+   * @throws IllegalArgumentException If the size is invalid.
+   */
+  public static SudokuEncoder forSize(int size) {
+    if (size == 9) {
+      return STANDARD;
+    }
+    int boxRows = (int) Math.sqrt(size);
+    while (boxRows > 1 && size % boxRows != 0) {
+      boxRows--;
+    }
+    return new SudokuEncoder(size, boxRows, size / Math.max(boxRows, 1));
+  }
+
+  /**
+   * Getter for the size of the board.
+   * @return The number of rows, columns and values.
+   */
+  public int getSize() {
+    return size;
+  }
+
+  /**
+   * Getter for the number of rows in each box.
+   * @return The number of rows in each box.
+   */
+  public int getBoxRows() {
+    return boxRows;
+  }
+
+  /**
+   * Getter for the number of columns in each box.
+   * @return The number of columns in each box.
+   */
+  public int getBoxColumns() {
+    return boxColumns;
+  }
+
+  /**
+   * Getter for the number of cell variables.
+   * @return The number of variables, which is also the highest one.
+   */
+  public int numberOfVariables() {
+    return variables;
+  }
+
+  /**
+   * Getter for every orthogonal cell pair on the board.
+   * @return The unmodifiable list of cell pairs.
+   */
+  public List<CellPair> getCellPairs() {
+    return cellPairs;
+  }
+
+  /**
+   * Gets the variable that is true when a cell holds a value.
+   * @param row The row of the cell.
+   * @param column The column of the cell.
+   * @param value The value.
+   * @return The variable.
+   */
+  public int var(int row, int column, int value) {
+    return ((row - 1) * size + (column - 1)) * size + value;
+  }
+
+  /**
+   * Gets the variable that is true when a cell holds a value, with the cell formatted like in
+   * CellPair.
+   * @param cell The coordinates of the cell.
+   * @param value The value.
+   * @return The variable.
+   */
+  public int cellVar(int cell, int value) {
+    return var(cell / cellBase, cell % cellBase, value);
+  }
+
+  /**
+   * Gets the identifier of a cell, formatted like xy, or rrcc on boards larger than 9x9.
+   * @param row The row of the cell.
+   * @param column The column of the cell.
+   * @return The coordinates of the cell.
+   */
+  public int cellId(int row, int column) {
+    return row * cellBase + column;
+  }
+
+  /**
+   * Gets the row of a cell.
+   * @param cell The coordinates of the cell.
+   * @return The row of the cell.
+   */
+  public int rowOfCell(int cell) {
+    return cell / cellBase;
+  }
+
+  /**
+   * Gets the column of a cell.
+   * @param cell The coordinates of the cell.
+   * @return The column of the cell.
+   */
+  public int columnOfCell(int cell) {
+    return cell % cellBase;
+  }
+
+  /**
+   * Checks whether a cell is on the board.
+   * @param cell The coordinates of the cell.
+   * @return True if both the row and the column are on the board.
+   */
+  public boolean isCell(int cell) {
+    int row = rowOfCell(cell);
+    int column = columnOfCell(cell);
+    return cell > 0 && row >= 1 && row <= size && column >= 1 && column <= size;
+  }
+
+  /**
+   * Checks whether a variable is one of the cell variables.
+   * @param var The variable.
+   * @return True if the variable stands for a cell holding a value.
+   */
+  public boolean isCellVar(int var) {
+    return var >= 1 && var <= variables;
+  }
+
+  /**
+   * Gets the row of a variable.
+   * @param var The variable.
+   * @return The row of its cell.
+   */
+  public int rowOf(int var) {
+    return (var - 1) / (size * size) + 1;
+  }
+
+  /**
+   * Gets the column of a variable.
+   * @param var The variable.
+   * @return The column of its cell.
+   */
+  public int columnOf(int var) {
+    return (var - 1) / size % size + 1;
+  }
+
+  /**
+   * Gets the value of a variable.
+   * @param var The variable.
+   * @return The value its cell holds when it is true.
+   */
+  public int valueOf(int var) {
+    return (var - 1) % size + 1;
+  }
+
+  /**
+   * Takes the SAT solver's model and parses it into the sudoku puzzle. Literals that aren't cell
+   * variables, such as selectors, are skipped.
+   * @param model The array of literals used to construct the puzzle.
+   * @return The solved sudoku puzzle.
+   */
+  public int[][] decode(int[] model) {
+    int[][] sudoku = new int[size][size];
+    for (int literal : model) {
+      if (literal > 0 && literal <= variables) {
+        sudoku[rowOf(literal) - 1][columnOf(literal) - 1] = valueOf(literal);
+      }
+    }
+    return sudoku;
+  }
+
+  /**
+   * Formats a solved sudoku puzzle as a string, with the boxes separated by blank space.
+   * @param sudoku The solved sudoku puzzle.
+   * @return The string representation of the puzzle.
+   */
+  public String format(int[][] sudoku) {
+    StringBuilder output = new StringBuilder();
+    int width = String.valueOf(size).length();
+    for (int i = 0; i < size; i++) {
+      for (int j = 0; j < size; j++) {
+        if (j != 0 && j % boxColumns == 0) {
+          output.append(" ");
+        }
+        String value = String.valueOf(sudoku[i][j]);
+        for (int pad = value.length(); pad < width; pad++) {
+          output.append(" ");
+        }
+        output.append(value);
+        if (j != size - 1) {
+          output.append(" ");
+        }
+      }
+      output.append(System.lineSeparator());
+      if (i != size - 1 && (i + 1) % boxRows == 0) {
+        output.append(System.lineSeparator());
+      }
+    }
+    return output.toString();
+  }
+
+  /**
+   * Creates every orthogonal cell pair.
+   * @return The list of every orthogonal cell pair on the board.
+   */
+  private List<CellPair> generateCellPairs() {
+    List<CellPair> pairs = new ArrayList<>();
+    for (int i = 1; i <= size; i++) {
+      for (int j = 1; j <= size; j++) {
+        int currentCell = cellId(i, j);
+        if (j != size) {
+          int rightCell = cellId(i, j + 1);
+          CellPair leftRightPair = new CellPair(currentCell, rightCell);
+          pairs.add(leftRightPair);
+        }
+        if (i != size) {
+          int downCell = cellId(i + 1, j);
+          CellPair upDownPair = new CellPair(currentCell, downCell);
+          pairs.add(upDownPair);
+        }
+      }
+    }
+    return pairs;
+  }
+
+  @Override
+  public String toString() {
+    return size + "x" + size + " (" + boxRows + "x" + boxColumns + " boxes)";
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o instanceof SudokuEncoder) {
+      SudokuEncoder compare = (SudokuEncoder) o;
+      return this.size == compare.size && this.boxRows == compare.boxRows
+          && this.boxColumns == compare.boxColumns;
+    }
+    return false;
+  }
+
+  @Override
+  public int hashCode() {
+    return (size * 31 + boxRows) * 31 + boxColumns;
+  }
+}
@@ -1,476 +1,418 @@
 package com.company;
 
-import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import org.sat4j.core.VecInt;
 import org.sat4j.minisat.SolverFactory;
-import org.sat4j.reader.DimacsReader;
-import org.sat4j.reader.ParseFormatException;
-import org.sat4j.reader.Reader;
 import org.sat4j.specs.ContradictionException;
-import org.sat4j.specs.IProblem;
 import org.sat4j.specs.ISolver;
+import org.sat4j.specs.IVecInt;
 import org.sat4j.specs.TimeoutException;
+import org.sat4j.tools.DimacsStringSolver;
 
 /**
- * Uses the SAT4J library to solve Kropki sudoku. This model could be extended to include other
- * sudoku variants by changing the addKropkiConstraints method with another one made for that
- * variant. First a CNF representation of a sudoku puzzle is generated, which is then passed to
- * the SAT solver to solve. After the list of positive literals is obtained, it is parsed to get
- * the correct values at the correct coordinates on the sudoku board. This board is then visualized
- * and output as a string.
+ * Uses the SAT4J library to solve Kropki sudoku. First a CNF representation of a sudoku puzzle is
+ * generated, starting from the shared BaseClauseSet, with each clause handed straight to the SAT
+ * solver as it is built. Other sudoku variants are added to a puzzle as ConstraintPlugins, whose
+ * clauses are encoded after the dots. After the list of positive literals is obtained, it is parsed
+ * to get the correct values at the correct coordinates on the sudoku board, which is returned along
+ * with the status of the solve. The model holds no state of its own, so it is safe to call from
+ * many threads at once.
+ *
+ * Unless turned off, a CandidatePropagator first narrows down the values of every cell. Puzzles it
+ * solves or refutes never reach the SAT solver, and for the rest only the residual clauses left by
+ * a PrunedSolver are encoded. The backtracking Engine can be chosen in place of SAT4J, and is used
+ * for every board small enough for it.
+ *
+ * A model can also break the symmetries of each puzzle with a SymmetryBreaker, so that the SAT
+ * solver only explores one solution of every class of symmetric solutions. Solves then still find
+ * a solution whenever there is one, and counting or enumerating solutions counts the classes
+ * instead, while isUnique always checks for a single solution.
  */
-public class SudokuModel {
+public class SudokuModel implements KropkiSolver {
 
   /**
-   * Represents a type of cell constraint, either individual, row, or column.
+   * Represents the engine that solves each puzzle, either the SAT solver or the backtracking
+   * solver.
    */
-  public enum Type{Individual, Row, Column};
+  public enum Engine{Sat, Backtracking};
 
-  private int[][] sudoku;
-  private String filePath;
-  private ArrayList<CellPair> pairs;
-  private HashSet<CellPair> whiteDotPairs;
-  private HashSet<CellPair> blackDotPairs;
-  private int clauses;
+  private final Engine engine;
+  private final AtMostOneEncoding encoding;
+  private final boolean propagate;
+  private final boolean breakSymmetry;
 
   /**
-   * Represents a sudoku model.
-   * @param filePath The filepath to write the CNF file to.
-   * @param whiteDots The list of cells that have white dot constraints.
-   * @param blackDots The list of cell that have black dot constraints.
+   * Constructs a model using the pairwise encoding for uniqueness.
    */
-  public SudokuModel(String filePath, ArrayList<Integer> whiteDots,  ArrayList<Integer> blackDots) {
-    this.sudoku = new int[9][9];
-    this.filePath = filePath;
-    this.clauses = 0;
-    this.pairs = new ArrayList<>();
-    this.whiteDotPairs = new HashSet<>();
-    this.blackDotPairs = new HashSet<>();
-    // Parses the white dot pairs
-    for (int i = 0; i < whiteDots.size() - 1; i++) {
-      int firstCell = whiteDots.get(i);
-      int secondCell = whiteDots.get(i + 1);
-      CellPair current = new CellPair(firstCell, secondCell);
-      whiteDotPairs.add(current);
-      i++;
-    }
-    // Parses the black dot pairs
-    for (int i = 0; i < blackDots.size() - 1; i++) {
-      int firstCell = blackDots.get(i);
-      int secondCell = blackDots.get(i + 1);
-      CellPair current = new CellPair(firstCell, secondCell);
-      blackDotPairs.add(current);
-      i++;
-    }
+  public SudokuModel() {
+    this(AtMostOneEncoding.Pairwise);
   }
 
   /**
-   * Uses the SAT solver to find the satisfiability of the sudoku puzzle.
+   * Constructs a model that propagates candidates before solving.
+   * @param encoding The encoding of the uniqueness clauses of every solve.
    */
-  public void solveSudoku() {
-    WriteFile out = new WriteFile(filePath);
-    try {
-      generateCellPairs();
-      StringBuilder cnf = makeCNFFile();
-      String sudokuPuzzle = addKropkiConstraints(cnf);
-      StringBuilder fullFile = new StringBuilder();
-      fullFile.append("p cnf 999 ");
-      fullFile.append(clauses);
-      fullFile.append(System.lineSeparator());
-      fullFile.append(sudokuPuzzle);
-      out.writeToFile(fullFile.toString());
-    } catch (IOException e) {
-      throw new IllegalStateException("Unable to write to file");
-    }
-    ISolver solver = SolverFactory.newDefault();
-    solver.setTimeout(300); // 5 minute timeout
-    Reader reader = new DimacsReader(solver);
-    try {
-      IProblem problem = reader.parseInstance(filePath);
-      if (problem.isSatisfiable()) {
-        System.out.println("Satisfiable!");
-        int[] model = problem.model();
-        parseSolution(model);
-        visualizeSolution();
-      } else {
-        System.out.println("Unsatisfiable!");
-      }
-    } catch (FileNotFoundException e) {
-      System.out.println("File Not Found");
-    } catch (ParseFormatException e) {
-      System.out.println("Parse Format Error");
-    } catch (IOException e) {
-      System.out.println("IOException");
-    } catch (ContradictionException e) {
-      System.out.println("Unsatisfiable (trivial)!");
-    } catch (TimeoutException e) {
-      System.out.println("Timeout, sorry!");
-    }
+  public SudokuModel(AtMostOneEncoding encoding) {
+    this(encoding, true);
   }
 
   /**
-   * Represents the puzzle as a CNF file.
-   * @return A StringBuilder representing the CNF reduced puzzle
-   * (minus the puzzle specific constraints).
+   * Constructs a model.
+   * @param encoding The encoding of the uniqueness clauses of every solve.
+   * @param propagate Whether to propagate candidates and prune the clauses before solving.
    */
-  private StringBuilder makeCNFFile() {
-    StringBuilder ans = new StringBuilder();
-    // Individual Cell Clauses
-    formatClauses(ans, Type.Individual);
-    // Row Clauses
-    formatClauses(ans, Type.Row);
-    // Column Clauses
-    formatClauses(ans, Type.Column);
-    // Block Clauses
-    formatBlockClauses(ans);
-    return ans;
+  public SudokuModel(AtMostOneEncoding encoding, boolean propagate) {
+    this(Engine.Sat, encoding, propagate);
   }
 
   /**
-   * Formats both definedness and uniqueness clauses for individual, row, or column.
-   * @param ans The StringBuilder representation of the CNF file so far.
-   * @param type The type of constraint to add.
+   * Constructs a model using the given engine, with the defaults for the SAT solver.
+   * @param engine The engine that solves each puzzle.
    */
-  private void formatClauses(StringBuilder ans, Type type) {
-    formatDefinedNessClauses(ans, type);
-    formatUniquenessClauses(ans, type);
+  public SudokuModel(Engine engine) {
+    this(engine, AtMostOneEncoding.Pairwise, true);
   }
 
   /**
-   * Formats definedness clauses for constraints of a certain type.
-   * @param ans The StringBuilder representation of the CNF file so far.
-   * @param type The type of constraints to add.
-   * @throws IllegalArgumentException If type is invalid.
+   * Constructs a model.
+   * @param engine The engine that solves each puzzle. Boards too large for the backtracking
+   * solver always use the SAT solver.
+   * @param encoding The encoding of the uniqueness clauses of every SAT solve.
+   * @param propagate Whether to propagate candidates and prune the clauses before a SAT solve.
    */
-  private void formatDefinedNessClauses(StringBuilder ans, Type type)
-      throws IllegalArgumentException {
-    for (int i = 1; i <= 9; i++) {
-      for (int j = 1; j <= 9; j++) {
-        for (int k = 1; k <= 9; k++) {
-          int val;
-          switch(type) {
-            case Individual:
-              val = i * 100 + j * 10 + k;
-              break;
-            case Row:
-              val = i * 100 + k * 10 + j;
-              break;
-            case Column:
-              val = k * 100 + i * 10 + j;
-              break;
-            default:
-              throw new IllegalArgumentException("Invalid Type");
-          }
-          ans.append(val);
-          ans.append(" ");
-        }
-        ans.append(0);
-        ans.append(System.lineSeparator());
-        clauses++;
-      }
-    }
+  public SudokuModel(Engine engine, AtMostOneEncoding encoding, boolean propagate) {
+    this(engine, encoding, propagate, false);
   }
 
   /**
-   * Formats uniqueness clauses for constraints of a certain type.
-   * @param ans The StringBuilder representation of the CNF file so far.
-   * @param type The type of constraints to add.
-   * @throws IllegalArgumentException If type is invalid.
+   * Constructs a model.
+   * @param engine The engine that solves each puzzle. Boards too large for the backtracking
+   * solver always use the SAT solver.
+   * @param encoding The encoding of the uniqueness clauses of every SAT solve.
+   * @param propagate Whether to propagate candidates and prune the clauses before a SAT solve.
+   * @param breakSymmetry Whether to add symmetry breaking clauses to every SAT solve.
    */
-  private void formatUniquenessClauses(StringBuilder ans, Type type)
-  throws IllegalArgumentException {
-    for (int i = 1; i <= 9; i++) {
-      for (int j = 1; j <= 9; j++) {
-        for (int current = 1; current <= 9; current++) {
-          for (int k = current + 1; k <= 9; k++) {
-            int firstVal;
-            int secondVal;
-            switch(type) {
-              case Individual:
-                firstVal = -1 * (i * 100 + j * 10 + current);
-                secondVal = -1 * (i * 100 + j * 10 + k);
-                break;
-              case Row:
-                firstVal = -1 * (j * 100 + current * 10 + i);
-                secondVal = -1 * (j * 100 + k * 10 + i);
-                break;
-              case Column:
-                firstVal = -1 * (current * 100 + j * 10 + i);
-                secondVal = -1 * (k * 100 + j * 10 + i);
-                break;
-              default:
-                throw new IllegalArgumentException("Invalid Type");
-            }
-            ans.append(firstVal);
-            ans.append(" ");
-            ans.append(secondVal);
-            ans.append(" 0");
-            ans.append(System.lineSeparator());
-            clauses++;
-          }
-        }
-      }
-    }
+  public SudokuModel(Engine engine, AtMostOneEncoding encoding, boolean propagate,
+      boolean breakSymmetry) {
+    this.engine = engine;
+    this.encoding = encoding;
+    this.propagate = propagate;
+    this.breakSymmetry = breakSymmetry;
   }
 
   /**
-   * Formats definedness clauses for block constraints.
-   * @param ans The StringBuilder representation of the CNF file so far.
-   * @throws IllegalArgumentException If type is invalid.
+   * Getter for the engine.
+   * @return The engine that solves each puzzle.
    */
-  private void formatBlockClauses(StringBuilder ans) {
-    int jBlock = 1;
-    int kBlock = 1;
-    for (int b = 1; b <= 9; b++) {
-      for (int i = 1; i <= 9; i++) {
-        for (int j = jBlock % 9; j < jBlock % 9 + 3; j++) {
-          for (int k = kBlock; k < kBlock + 3; k++) {
-            int val = k * 100 + j * 10 + i;
-            ans.append(val);
-            ans.append(" ");
-          }
-        }
-        ans.append(0);
-        ans.append(System.lineSeparator());
-        clauses++;
-      }
-      if (b % 3 == 0) {
-        kBlock += 3;
-      }
-      jBlock += 3;
-    }
+  public Engine getEngine() {
+    return engine;
   }
 
   /**
-   * Adds all constraints for all cell pairs.
-   * @param file The StringBuilder representation of the CNF file so far.
-   * @return The String representation of the finalized CNF file with added Kropki constraints.
+   * Getter for the encoding of the uniqueness clauses.
+   * @return The encoding.
    */
-  private String addKropkiConstraints(StringBuilder file) {
-    for (CellPair pair : pairs) {
-     if (whiteDotPairs.contains(pair)) {
-        String constraint = addWhiteDotConstraint(pair);
-        file.append(constraint);
-      }
-     else if (blackDotPairs.contains(pair)) {
-        String constraint = addBlackDotConstraint(pair);
-        file.append(constraint);
-      }
-    else {
-        String constraint = addNoDotConstraint(pair);
-        file.append(constraint);
-      }
+  public AtMostOneEncoding getEncoding() {
+    return encoding;
+  }
+
+  /**
+   * Getter for whether candidates are propagated before solving.
+   * @return True if the clauses are pruned.
+   */
+  public boolean isPropagating() {
+    return propagate;
+  }
+
+  /**
+   * Getter for whether the symmetries of each puzzle are broken.
+   * @return True if symmetry breaking clauses are added.
+   */
+  public boolean isBreakingSymmetry() {
+    return breakSymmetry;
+  }
+
+  /**
+   * Uses the engine to find the satisfiability of a sudoku puzzle. A new solver is used for every
+   * call, so a model can be shared by any number of threads.
+   * @param puzzle The puzzle to solve.
+   * @return The result of the solve.
+   */
+  @Override
+  public SolveResult solve(KropkiPuzzle puzzle) {
+    if (engine == Engine.Backtracking && CandidatePropagator.supports(puzzle.getEncoder())) {
+      return new BacktrackingSolver().solve(puzzle);
+    }
+    long startNanos = System.nanoTime();
+    long startBytes = SolveStatistics.allocatedBytes();
+    SudokuEncoder encoder = puzzle.getEncoder();
+    CandidatePropagator candidates = propagate(puzzle);
+    if (candidates != null && candidates.isContradiction()) {
+      return SolveResult.unsolved(SolveResult.Status.Unsatisfiable, encoder)
+          .withStatistics(SolveStatistics.of(startNanos, startBytes));
+    }
+    if (candidates != null && candidates.isSolved()) {
+      return new SolveResult(SolveResult.Status.Satisfiable, candidates.toSudoku(), encoder)
+          .withStatistics(SolveStatistics.of(startNanos, startBytes));
     }
-    return file.toString();
+    ISolver solver = SolverFactory.newDefault();
+    solver.setTimeout(300); // 5 minute timeout
+    SolveResult result = solve(solver, puzzle, candidates);
+    return result.withStatistics(SolveStatistics.of(solver, startNanos, startBytes));
   }
 
   /**
-   * Adds the constraints to a cell pair with a white dot.
-   * @param pair The cell pair to be constrained upon.
-   * @return The string representing the full set of white dot constraints.
+   * Encodes a puzzle into a solver and solves it.
+   * @param solver The solver to use.
+   * @param puzzle The puzzle to solve.
+   * @param candidates The candidates to prune the clauses with, or null to encode them all.
+   * @return The result of the solve.
    */
-  private String addWhiteDotConstraint(CellPair pair) {
-    StringBuilder ans = new StringBuilder();
-    int firstCell = pair.getFirstCell();
-    int secondCell = pair.getSecondCell();
-    fourLiteralClause(ans, firstCell, secondCell, 1, 2);
-    sixLiteralClause(ans, firstCell, secondCell, 2, 1, 3);
-    sixLiteralClause(ans, firstCell, secondCell, 3, 2, 4);
-    sixLiteralClause(ans, firstCell, secondCell, 4, 3, 5);
-    sixLiteralClause(ans, firstCell, secondCell, 5, 4, 6);
-    sixLiteralClause(ans, firstCell, secondCell, 6, 5, 7);
-    sixLiteralClause(ans, firstCell, secondCell, 7, 6, 8);
-    sixLiteralClause(ans, firstCell, secondCell, 8, 7, 9);
-    fourLiteralClause(ans, firstCell, secondCell, 9, 8);
-    return ans.toString();
+  SolveResult solve(ISolver solver, KropkiPuzzle puzzle, CandidatePropagator candidates) {
+    SudokuEncoder encoder = puzzle.getEncoder();
+    try {
+      encode(solver, puzzle, candidates, breakSymmetry);
+      if (solver.isSatisfiable()) {
+        int[][] sudoku = decode(encoder, candidates, solver.model());
+        return new SolveResult(SolveResult.Status.Satisfiable, sudoku, encoder);
+      }
+      return SolveResult.unsolved(SolveResult.Status.Unsatisfiable, encoder);
+    } catch (ContradictionException e) {
+      return SolveResult.unsolved(SolveResult.Status.Unsatisfiable, encoder);
+    } catch (TimeoutException e) {
+      return SolveResult.unsolved(SolveResult.Status.Timeout, encoder);
+    }
   }
 
   /**
-   * Adds the constraints for a cell pair with a black dot.
-   * @param pair The cell pair to be constrained upon.
-   * @return The string representing the full set of black dot constraints.
+   * Gets every solution of a puzzle from the SAT solver, whatever the engine, or one solution of
+   * every class if symmetries are broken. Each solution is searched for on demand by a single
+   * incremental solver, walking the values of the cells under assumptions, so no clause is added
+   * for the solutions already handed out and memory doesn't grow with them.
+   * @param puzzle The puzzle to solve.
+   * @return The iterator over the solutions.
    */
-  private String addBlackDotConstraint(CellPair pair) {
-    StringBuilder ans = new StringBuilder();
-    int firstCell = pair.getFirstCell();
-    int secondCell = pair.getSecondCell();
-    fourLiteralClause(ans, firstCell, secondCell, 1, 2);
-    sixLiteralClause(ans, firstCell, secondCell, 2, 1, 4);
-    fourLiteralClause(ans, firstCell, secondCell, 3, 6);
-    sixLiteralClause(ans, firstCell, secondCell, 4, 8, 2);
-    fourLiteralClause(ans, firstCell, secondCell, 6, 3);
-    fourLiteralClause(ans, firstCell, secondCell, 8, 4);
-    return ans.toString();
+  public SolutionIterator solutions(KropkiPuzzle puzzle) {
+    return solutions(puzzle, breakSymmetry);
   }
 
   /**
-   * Adds the constraints for a pair of cells with no dot.
-   * @param pair The cell pair to be constrained upon.
-   * @return The string representing the full set of no dot constraints.
+   * Gets every solution of a puzzle from the SAT solver.
+   * @param puzzle The puzzle to solve.
+   * @param breakSymmetry Whether to only get one solution of every class.
+   * @return The iterator over the solutions.
    */
-  private String addNoDotConstraint(CellPair pair) {
-    StringBuilder ans = new StringBuilder();
-    int firstCell = pair.getFirstCell();
-    int secondCell = pair.getSecondCell();
-    for (int i = 1; i <= 4; i++) {
-      noDotClause(ans, firstCell, secondCell, i, i * 2);
-      noDotClause(ans, firstCell, secondCell, i * 2, i);
+  private SolutionIterator solutions(KropkiPuzzle puzzle, boolean breakSymmetry) {
+    SudokuEncoder encoder = puzzle.getEncoder();
+    CandidatePropagator candidates = propagate(puzzle);
+    if (candidates != null && candidates.isContradiction()) {
+      return new SolutionIterator(encoder, candidates, null, null);
     }
-    for (int i = 1; i <= 8; i++) {
-      noDotClause(ans, firstCell, secondCell, i, i + 1);
-      noDotClause(ans, firstCell, secondCell, i + 1, i);
+    if (candidates != null && candidates.isSolved()) {
+      return new SolutionIterator(encoder, candidates, null, candidates.toSudoku());
+    }
+    ISolver solver = SolverFactory.newDefault();
+    solver.setTimeout(300); // 5 minute timeout
+    try {
+      return new SolutionIterator(encoder, candidates,
+          encode(solver, puzzle, candidates, breakSymmetry), null);
+    } catch (ContradictionException e) {
+      return new SolutionIterator(encoder, candidates, null, null);
     }
-    return ans.toString();
   }
 
   /**
-   * Constructs a clause for a cell pair with no dots.
-   * @param clause The ongoing StringBuilder representation of a set of clauses
-   * @param firstCell The first cell in a CellPair
-   * @param secondCell The second cell in a CellPair
-   * @param firstNum The first associated value to be added.
-   * @param secondNum The second associated value to be added.
+   * Gets every solution of a puzzle as a lazy, sequential stream.
+   * @param puzzle The puzzle to solve.
+   * @return The stream of solutions.
    */
-  private void noDotClause(StringBuilder clause, int firstCell, int secondCell, int firstNum,
-      int secondNum) {
-    int firstLiteral, secondLiteral;
-    firstCell *= -10;
-    secondCell *= -10;
-    firstLiteral = firstCell - firstNum;
-    secondLiteral = secondCell - secondNum;
-    clause.append(firstLiteral + " " + secondLiteral + " " + 0);
-    clause.append(System.lineSeparator());
-    clauses++;
+  public Stream<int[][]> solutionStream(KropkiPuzzle puzzle) {
+    Spliterator<int[][]> spliterator = Spliterators.spliteratorUnknownSize(solutions(puzzle),
+        Spliterator.ORDERED | Spliterator.NONNULL);
+    return StreamSupport.stream(spliterator, false);
   }
 
   /**
-   * Writes a pair of two clauses that each contain two literals.
-   * @param clause The ongoing StringBuilder representation of a set of clauses.
-   * @param firstCell The first cell in a CellPair
-   * @param secondCell The second cell in a CellPair
-   * @param firstNum The first associated value to be added.
-   * @param secondNum The second associated value to be added.
+   * Counts the solutions of a puzzle with the SAT solver, whatever the engine, stopping once the
+   * limit is reached. If symmetries are broken, the classes of symmetric solutions are counted
+   * instead. The solutions come from one incremental solver, so it keeps what it learned from one
+   * solution to the next.
+   * @param puzzle The puzzle to count the solutions of.
+   * @param limit The most solutions to count.
+   * @return The number of solutions, up to the limit.
+   * @throws IllegalArgumentException If the limit is less than 1.
+   * @throws IllegalStateException If the count times out.
    */
-  private void fourLiteralClause(StringBuilder clause, int firstCell, int secondCell, int firstNum,
-      int secondNum) {
-    int firstLiteral, secondLiteral, thirdLiteral, fourthLiteral;
-    firstCell *= 10;
-    secondCell *= 10;
-    firstLiteral = -1 * (firstCell + firstNum);
-    secondLiteral = secondCell + secondNum;
-    thirdLiteral = -1 * (secondCell + firstNum);
-    fourthLiteral = firstCell + secondNum;
-    clause.append(firstLiteral + " " + secondLiteral + " " + 0);
-    clause.append(System.lineSeparator());
-    clauses++;
-    clause.append(thirdLiteral + " " + fourthLiteral + " " + 0);
-    clause.append(System.lineSeparator());
-    clauses++;
+  public int countSolutions(KropkiPuzzle puzzle, int limit) {
+    return count(solutions(puzzle), limit);
   }
 
   /**
-   * Writes a a pair of two clauses that each contain three literals.
-   * @param clause The ongoing StringBuilder representation of a set of clauses.
-   * @param firstCell The first cell in a CellPair
-   * @param secondCell The second cell in a CellPair
-   * @param firstNum The first associated value to be added.
-   * @param secondNum The second associated value to be added.
-   * @param thirdNum The third associated value to be added.
+   * Checks whether a puzzle has exactly one solution, stopping as soon as a second one is found.
+   * Symmetries are never broken, as a single class can hold several solutions.
+   * @param puzzle The puzzle to check.
+   * @return True if the puzzle has a unique solution.
+   * @throws IllegalStateException If the check times out.
    */
-  private void sixLiteralClause(StringBuilder clause, int firstCell, int secondCell, int firstNum,
-      int secondNum, int thirdNum) {
-    int firstLiteral, secondLiteral, thirdLiteral, fourthLiteral, fifthLiteral, sixthLiteral;
-    firstCell *= 10;
-    secondCell *= 10;
-    firstLiteral = -1 * (firstCell + firstNum);
-    secondLiteral = secondCell + secondNum;
-    thirdLiteral = secondCell + thirdNum;
-    fourthLiteral = -1 * (secondCell + firstNum);
-    fifthLiteral = firstCell + secondNum;
-    sixthLiteral = firstCell + thirdNum;
-    clause.append(firstLiteral + " " + secondLiteral + " " + thirdLiteral + " " + 0);
-    clause.append(System.lineSeparator());
-    clauses++;
-    clause.append(fourthLiteral + " " + fifthLiteral + " " + sixthLiteral + " " + 0);
-    clause.append(System.lineSeparator());
-    clauses++;
+  public boolean isUnique(KropkiPuzzle puzzle) {
+    return count(solutions(puzzle, false), 2) == 1;
   }
 
   /**
-   * Creates every orthogonal cell pair.
+   * Counts the solutions of an iterator, stopping once the limit is reached.
+   * @param solutions The iterator over the solutions.
+   * @param limit The most solutions to count.
+   * @return The number of solutions, up to the limit.
+   * @throws IllegalArgumentException If the limit is less than 1.
+   * @throws IllegalStateException If the count times out.
    */
-  private void generateCellPairs() {
-    for (int i = 1; i <= 9; i++) {
-      for (int j = 1; j <= 9; j++) {
-        int currentCell = i * 10 + j;
-        if (j != 9) {
-          int rightCell = i * 10 + (j + 1);
-          CellPair leftRightPair = new CellPair(currentCell, rightCell);
-          pairs.add(leftRightPair);
-        }
-        if (i != 9) {
-          int downCell = (i + 1) * 10 + j;
-          CellPair upDownPair = new CellPair(currentCell, downCell);
-          pairs.add(upDownPair);
-        }
-      }
+  private static int count(SolutionIterator solutions, int limit) {
+    if (limit < 1) {
+      throw new IllegalArgumentException("Invalid Limit");
+    }
+    int count = 0;
+    while (count < limit && solutions.hasNext()) {
+      solutions.next();
+      count++;
     }
+    return count;
   }
 
   /**
-   * Takes the SAT solver's decoded literals and parses them into the sudoku puzzle.
+   * Parses the SAT solver's model into the sudoku puzzle.
+   * @param encoder The shape of the board.
+   * @param candidates The candidates the clauses were pruned with, or null.
    * @param model The array of literals used to construct the puzzle.
+   * @return The solved sudoku puzzle.
    */
-  private void parseSolution(int[] model) {
-    ArrayList<Integer> solvedNums = new ArrayList<>();
-    for (int literal : model) {
-      if (literal > 0) {
-        solvedNums.add(literal);
-      }
+  static int[][] decode(SudokuEncoder encoder, CandidatePropagator candidates,
+      int[] model) {
+    return candidates != null ? candidates.decode(model) : encoder.decode(model);
+  }
+
+  /**
+   * Writes the DIMACS representation of a puzzle to a file, after pruning unless the propagation
+   * refutes the puzzle outright. This is only meant for debugging, the solver itself is fed the
+   * clauses directly.
+   * @param puzzle The puzzle to export.
+   * @param filePath The filepath to write the CNF file to.
+   * @throws IllegalStateException If the file can't be written to.
+   */
+  public void exportCNF(KropkiPuzzle puzzle, String filePath) {
+    DimacsStringSolver dimacs = new DimacsStringSolver();
+    CandidatePropagator candidates = propagate(puzzle);
+    if (candidates != null && candidates.isContradiction()) {
+      candidates = null;
+    }
+    try {
+      encode(dimacs, puzzle, candidates, breakSymmetry);
+      new WriteFile(filePath).writeToFile(dimacs.toString());
+    } catch (ContradictionException e) {
+      throw new IllegalStateException("Unable to export CNF");
+    } catch (IOException e) {
+      throw new IllegalStateException("Unable to write to file");
     }
-    for (int num : solvedNums) {
-      int value = num % 10;
-      num /= 10;
-      int column = (num % 10) - 1;
-      num /= 10;
-      int row = (num % 10) - 1;
-      sudoku[row][column] = value;
+  }
+
+  /**
+   * Propagates the candidates of a puzzle, if this model does so and the board fits.
+   * @param puzzle The puzzle to propagate.
+   * @return The remaining candidates, or null if there was no propagation.
+   */
+  CandidatePropagator propagate(KropkiPuzzle puzzle) {
+    if (!propagate || !CandidatePropagator.supports(puzzle.getEncoder())) {
+      return null;
     }
+    return CandidatePropagator.propagate(puzzle);
   }
 
   /**
-   * Outputs the parsed solution as a string.
+   * Adds every clause of a puzzle to the given solver.
+   * @param solver The solver to add the clauses to.
+   * @param puzzle The puzzle to encode.
+   * @param candidates The candidates to prune the clauses with, or null to encode them all.
+   * @param breakSymmetry Whether to add the symmetry breaking clauses of the puzzle.
+   * @return The solver any further clauses have to be added to, which prunes them too.
+   * @throws ContradictionException If the solver finds the clauses trivially unsatisfiable.
    */
-  private void visualizeSolution() {
-    StringBuilder output = new StringBuilder();
-    for (int i = 0; i < 9; i++) {
-      for (int j = 0; j < 9; j++) {
-        if(j == 3 || j == 6) {
-          output.append(" ");
-        }
-        int value = sudoku[i][j];
-        output.append(value);
-        if (j != 8) {
-          output.append(" ");
-        }
-      }
-      output.append(System.lineSeparator());
-      if (i == 2 || i == 5) {
-        output.append(System.lineSeparator());
-      }
+  ISolver encode(ISolver solver, KropkiPuzzle puzzle, CandidatePropagator candidates,
+      boolean breakSymmetry) throws ContradictionException {
+    SudokuEncoder encoder = puzzle.getEncoder();
+    BaseClauseSet base = BaseClauseSet.forBoard(encoder, encoding);
+    SymmetryBreaker breaker = breakSymmetry ? SymmetryBreaker.forPuzzle(puzzle) : null;
+    int auxiliary = breaker != null ? breaker.auxiliaryVariables() : 0;
+    int symmetryVariables = auxiliary;
+    for (ConstraintPlugin constraint : puzzle.getConstraints()) {
+      auxiliary += constraint.auxiliaryVariables(encoder);
     }
-    System.out.print(output.toString());
+    solver.newVar(base.numberOfVariables() + auxiliary);
+    if (candidates != null) {
+      solver = new PrunedSolver(solver, encoder, candidates);
+    }
+    IVecInt clause = new VecInt(encoder.getSize());
+    base.addTo(solver, clause);
+    addGivens(solver, clause, puzzle);
+    addKropkiConstraints(solver, clause, puzzle);
+    if (breaker != null) {
+      breaker.addTo(solver, clause, base.numberOfVariables() + 1);
+    }
+    int next = base.numberOfVariables() + symmetryVariables + 1;
+    for (ConstraintPlugin constraint : puzzle.getConstraints()) {
+      constraint.addTo(solver, clause, encoder, next);
+      next += constraint.auxiliaryVariables(encoder);
+    }
+    return solver;
   }
 
   /**
-   * Used in testing to test the sudoku solutions.
-   * @return The solved sudoku puzzle.
+   * Adds a unit clause for every given digit. Once candidates are propagated, the givens are
+   * already fixed, so the pruned solver drops these along with every clause they satisfy.
+   * @param solver The solver to add the clauses to.
+   * @param clause The buffer used to build each clause.
+   * @param puzzle The puzzle holding the givens.
+   * @throws ContradictionException If the solver finds the clauses trivially unsatisfiable.
    */
-  public int[][] checkSolution() {
-    solveSudoku();
-    return sudoku;
+  private void addGivens(ISolver solver, IVecInt clause, KropkiPuzzle puzzle)
+      throws ContradictionException {
+    SudokuEncoder encoder = puzzle.getEncoder();
+    for (Map.Entry<Integer, Integer> given : puzzle.getGivens().entrySet()) {
+      int cell = given.getKey();
+      clause.clear();
+      clause.push(encoder.var(encoder.rowOfCell(cell), encoder.columnOfCell(cell),
+          given.getValue()));
+      solver.addClause(clause);
+    }
   }
 
+  /**
+   * Adds all constraints for all cell pairs. Pairs without a dot are left unconstrained if the
+   * puzzle doesn't give all of its dots.
+   * @param solver The solver to add the clauses to.
+   * @param clause The buffer used to build each clause.
+   * @param puzzle The puzzle holding the dots.
+   * @throws ContradictionException If the solver finds the clauses trivially unsatisfiable.
+   */
+  void addKropkiConstraints(ISolver solver, IVecInt clause, KropkiPuzzle puzzle)
+      throws ContradictionException {
+    SudokuEncoder encoder = puzzle.getEncoder();
+    int none = KropkiClauses.NO_SELECTOR;
+    List<CellPair> pairs = encoder.getCellPairs();
+    for (int i = 0; i < pairs.size(); i++) {
+      CellPair pair = pairs.get(i);
+      byte dot = puzzle.dotAt(i);
+      if (dot == KropkiPuzzle.WHITE_DOT) {
+        KropkiClauses.addWhiteDotConstraint(solver, clause, encoder, pair, none);
+      } else if (dot == KropkiPuzzle.BLACK_DOT) {
+        KropkiClauses.addBlackDotConstraint(solver, clause, encoder, pair, none);
+      } else if (puzzle.isAllDotsGiven()) {
+        KropkiClauses.addNoDotConstraint(solver, clause, encoder, pair, none);
+      }
+    }
+  }
 }
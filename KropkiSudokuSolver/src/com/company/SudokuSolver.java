@@ -1,52 +1,255 @@
 package com.company;
 
-import java.util.ArrayList;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Map;
 import java.util.Scanner;
 
 /**
- * Solves Kropki Sudoku by taking in a filepath and the constraints for white and black dots. These
- * constraints are parsed and passed to the model which solves the puzzle.
+ * Solves Kropki Sudoku by taking in an optional CNF export filepath, the constraints for white
+ * and black dots, and any given digits like cell=digit. These constraints are parsed and passed
+ * to the model which solves the puzzle.
+ * Run with "--batch file [--threads n]" to instead solve every puzzle in a file, one per line, on
+ * a pool of worker threads. Boards other than 9x9 are chosen with "--size n", optionally with
+ * "--box rxc" for the shape of the boxes, and their cells are given like rrcc. With
+ * "--solutions file", every solution of the puzzle is written to the file by a SolutionSink
+ * instead of the first one being printed. With "--explain ms", an unsatisfiable puzzle is followed
+ * by the dots and givens that conflict, found within that many milliseconds. With "--pack file",
+ * the puzzles of a batch file are written to a PuzzleArchive instead of being solved, and with
+ * "--archive file --solutions file", every puzzle of an archive is solved on the pool of worker
+ * threads and the solutions are written to another archive. With "--stream", nothing is asked,
+ * and instead puzzles are read from standard input, one per line as in a batch file, and solved by
+ * a StreamingSolver, with one result line per puzzle written to standard output.
  */
 public class SudokuSolver {
 
     public static void main(String[] args) {
-        Scanner scan = new Scanner(System.in);
-        System.out.println("Please input filepath:");
-        String filePath = scan.nextLine();
-        System.out.println("Please input White Dot constraints:");
-        String whiteStringConstraints = scan.nextLine();
-        String[] whiteDotArr = whiteStringConstraints.split("\\s+");
-        ArrayList<Integer> whiteDotConstraints = new ArrayList<>();
-        for (String constraint : whiteDotArr) {
-            try {
-                int current = Integer.valueOf(constraint);
-                if (current / 100 != 0 || current / 10 == 0 || current < 0) {
-                    throw new IllegalArgumentException("Invalid Constraints");
-                }
-                whiteDotConstraints.add(current);
+        String batchFile = null;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int size = 9;
+        String box = null;
+        String solutionsFile = null;
+        long explainMillis = 0;
+        String packFile = null;
+        String archiveFile = null;
+        boolean stream = false;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--stream")) {
+                stream = true;
+                continue;
             }
-            catch (NumberFormatException e) {
-                throw new IllegalArgumentException("Invalid Constraints");
+            if (i + 1 >= args.length) {
+                throw new IllegalArgumentException("Invalid arguments");
+            }
+            switch (args[i]) {
+                case "--batch":
+                    batchFile = args[++i];
+                    break;
+                case "--threads":
+                    threads = parseArgument(args[++i]);
+                    break;
+                case "--size":
+                    size = parseArgument(args[++i]);
+                    break;
+                case "--box":
+                    box = args[++i];
+                    break;
+                case "--solutions":
+                    solutionsFile = args[++i];
+                    break;
+                case "--explain":
+                    explainMillis = parseArgument(args[++i]);
+                    break;
+                case "--pack":
+                    packFile = args[++i];
+                    break;
+                case "--archive":
+                    archiveFile = args[++i];
+                    break;
+                default:
+                    throw new IllegalArgumentException("Invalid arguments");
+            }
+        }
+        SudokuEncoder encoder = SudokuEncoder.forSize(size);
+        if (box != null) {
+            String[] shape = box.split("x");
+            if (shape.length != 2) {
+                throw new IllegalArgumentException("Invalid box shape");
             }
+            encoder = new SudokuEncoder(size, parseArgument(shape[0]), parseArgument(shape[1]));
+        }
+        if (stream) {
+            runStream(threads, encoder);
+            return;
+        }
+        if (archiveFile != null) {
+            if (solutionsFile == null) {
+                throw new IllegalArgumentException("Invalid arguments");
+            }
+            runArchive(archiveFile, solutionsFile, threads);
+            return;
+        }
+        if (batchFile != null && packFile != null) {
+            packBatch(batchFile, packFile, encoder);
+            return;
+        }
+        if (batchFile != null) {
+            runBatch(batchFile, threads, encoder);
+            return;
         }
+        Scanner scan = new Scanner(System.in);
+        System.out.println("Please input filepath to export the CNF file to (blank to skip):");
+        String filePath = scan.nextLine().trim();
+        if (filePath.isEmpty()) {
+            filePath = null;
+        }
+        System.out.println("Please input White Dot constraints:");
+        List<Integer> whiteDotConstraints = KropkiPuzzle.parseDotCells(scan.nextLine(), encoder);
         System.out.println("Please input Black Dot constraints:");
-        String blackStringConstraints = scan.nextLine();
-        String[] blackDotArr = blackStringConstraints.split("\\s+");
-        ArrayList<Integer> blackDotConstraints = new ArrayList<>();
-        for (String constraint : blackDotArr) {
-            try {
-                int current = Integer.valueOf(constraint);
-                if (current / 100 != 0 || current / 10 == 0 || current < 0) {
-                    throw new IllegalArgumentException("Invalid Constraints");
-                }
-                blackDotConstraints.add(current);
+        List<Integer> blackDotConstraints = KropkiPuzzle.parseDotCells(scan.nextLine(), encoder);
+        System.out.println("Please input given digits (blank for none):");
+        Map<Integer, Integer> givens = KropkiPuzzle.parseGivens(scan.nextLine(), encoder);
+        KropkiPuzzle puzzle = new KropkiPuzzle(encoder, whiteDotConstraints, blackDotConstraints)
+                .withGivens(givens);
+        SudokuModel model = new SudokuModel();
+        if (filePath != null) {
+            model.exportCNF(puzzle, filePath);
+        }
+        if (solutionsFile != null) {
+            writeSolutions(model, puzzle, solutionsFile);
+            return;
+        }
+        SolveResult result = model.solve(puzzle);
+        System.out.print(result);
+        if (explainMillis > 0 && result.getStatus() == SolveResult.Status.Unsatisfiable) {
+            System.out.print(new ConflictExplainer(explainMillis).explain(puzzle));
+        }
+    }
+
+    /**
+     * Writes every solution of a puzzle to a file as they are found.
+     * @param model The model to solve with.
+     * @param puzzle The puzzle to solve.
+     * @param solutionsFile The file to write the solutions to.
+     * @throws IllegalStateException If the file can't be written to.
+     */
+    private static void writeSolutions(SudokuModel model, KropkiPuzzle puzzle,
+            String solutionsFile) {
+        try (SolutionSink sink = new SolutionSink(new FileOutputStream(solutionsFile),
+                puzzle.getEncoder())) {
+            SolutionIterator solutions = model.solutions(puzzle);
+            while (solutions.hasNext()) {
+                sink.write(solutions.next());
             }
-            catch (NumberFormatException e) {
-                throw new IllegalArgumentException("Invalid Constraints");
+            System.out.println("Wrote " + sink.getCount() + " solutions to " + solutionsFile);
+        }
+        catch (IOException e) {
+            throw new IllegalStateException("Unable to write to file");
+        }
+    }
+
+    /**
+     * Solves every puzzle in a file on a pool of worker threads.
+     * @param batchFile The file holding the puzzles, one per line.
+     * @param threads The number of worker threads.
+     * @param encoder The shape of the board.
+     * @throws IllegalStateException If the file can't be read.
+     */
+    private static void runBatch(String batchFile, int threads, SudokuEncoder encoder) {
+        BatchSolver batch = new BatchSolver(threads, System.out, encoder);
+        try (BufferedReader in = new BufferedReader(new FileReader(batchFile))) {
+            batch.solveAll(in);
+        }
+        catch (IOException e) {
+            throw new IllegalStateException("Unable to read batch file");
+        }
+    }
+
+    /**
+     * Solves every puzzle read from standard input, writing one result line per puzzle to
+     * standard output.
+     * @param threads The number of worker threads.
+     * @param encoder The shape of the board.
+     * @throws IllegalStateException If standard input can't be read.
+     */
+    private static void runStream(int threads, SudokuEncoder encoder) {
+        PrintStream out = new PrintStream(new BufferedOutputStream(
+                new FileOutputStream(FileDescriptor.out)), false);
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(System.in))) {
+            new StreamingSolver(threads, out, encoder).solveAll(in);
+        }
+        catch (IOException e) {
+            throw new IllegalStateException("Unable to read puzzles");
+        }
+        finally {
+            out.flush();
+        }
+    }
+
+    /**
+     * Writes every puzzle in a batch file to an archive.
+     * @param batchFile The file holding the puzzles, one per line.
+     * @param packFile The file to write the archive to.
+     * @param encoder The shape of the board.
+     * @throws IllegalStateException If either file can't be read or written.
+     */
+    private static void packBatch(String batchFile, String packFile, SudokuEncoder encoder) {
+        try (BufferedReader in = new BufferedReader(new FileReader(batchFile));
+                PuzzleArchive archive = PuzzleArchive.create(Paths.get(packFile), encoder,
+                        PuzzleArchive.Content.Puzzles)) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (!line.trim().isEmpty()) {
+                    archive.add(KropkiPuzzle.parse(line, encoder));
+                }
             }
+            System.out.println("Wrote " + archive.getCount() + " puzzles to " + packFile);
+        }
+        catch (IOException e) {
+            throw new IllegalStateException("Unable to pack batch file");
+        }
+    }
+
+    /**
+     * Solves every puzzle in an archive on a pool of worker threads.
+     * @param archiveFile The file holding the archive of puzzles.
+     * @param solutionsFile The file to write the archive of solutions to.
+     * @param threads The number of worker threads.
+     * @throws IllegalStateException If either archive can't be read or written.
+     */
+    private static void runArchive(String archiveFile, String solutionsFile, int threads) {
+        try (PuzzleArchive in = PuzzleArchive.open(Paths.get(archiveFile));
+                PuzzleArchive out = PuzzleArchive.create(Paths.get(solutionsFile),
+                        in.getEncoder(), PuzzleArchive.Content.Solutions)) {
+            new BatchSolver(threads, System.out, in.getEncoder()).solveAll(in, out);
+            System.out.println("Wrote " + out.getCount() + " solutions to " + solutionsFile);
+        }
+        catch (IOException e) {
+            throw new IllegalStateException("Unable to solve archive");
+        }
+    }
+
+    /**
+     * Parses a numeric command line argument.
+     * @param argument The argument.
+     * @return The number.
+     * @throws IllegalArgumentException If the argument isn't a number.
+     */
+    private static int parseArgument(String argument) {
+        try {
+            return Integer.valueOf(argument);
+        }
+        catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid arguments");
         }
-        SudokuModel model = new SudokuModel(filePath, whiteDotConstraints, blackDotConstraints);
-        model.solveSudoku();
     }
 
 }
@@ -1,39 +1,76 @@
 package com.company;
 import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
 import org.junit.Test;
+import org.sat4j.core.VecInt;
+import org.sat4j.minisat.SolverFactory;
+import org.sat4j.specs.ContradictionException;
+import org.sat4j.specs.IConstr;
+import org.sat4j.specs.ISolver;
+import org.sat4j.specs.IVecInt;
+import org.sat4j.specs.TimeoutException;
+import org.sat4j.tools.SolverDecorator;
 
 public class SudokuTests {
 
-  String filePath = "/Users/jackhino/Desktop/KropkiSudokuSolver/src/com/company/CNFExample";
+  ArrayList<Integer> firstWhiteDots = new ArrayList<>(Arrays.asList(16,17,21,22,25,26,28,29,31,
+      41,32,42,33,34,36,46,37,47,37,38,44,54,45,55,53,63,56,66,57,67,58,59,63,64,64,65,68,69,71,81,
+      73,83,73,74,74,84,76,86,78,88,86,96,87,97,88,98,91,92));
+  ArrayList<Integer> firstBlackDots = new ArrayList<>(Arrays.asList(16,26,17,27,23,33,36,37,42,
+      43,43,53,48,58,58,68,64,74,67,77,68,78,81,82,83,93,83,84,85,95));
+  int[][] firstTest = {{4,6,9,1,8,3,2,5,7},{7,8,2,9,5,6,1,3,4},{5,3,1,2,7,4,8,9,6},
+      {6,2,4,7,3,5,9,1,8},{9,5,8,6,4,1,7,2,3},{3,1,7,8,9,2,6,4,5},{1,7,5,4,6,9,3,8,2},
+      {2,4,6,3,1,8,5,7,9},{8,9,3,5,2,7,4,6,1}};
+
+  ArrayList<Integer> secondWhiteDots = new ArrayList<>(Arrays.asList(11,12,13,14,19,29,22,32,28,
+      38,34,35,38,48,39,49,45,55,51,61,51,52,53,63,53,54,58,68,61,71,61,62,62,72,66,76,69,79,71,72,
+      72,73,76,86,79,89,81,91,93,94));
+  ArrayList<Integer> secondBlackDots = new ArrayList<>(Arrays.asList(12,22,12,13,16,26,18,28,23,
+      33,25,26,36,46,38,39,45,46,54,55,57,67,63,73,67,77,72,82,84,94,84,85,87,97,94,95,96,97));
+  int[][] secondTest = {{5,4,2,3,7,1,9,6,8},{1,8,6,9,4,2,5,3,7},{9,7,3,5,6,8,1,4,2},
+      {6,9,1,8,2,4,7,5,3},{4,5,7,6,3,9,2,8,1},{3,2,8,1,5,7,4,9,6},{2,3,4,7,9,6,8,1,5},
+      {8,6,9,2,1,5,3,7,4},{7,1,5,4,8,3,6,2,9}};
+
+  ArrayList<Integer> unsatisfiableBlackDots = new ArrayList<>(Arrays.asList(12, 22, 21, 22, 22,
+      32, 22, 23));
+  int[][] unsatisfiableTest = {{0,0,0,0,0,0,0,0,0},{0,0,0,0,0,0,0,0,0},{0,0,0,0,0,0,0,0,0},
+      {0,0,0,0,0,0,0,0,0},{0,0,0,0,0,0,0,0,0},{0,0,0,0,0,0,0,0,0},{0,0,0,0,0,0,0,0,0},
+      {0,0,0,0,0,0,0,0,0},{0,0,0,0,0,0,0,0,0}};
 
   /**
    * Tests that valid Kropki sudoku puzzles are properly solved.
    */
   @Test
   public void testValidPuzzle() {
-    SudokuModel firstValid = new SudokuModel(filePath,
-        new ArrayList<>(Arrays.asList(16,17,21,22,25,26,28,29,31,41,32,42,33,34,36,46,37,47,37,38,
-            44,54,45,55,53,63,56,66,57,67,58,59,63,64,64,65,68,69,71,81,73,83,73,74,74,84,76,86,78,
-            88,86,96,87,97,88,98,91,92)), new ArrayList<>(Arrays.asList(16,26,17,27,23,33,36,37,42,
-        43,43,53,48,58,58,68,64,74,67,77,68,78,81,82,83,93,83,84,85,95)));
-    SudokuModel secondValid = new SudokuModel(filePath,
-        new ArrayList<>(Arrays.asList(11,12,13,14,19,29,22,32,28,38,34,35,38,48,39,49,45,55,51,61,51
-            ,52,53,63,53,54,58,68,61,71,61,62,62,72,66,76,69,79,71,72,72,73,76,86,79,89,81,91,93,94)
-        ), new ArrayList<>(Arrays.asList(12,22,12,13,16,26,18,28,23,33,25,26,36,46,38,39,45,46,54,55
-        ,57,67,63,73,67,77,72,82,84,94,84,85,87,97,94,95,96,97)));
-
-    int[][] firstTest = {{4,6,9,1,8,3,2,5,7},{7,8,2,9,5,6,1,3,4},{5,3,1,2,7,4,8,9,6},
-        {6,2,4,7,3,5,9,1,8},{9,5,8,6,4,1,7,2,3},{3,1,7,8,9,2,6,4,5},{1,7,5,4,6,9,3,8,2},
-        {2,4,6,3,1,8,5,7,9},{8,9,3,5,2,7,4,6,1}};
-    int[][] secondTest = {{5,4,2,3,7,1,9,6,8},{1,8,6,9,4,2,5,3,7},{9,7,3,5,6,8,1,4,2},
-        {6,9,1,8,2,4,7,5,3},{4,5,7,6,3,9,2,8,1},{3,2,8,1,5,7,4,9,6},{2,3,4,7,9,6,8,1,5},
-        {8,6,9,2,1,5,3,7,4},{7,1,5,4,8,3,6,2,9}};
-
-    int[][] firstSolution = firstValid.checkSolution();
-    int[][] secondSolution = secondValid.checkSolution();
+    SudokuModel model = new SudokuModel();
+    KropkiPuzzle firstValid = new KropkiPuzzle(firstWhiteDots, firstBlackDots);
+    KropkiPuzzle secondValid = new KropkiPuzzle(secondWhiteDots, secondBlackDots);
+
+    int[][] firstSolution = model.solve(firstValid).getSudoku();
+    int[][] secondSolution = model.solve(secondValid).getSudoku();
 
     assertArrayEquals(firstTest, firstSolution);
     assertArrayEquals(secondTest, secondSolution);
@@ -44,27 +81,1061 @@ public class SudokuTests {
    */
   @Test
   public void testUnsatisfiablePuzzle() {
-    SudokuModel unsatisfiable = new SudokuModel(filePath, new ArrayList<>(),
-        new ArrayList<>(Arrays.asList(12, 22, 21, 22, 22, 32, 22, 23)));
-    int[][] unsatisfiableTest = {{0,0,0,0,0,0,0,0,0},{0,0,0,0,0,0,0,0,0},{0,0,0,0,0,0,0,0,0},
-        {0,0,0,0,0,0,0,0,0},{0,0,0,0,0,0,0,0,0},{0,0,0,0,0,0,0,0,0},{0,0,0,0,0,0,0,0,0},
-        {0,0,0,0,0,0,0,0,0},{0,0,0,0,0,0,0,0,0}};
-    int[][] unsatisfiableSolution = unsatisfiable.checkSolution();
-    assertArrayEquals(unsatisfiableTest, unsatisfiableSolution);
+    KropkiPuzzle unsatisfiable = new KropkiPuzzle(new ArrayList<>(), unsatisfiableBlackDots);
+    SolveResult result = new SudokuModel().solve(unsatisfiable);
+    assertEquals(SolveResult.Status.Unsatisfiable, result.getStatus());
+    assertArrayEquals(unsatisfiableTest, result.getSudoku());
+  }
+
+  /**
+   * Tests that one model can be used by many threads at once.
+   */
+  @Test
+  public void testConcurrentSolves() throws Exception {
+    SudokuModel model = new SudokuModel();
+    KropkiPuzzle first = new KropkiPuzzle(firstWhiteDots, firstBlackDots);
+    KropkiPuzzle second = new KropkiPuzzle(secondWhiteDots, secondBlackDots);
+    ExecutorService pool = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<SolveResult>> results = new ArrayList<>();
+      for (int i = 0; i < 8; i++) {
+        KropkiPuzzle puzzle = i % 2 == 0 ? first : second;
+        results.add(pool.submit(() -> model.solve(puzzle)));
+      }
+      for (int i = 0; i < 8; i++) {
+        assertArrayEquals(i % 2 == 0 ? firstTest : secondTest, results.get(i).get().getSudoku());
+      }
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  /**
+   * Tests that one session solves several puzzles in a row, including after an unsatisfiable one.
+   */
+  @Test
+  public void testSolverSession() {
+    KropkiSolverSession session = new KropkiSolverSession();
+    KropkiPuzzle first = new KropkiPuzzle(firstWhiteDots, firstBlackDots);
+    KropkiPuzzle unsatisfiable = new KropkiPuzzle(new ArrayList<>(), unsatisfiableBlackDots);
+    KropkiPuzzle second = new KropkiPuzzle(secondWhiteDots, secondBlackDots);
+    assertArrayEquals(firstTest, session.solve(first).getSudoku());
+    assertArrayEquals(unsatisfiableTest, session.solve(unsatisfiable).getSudoku());
+    assertArrayEquals(secondTest, session.solve(second).getSudoku());
+    assertArrayEquals(firstTest, session.solve(first).getSudoku());
+  }
+
+  /**
+   * Tests that the solutions a session rules out don't grow its solver for as long as it lives.
+   */
+  @Test
+  public void testSolverSessionExclusions() {
+    KropkiSolverSession session = new KropkiSolverSession();
+    KropkiPuzzle first = new KropkiPuzzle(firstWhiteDots, firstBlackDots);
+    int variables = session.variableCount();
+    for (int i = 0; i < KropkiSolverSession.EXCLUSIONS_PER_RELOAD * 3; i++) {
+      assertTrue(session.isUnique(first));
+      assertTrue(session.variableCount() <= variables + KropkiSolverSession.EXCLUSIONS_PER_RELOAD);
+    }
+    assertArrayEquals(firstTest, session.solve(first).getSudoku());
+  }
+
+  /**
+   * Tests that a batch of puzzles is solved on several threads with the results kept in order.
+   */
+  @Test
+  public void testBatchSolver() throws IOException {
+    String batch = join(firstWhiteDots) + " | " + join(firstBlackDots) + "\n"
+        + " | " + join(unsatisfiableBlackDots) + "\n"
+        + join(secondWhiteDots) + " | " + join(secondBlackDots) + "\n";
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    new BatchSolver(2, new PrintStream(bytes)).solveAll(
+        new BufferedReader(new StringReader(batch)));
+    String expected = "Puzzle 1: Satisfiable!" + System.lineSeparator()
+        + SudokuEncoder.getStandard().format(firstTest)
+        + "Puzzle 2: Unsatisfiable!" + System.lineSeparator()
+        + "Puzzle 3: Satisfiable!" + System.lineSeparator()
+        + SudokuEncoder.getStandard().format(secondTest);
+    assertEquals(expected, bytes.toString());
+  }
+
+  /**
+   * Tests that a stream of puzzles gets one result line per puzzle, in order, including for lines
+   * that can't be parsed, whatever the number of workers.
+   */
+  @Test
+  public void testStreamingSolver() throws IOException {
+    StringBuilder stream = new StringBuilder();
+    for (int i = 0; i < 10; i++) {
+      stream.append(join(firstWhiteDots)).append(" | ").append(join(firstBlackDots)).append("\n")
+          .append(" | ").append(join(unsatisfiableBlackDots)).append("\n\n")
+          .append("11 10 | \n");
+    }
+    StringBuilder grid = new StringBuilder();
+    for (int[] row : firstTest) {
+      for (int value : row) {
+        grid.append(value);
+      }
+    }
+    for (int threads : new int[] {1, 3}) {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      new StreamingSolver(threads, new PrintStream(bytes)).solveAll(
+          new BufferedReader(new StringReader(stream.toString())));
+      String[] lines = bytes.toString().split(System.lineSeparator());
+      assertEquals(30, lines.length);
+      for (int i = 0; i < 10; i++) {
+        assertTrue(lines[3 * i].matches((3 * i + 1) + " Satisfiable " + grid + " \\d+"));
+        assertTrue(lines[3 * i + 1].matches((3 * i + 2) + " Unsatisfiable - \\d+"));
+        assertEquals((3 * i + 3) + " Error Invalid Constraints", lines[3 * i + 2]);
+      }
+    }
+  }
+
+  /**
+   * Joins a list of cells into a space separated line.
+   * @param cells The list of cells.
+   * @return The line of cells.
+   */
+  private static String join(ArrayList<Integer> cells) {
+    return cells.stream().map(String::valueOf).collect(Collectors.joining(" "));
   }
 
   /**
-   * Tests that a Kropki sudoku with no white or black dots is satisfiable, and will always
-   * have only one solution.
+   * Tests that a Kropki sudoku with no white or black dots is satisfiable, and that the solver
+   * always finds the same one of its many solutions.
    */
   @Test
   public void testEmptyPuzzle() {
-    SudokuModel empty = new SudokuModel(filePath, new ArrayList<>(), new ArrayList<>());
-    int[][] emptyTest = {{7,1,4,9,5,3,8,2,6},{2,8,6,4,7,1,3,5,9},{5,3,9,6,2,8,1,7,4},
-        {9,5,3,8,6,2,7,4,1},{6,2,8,1,4,7,5,9,3},{4,7,1,3,9,5,2,6,8},{1,4,7,5,3,9,6,8,2},
-        {3,9,5,2,8,6,4,1,7},{8,6,2,7,1,4,9,3,5}};
-    int[][] testSolution = empty.checkSolution();
+    KropkiPuzzle empty = new KropkiPuzzle(new ArrayList<>(), new ArrayList<>());
+    int[][] emptyTest = {{4,7,1,5,9,3,8,2,6},{9,3,5,2,6,8,1,7,4},{6,8,2,7,4,1,5,3,9},
+        {2,6,8,1,7,4,9,5,3},{5,9,3,8,2,6,4,1,7},{1,4,7,3,5,9,6,8,2},{7,1,4,9,3,5,2,6,8},
+        {3,5,9,6,8,2,7,4,1},{8,2,6,4,1,7,3,9,5}};
+    int[][] testSolution = new SudokuModel().solve(empty).getSudoku();
     assertArrayEquals(emptyTest, testSolution);
+    assertFalse(new SudokuModel().isUnique(empty));
+  }
+
+  /**
+   * Tests that the optional CNF export writes a DIMACS file holding every clause of the puzzle.
+   */
+  @Test
+  public void testExportCNF() throws IOException {
+    File cnf = File.createTempFile("kropki", ".cnf");
+    cnf.deleteOnExit();
+    KropkiPuzzle empty = new KropkiPuzzle(new ArrayList<>(), new ArrayList<>());
+    new SudokuModel().exportCNF(empty, cnf.getPath());
+    List<String> lines = Files.readAllLines(cnf.toPath());
+    assertEquals("p cnf 729 12240", lines.get(0).trim());
+    assertEquals(12241, lines.size());
+  }
+
+  /**
+   * Tests that the shared base clauses are only built once and hold every clause that doesn't
+   * depend on the Kropki dots.
+   */
+  @Test
+  public void testBaseClauseSet() {
+    assertSame(BaseClauseSet.getInstance(), BaseClauseSet.getInstance());
+    assertEquals(9072, BaseClauseSet.getInstance().size());
+  }
+
+  /**
+   * Tests that the variables are numbered densely and decode back to their cell and value.
+   */
+  @Test
+  public void testSudokuEncoder() {
+    SudokuEncoder encoder = SudokuEncoder.getStandard();
+    assertEquals(729, encoder.numberOfVariables());
+    assertEquals(1, encoder.var(1, 1, 1));
+    assertEquals(729, encoder.var(9, 9, 9));
+    int var = encoder.cellVar(47, 5);
+    assertEquals(4, encoder.rowOf(var));
+    assertEquals(7, encoder.columnOf(var));
+    assertEquals(5, encoder.valueOf(var));
+  }
+
+  /**
+   * Tests that the dotless 4x4 board is unsatisfiable, since a 2 can't sit next to any value.
+   */
+  @Test
+  public void testEmptySmallPuzzle() {
+    SudokuEncoder encoder = SudokuEncoder.forSize(4);
+    KropkiPuzzle empty = new KropkiPuzzle(encoder, new ArrayList<>(), new ArrayList<>());
+    assertEquals(SolveResult.Status.Unsatisfiable, new SudokuModel().solve(empty).getStatus());
+  }
+
+  /**
+   * Tests that puzzles on 6x6 boards with 2x3 boxes and on 16x16 and 25x25 boards are solved,
+   * using every dot of a known solution.
+   */
+  @Test
+  public void testOtherBoardSizes() {
+    int[][] sixBySix = {{1,2,3,4,5,6},{4,5,6,1,2,3},{2,3,1,5,6,4},{5,6,4,2,3,1},{3,1,2,6,4,5},
+        {6,4,5,3,1,2}};
+    SudokuModel model = new SudokuModel();
+    assertSolvesDots(model, new SudokuEncoder(6, 2, 3), sixBySix);
+    assertSolvesDots(model, SudokuEncoder.forSize(16), patternSolution(4));
+    assertSolvesDots(model, SudokuEncoder.forSize(25), patternSolution(5));
+  }
+
+  /**
+   * Builds a valid solution of a board with square boxes by shifting each row.
+   * @param box The number of rows and columns of each box.
+   * @return The solution.
+   */
+  private static int[][] patternSolution(int box) {
+    int size = box * box;
+    int[][] sudoku = new int[size][size];
+    for (int i = 0; i < size; i++) {
+      for (int j = 0; j < size; j++) {
+        sudoku[i][j] = (i * box + i / box + j) % size + 1;
+      }
+    }
+    return sudoku;
+  }
+
+  /**
+   * Asserts that the puzzle holding every dot of a solution is solved, and that the solution found
+   * is a valid sudoku that keeps every dot.
+   * @param solver The solver to use.
+   * @param encoder The shape of the board.
+   * @param solution The solution the dots are taken from.
+   */
+  private static void assertSolvesDots(KropkiSolver solver, SudokuEncoder encoder,
+      int[][] solution) {
+    ArrayList<Integer> whiteDots = new ArrayList<>();
+    ArrayList<Integer> blackDots = new ArrayList<>();
+    for (CellPair pair : encoder.getCellPairs()) {
+      int first = valueAt(encoder, solution, pair.getFirstCell());
+      int second = valueAt(encoder, solution, pair.getSecondCell());
+      if (Math.abs(first - second) == 1) {
+        whiteDots.add(pair.getFirstCell());
+        whiteDots.add(pair.getSecondCell());
+      } else if (first == second * 2 || second == first * 2) {
+        blackDots.add(pair.getFirstCell());
+        blackDots.add(pair.getSecondCell());
+      }
+    }
+    KropkiPuzzle puzzle = new KropkiPuzzle(encoder, whiteDots, blackDots);
+    SolveResult result = solver.solve(puzzle);
+    assertEquals(SolveResult.Status.Satisfiable, result.getStatus());
+    int[][] sudoku = result.getSudoku();
+    int size = encoder.getSize();
+    for (int i = 0; i < size; i++) {
+      HashSet<Integer> row = new HashSet<>();
+      HashSet<Integer> column = new HashSet<>();
+      HashSet<Integer> box = new HashSet<>();
+      for (int j = 0; j < size; j++) {
+        row.add(sudoku[i][j]);
+        column.add(sudoku[j][i]);
+        int boxRows = encoder.getBoxRows();
+        int boxColumns = encoder.getBoxColumns();
+        int boxRow = i / boxRows * boxRows + j / boxColumns;
+        int boxColumn = i % boxRows * boxColumns + j % boxColumns;
+        box.add(sudoku[boxRow][boxColumn]);
+      }
+      assertEquals(size, row.size());
+      assertEquals(size, column.size());
+      assertEquals(size, box.size());
+    }
+    for (CellPair pair : encoder.getCellPairs()) {
+      int first = valueAt(encoder, sudoku, pair.getFirstCell());
+      int second = valueAt(encoder, sudoku, pair.getSecondCell());
+      boolean consecutive = Math.abs(first - second) == 1;
+      boolean ratio = first == second * 2 || second == first * 2;
+      if (puzzle.getWhiteDotPairs().contains(pair)) {
+        assertTrue(consecutive);
+      } else if (puzzle.getBlackDotPairs().contains(pair)) {
+        assertTrue(ratio);
+      } else {
+        assertTrue(!consecutive && !ratio);
+      }
+    }
+  }
+
+  /**
+   * Tests that every at most one encoding solves the same puzzles to the same boards.
+   */
+  @Test
+  public void testAtMostOneEncodings() {
+    KropkiPuzzle first = new KropkiPuzzle(firstWhiteDots, firstBlackDots);
+    KropkiPuzzle unsatisfiable = new KropkiPuzzle(new ArrayList<>(), unsatisfiableBlackDots);
+    for (AtMostOneEncoding encoding : AtMostOneEncoding.values()) {
+      SudokuModel model = new SudokuModel(encoding);
+      assertArrayEquals(firstTest, model.solve(first).getSudoku());
+      assertEquals(SolveResult.Status.Unsatisfiable, model.solve(unsatisfiable).getStatus());
+      KropkiSolverSession session = new KropkiSolverSession(SudokuEncoder.getStandard(), encoding);
+      assertArrayEquals(firstTest, session.solve(first).getSudoku());
+    }
+    assertTrue(BaseClauseSet.forBoard(SudokuEncoder.getStandard(), AtMostOneEncoding.Sequential)
+        .size() < BaseClauseSet.getInstance().size());
+  }
+
+  /**
+   * Tests that the native exactly one encoding solves a puzzle and reports its statistics.
+   */
+  @Test
+  public void testExactlyOneStatistics() {
+    assertEquals(324, BaseClauseSet.forBoard(SudokuEncoder.getStandard(),
+        AtMostOneEncoding.ExactlyOne).size());
+    KropkiPuzzle first = new KropkiPuzzle(firstWhiteDots, firstBlackDots);
+    SolveResult result = new SudokuModel(AtMostOneEncoding.ExactlyOne, false).solve(first);
+    assertArrayEquals(firstTest, result.getSudoku());
+    SolveStatistics statistics = result.getStatistics();
+    assertTrue(statistics.getNanos() > 0);
+    assertTrue(statistics.getPropagations() > 0);
+    assertTrue(new KropkiSolverSession().solve(first).getStatistics().getPropagations() > 0);
+    // A session reports the counts of each solve rather than running totals
+    KropkiSolverSession session = new KropkiSolverSession();
+    KropkiPuzzle empty = new KropkiPuzzle(new ArrayList<>(), new ArrayList<>());
+    SolveStatistics warmUp = session.solve(empty).getStatistics();
+    SolveStatistics unsatisfiable = session.solve(
+        new KropkiPuzzle(new ArrayList<>(), unsatisfiableBlackDots)).getStatistics();
+    assertTrue(unsatisfiable.getPropagations() < warmUp.getPropagations());
+    assertTrue(unsatisfiable.getDecisions() < warmUp.getDecisions());
+  }
+
+  /**
+   * Tests that relations compile to their smaller clause form and allow exactly their pairs of
+   * values, whichever form is used.
+   */
+  @Test
+  public void testValueRelations() {
+    assertEquals(18, KropkiClauses.WHITE_DOT.clauseCount(9));
+    assertEquals(18, KropkiClauses.BLACK_DOT.clauseCount(9));
+    assertEquals(22, KropkiClauses.NO_DOT.clauseCount(9));
+    assertTrue(KropkiClauses.NO_DOT.allows(3, 5));
+    assertFalse(KropkiClauses.NO_DOT.allows(3, 6));
+    // Relations are equal by the pairs they allow, not by their names
+    assertEquals(ValueRelation.difference(1), KropkiClauses.WHITE_DOT);
+    assertEquals(ValueRelation.difference(1).hashCode(), KropkiClauses.WHITE_DOT.hashCode());
+    assertEquals(ValueRelation.sum(5), ValueRelation.of("other", (a, b) -> a + b == 5));
+    assertFalse(ValueRelation.sum(5).equals(ValueRelation.of("sum 5", (a, b) -> a + b == 6)));
+    List<CellPair> pairs = Arrays.asList(new CellPair(11, 12));
+    KropkiPuzzle empty = new KropkiPuzzle(new ArrayList<>(), new ArrayList<>());
+    KropkiPuzzle five = empty.withConstraints(Arrays.asList(
+        new RelationConstraint(ValueRelation.of("cage", (a, b) -> a + b == 5), pairs)));
+    KropkiPuzzle six = empty.withConstraints(Arrays.asList(
+        new RelationConstraint(ValueRelation.of("cage", (a, b) -> a + b == 6), pairs)));
+    assertFalse(five.equals(six));
+    SudokuEncoder small = new SudokuEncoder(4, 2, 2);
+    CellPair pair = new CellPair(11, 12);
+    for (ValueRelation relation : new ValueRelation[] {ValueRelation.sum(5),
+        ValueRelation.difference(2), ValueRelation.sum(5).negate()}) {
+      for (int a = 1; a <= 4; a++) {
+        for (int b = 1; b <= 4; b++) {
+          if (a == b) {
+            continue;
+          }
+          ISolver solver = SolverFactory.newDefault();
+          try {
+            solver.newVar(small.numberOfVariables());
+            BaseClauseSet.forBoard(small).addTo(solver);
+            relation.addTo(solver, new VecInt(4), small, pair, KropkiClauses.NO_SELECTOR);
+            IVecInt assumptions = new VecInt(new int[] {small.var(1, 1, a), small.var(1, 2, b)});
+            assertEquals(relation.toString(), relation.allows(a, b),
+                solver.isSatisfiable(assumptions));
+          } catch (ContradictionException | TimeoutException e) {
+            throw new IllegalStateException(e);
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Tests that once warmed up, adding the base and Kropki clauses of a puzzle allocates nothing,
+   * and that pairs hash without colliding with their reverse.
+   */
+  @Test
+  public void testAllocationFreeEncoding() throws ContradictionException {
+    ISolver sink = new SolverDecorator<ISolver>(SolverFactory.newDefault()) {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      public IConstr addClause(IVecInt literals) {
+        return null;
+      }
+
+      @Override
+      public IConstr addAtMost(IVecInt literals, int degree) {
+        return null;
+      }
+    };
+    KropkiPuzzle first = new KropkiPuzzle(firstWhiteDots, firstBlackDots);
+    SudokuModel model = new SudokuModel(SudokuModel.Engine.Sat, AtMostOneEncoding.Pairwise, false);
+    BaseClauseSet base = BaseClauseSet.getInstance();
+    IVecInt clause = new VecInt(9);
+    long least = Long.MAX_VALUE;
+    for (int i = 0; i < 50; i++) {
+      long start = SolveStatistics.allocatedBytes();
+      base.addTo(sink, clause);
+      model.addKropkiConstraints(sink, clause, first);
+      least = Math.min(least, SolveStatistics.allocatedBytes() - start);
+    }
+    assertEquals(0, least);
+    assertEquals(new CellPair(12, 13).hashCode(), new CellPair(12, 13).hashCode());
+    assertFalse(new CellPair(12, 13).hashCode() == new CellPair(13, 12).hashCode());
+  }
+
+  /**
+   * Tests that candidate propagation keeps the solution, refutes an unsatisfiable puzzle, and
+   * solves the same puzzles with or without pruning.
+   */
+  @Test
+  public void testCandidatePropagation() {
+    KropkiPuzzle first = new KropkiPuzzle(firstWhiteDots, firstBlackDots);
+    CandidatePropagator candidates = CandidatePropagator.propagate(first);
+    assertFalse(candidates.isContradiction());
+    assertTrue(candidates.eliminatedCount() > 0);
+    SudokuEncoder encoder = SudokuEncoder.getStandard();
+    for (int i = 1; i <= 9; i++) {
+      for (int j = 1; j <= 9; j++) {
+        assertTrue(candidates.isCandidate(encoder.var(i, j, firstTest[i - 1][j - 1])));
+      }
+    }
+    KropkiPuzzle unsatisfiable = new KropkiPuzzle(new ArrayList<>(), unsatisfiableBlackDots);
+    assertEquals(SolveResult.Status.Unsatisfiable,
+        new SudokuModel(AtMostOneEncoding.Pairwise, true).solve(unsatisfiable).getStatus());
+    KropkiPuzzle blackRow = new KropkiPuzzle(new ArrayList<>(), Arrays.asList(11,12,12,13,13,14,
+        14,15,15,16,16,17,17,18,18,19));
+    assertTrue(CandidatePropagator.propagate(blackRow).isContradiction());
+    KropkiPuzzle second = new KropkiPuzzle(secondWhiteDots, secondBlackDots);
+    for (AtMostOneEncoding encoding : AtMostOneEncoding.values()) {
+      assertArrayEquals(firstTest, new SudokuModel(encoding, false).solve(first).getSudoku());
+      assertArrayEquals(secondTest, new SudokuModel(encoding, true).solve(second).getSudoku());
+    }
+  }
+
+  /**
+   * Tests that the backtracking engine solves the same puzzles as the SAT solver.
+   */
+  @Test
+  public void testBacktrackingSolver() {
+    KropkiSolver backtracking = new SudokuModel(SudokuModel.Engine.Backtracking);
+    KropkiPuzzle first = new KropkiPuzzle(firstWhiteDots, firstBlackDots);
+    KropkiPuzzle second = new KropkiPuzzle(secondWhiteDots, secondBlackDots);
+    KropkiPuzzle unsatisfiable = new KropkiPuzzle(new ArrayList<>(), unsatisfiableBlackDots);
+    KropkiPuzzle empty = new KropkiPuzzle(new ArrayList<>(), new ArrayList<>());
+    assertArrayEquals(firstTest, backtracking.solve(first).getSudoku());
+    assertArrayEquals(secondTest, backtracking.solve(second).getSudoku());
+    assertArrayEquals(unsatisfiableTest, backtracking.solve(unsatisfiable).getSudoku());
+    assertEquals(SolveResult.Status.Unsatisfiable, backtracking.solve(unsatisfiable).getStatus());
+    KropkiPuzzle dotless = KropkiPuzzle.fromSolution(SudokuEncoder.getStandard(),
+        backtracking.solve(empty).getSudoku());
+    assertTrue(dotless.getWhiteDotPairs().isEmpty() && dotless.getBlackDotPairs().isEmpty());
+    assertSolvesDots(backtracking, new SudokuEncoder(4, 2, 2), patternSolution(2));
+    assertSolvesDots(backtracking, SudokuEncoder.forSize(16), patternSolution(4));
+  }
+
+  /**
+   * Tests that a portfolio of solver configurations answers every puzzle and counts its winners.
+   */
+  @Test
+  public void testPortfolioSolver() {
+    SudokuModel model = new SudokuModel(AtMostOneEncoding.Pairwise, false);
+    try (PortfolioSolver portfolio = new PortfolioSolver(model, SolverConfiguration.values())) {
+      KropkiPuzzle first = new KropkiPuzzle(firstWhiteDots, firstBlackDots);
+      KropkiPuzzle unsatisfiable = new KropkiPuzzle(new ArrayList<>(), unsatisfiableBlackDots);
+      KropkiPuzzle second = new KropkiPuzzle(secondWhiteDots, secondBlackDots);
+      assertArrayEquals(firstTest, portfolio.solve(first).getSudoku());
+      assertEquals(SolveResult.Status.Unsatisfiable, portfolio.solve(unsatisfiable).getStatus());
+      assertArrayEquals(secondTest, portfolio.solve(second).getSudoku());
+      long wins = 0;
+      for (long count : portfolio.getWins().values()) {
+        wins += count;
+      }
+      assertEquals(3, wins);
+    }
+  }
+
+  /**
+   * Tests that a losing configuration still encoding when the race ends never starts its search,
+   * so the portfolio's threads are free again soon after every answer.
+   */
+  @Test
+  public void testPortfolioCancelsLosers() throws InterruptedException {
+    SudokuModel model = new SudokuModel(AtMostOneEncoding.Pairwise, false);
+    KropkiPuzzle first = new KropkiPuzzle(firstWhiteDots, firstBlackDots);
+    try (PortfolioSolver portfolio = new PortfolioSolver(model,
+        configuration -> configuration == SolverConfiguration.Light ? slowSolver()
+            : PortfolioSolver.newSolver(configuration),
+        SolverConfiguration.Default, SolverConfiguration.Light)) {
+      for (int i = 0; i < 3; i++) {
+        assertArrayEquals(firstTest, portfolio.solve(first).getSudoku());
+        long deadline = System.nanoTime() + 3_000_000_000L;
+        while (portfolio.activeCount() > 0 && System.nanoTime() < deadline) {
+          Thread.sleep(10);
+        }
+        assertEquals(0, portfolio.activeCount());
+      }
+      assertEquals(Long.valueOf(3), portfolio.getWins().get(SolverConfiguration.Default));
+    }
+  }
+
+  /**
+   * Creates a solver that is slow to encode and whose search, like SAT4J's, clears any expired
+   * timeout when it starts and then runs until its timeout is expired again, or for a minute.
+   * @return The solver.
+   */
+  private static ISolver slowSolver() {
+    return new SolverDecorator<ISolver>(SolverFactory.newDefault()) {
+      private static final long serialVersionUID = 1L;
+      private volatile boolean expired;
+
+      @Override
+      public int newVar(int howmany) {
+        try {
+          Thread.sleep(500);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        return super.newVar(howmany);
+      }
+
+      @Override
+      public boolean isSatisfiable() throws TimeoutException {
+        expired = false;
+        long deadline = System.nanoTime() + 60_000_000_000L;
+        while (!expired && System.nanoTime() < deadline) {
+          Thread.yield();
+        }
+        throw new TimeoutException();
+      }
+
+      @Override
+      public void expireTimeout() {
+        expired = true;
+      }
+    };
+  }
+
+  /**
+   * Tests that solutions are counted up to the limit, with and without candidate propagation.
+   */
+  @Test
+  public void testCountSolutions() {
+    KropkiPuzzle first = new KropkiPuzzle(firstWhiteDots, firstBlackDots);
+    KropkiPuzzle unsatisfiable = new KropkiPuzzle(new ArrayList<>(), unsatisfiableBlackDots);
+    KropkiPuzzle empty = new KropkiPuzzle(new ArrayList<>(), new ArrayList<>());
+    for (boolean propagate : new boolean[] {true, false}) {
+      SudokuModel model = new SudokuModel(AtMostOneEncoding.Pairwise, propagate);
+      assertTrue(model.isUnique(first));
+      assertEquals(1, model.countSolutions(first, 10));
+      assertEquals(0, model.countSolutions(unsatisfiable, 10));
+      assertEquals(5, model.countSolutions(empty, 5));
+    }
+  }
+
+  /**
+   * Tests that solutions are enumerated lazily without repeats, and survive a round trip through
+   * the binary sink.
+   */
+  @Test
+  public void testSolutionStream() throws IOException {
+    KropkiPuzzle first = new KropkiPuzzle(firstWhiteDots, firstBlackDots);
+    KropkiPuzzle empty = new KropkiPuzzle(new ArrayList<>(), new ArrayList<>());
+    SudokuModel model = new SudokuModel();
+    List<int[][]> firstSolutions = model.solutionStream(first).collect(Collectors.toList());
+    assertEquals(1, firstSolutions.size());
+    assertArrayEquals(firstTest, firstSolutions.get(0));
+    List<int[][]> emptySolutions = model.solutionStream(empty).limit(20)
+        .collect(Collectors.toList());
+    HashSet<String> distinct = new HashSet<>();
+    for (int[][] solution : emptySolutions) {
+      distinct.add(Arrays.deepToString(solution));
+    }
+    assertEquals(20, distinct.size());
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (SolutionSink sink = new SolutionSink(bytes, SudokuEncoder.getStandard())) {
+      for (int[][] solution : emptySolutions) {
+        sink.write(solution);
+      }
+    }
+    assertEquals(3 + 20 * 41, bytes.size());
+    Iterator<int[][]> read = SolutionSink.read(new ByteArrayInputStream(bytes.toByteArray()));
+    for (int[][] solution : emptySolutions) {
+      assertArrayEquals(solution, read.next());
+    }
+    assertFalse(read.hasNext());
+  }
+
+  /**
+   * Tests that puzzles and their solutions survive a round trip through archives of fixed width
+   * records, and that the archives can be solved in bulk.
+   */
+  @Test
+  public void testPuzzleArchive() throws IOException {
+    List<KropkiPuzzle> puzzles = Arrays.asList(new KropkiPuzzle(firstWhiteDots, firstBlackDots),
+        new KropkiPuzzle(secondWhiteDots, secondBlackDots),
+        new KropkiPuzzle(new ArrayList<>(), unsatisfiableBlackDots),
+        new KropkiPuzzle(SudokuEncoder.getStandard(), firstWhiteDots, new ArrayList<>(), false));
+    File puzzleFile = File.createTempFile("kropki", ".puzzles");
+    File solutionFile = File.createTempFile("kropki", ".solutions");
+    puzzleFile.deleteOnExit();
+    solutionFile.deleteOnExit();
+    try (PuzzleArchive archive = PuzzleArchive.create(puzzleFile.toPath(),
+        SudokuEncoder.getStandard(), PuzzleArchive.Content.Puzzles)) {
+      for (KropkiPuzzle puzzle : puzzles) {
+        archive.add(puzzle);
+      }
+    }
+    assertEquals(16 + 4 * 36, puzzleFile.length());
+    try (PuzzleArchive in = PuzzleArchive.open(puzzleFile.toPath());
+        PuzzleArchive out = PuzzleArchive.create(solutionFile.toPath(), in.getEncoder(),
+            PuzzleArchive.Content.Solutions)) {
+      assertEquals(4, in.getCount());
+      for (int i = 0; i < puzzles.size(); i++) {
+        assertEquals(puzzles.get(i), in.getPuzzle(i));
+      }
+      new BatchSolver(2, new PrintStream(new ByteArrayOutputStream())).solveAll(in, out);
+    }
+    assertEquals(16 + 4 * 42, solutionFile.length());
+    try (PuzzleArchive solutions = PuzzleArchive.open(solutionFile.toPath())) {
+      assertArrayEquals(firstTest, solutions.getResult(0).getSudoku());
+      assertArrayEquals(secondTest, solutions.getResult(1).getSudoku());
+      assertEquals(SolveResult.Status.Unsatisfiable, solutions.getResult(2).getStatus());
+      assertArrayEquals(new int[9][9], solutions.getResult(2).getSudoku());
+      assertEquals(SolveResult.Status.Satisfiable, solutions.getResult(3).getStatus());
+      assertEquals(45, Arrays.stream(solutions.getResult(3).getSudoku()[0]).sum());
+    }
+    // A timed out puzzle has to be told apart from one without a solution, to be retried
+    try (PuzzleArchive out = PuzzleArchive.create(solutionFile.toPath(),
+        SudokuEncoder.getStandard(), PuzzleArchive.Content.Solutions)) {
+      out.add(SolveResult.unsolved(SolveResult.Status.Timeout, SudokuEncoder.getStandard()));
+      out.add(SolveResult.unsolved(SolveResult.Status.Unsatisfiable, SudokuEncoder.getStandard()));
+    }
+    try (PuzzleArchive solutions = PuzzleArchive.open(solutionFile.toPath())) {
+      assertEquals(SolveResult.Status.Timeout, solutions.getResult(0).getStatus());
+      assertEquals(SolveResult.Status.Unsatisfiable, solutions.getResult(1).getStatus());
+    }
+  }
+
+  /**
+   * Tests that a puzzle with givens, which don't fit a record, is rejected by an archive.
+   */
+  @Test(expected = IllegalArgumentException.class)
+  public void testInvalidArchivePuzzle() throws IOException {
+    File file = File.createTempFile("kropki", ".puzzles");
+    file.deleteOnExit();
+    Map<Integer, Integer> givens = new HashMap<>();
+    givens.put(11, 4);
+    try (PuzzleArchive archive = PuzzleArchive.create(file.toPath(), SudokuEncoder.getStandard(),
+        PuzzleArchive.Content.Puzzles)) {
+      archive.add(new KropkiPuzzle(firstWhiteDots, firstBlackDots).withGivens(givens));
+    }
+  }
+
+  /**
+   * Tests that enumerating solutions finds each one exactly once, and adds nothing to the solver
+   * however many solutions it hands out.
+   */
+  @Test
+  public void testSolutionEnumeration() {
+    SudokuEncoder small = new SudokuEncoder(4, 2, 2);
+    KropkiPuzzle smallHidden = new KropkiPuzzle(small, new ArrayList<>(), new ArrayList<>(), false);
+    assertEquals(288, new SudokuModel().countSolutions(smallHidden, 1000));
+    assertEquals(288, new SudokuModel(AtMostOneEncoding.Pairwise, false)
+        .countSolutions(smallHidden, 1000));
+    KropkiPuzzle hidden = new KropkiPuzzle(SudokuEncoder.getStandard(), new ArrayList<>(),
+        new ArrayList<>(), false);
+    SolutionIterator solutions = new SudokuModel().solutions(hidden);
+    HashSet<String> distinct = new HashSet<>();
+    distinct.add(Arrays.deepToString(solutions.next()));
+    int constraints = solutions.constraintCount();
+    for (int i = 1; i < 2000; i++) {
+      distinct.add(Arrays.deepToString(solutions.next()));
+    }
+    assertEquals(2000, distinct.size());
+    assertEquals(constraints, solutions.constraintCount());
+  }
+
+  /**
+   * Tests that generated puzzles have a unique solution, that no dot can be removed from them, and
+   * that they don't depend on the number of threads.
+   */
+  @Test
+  public void testKropkiGenerator() {
+    SudokuEncoder encoder = new SudokuEncoder(6, 2, 3);
+    List<KropkiPuzzle> puzzles = new KropkiGenerator(encoder, 2, 7).generate(3);
+    assertEquals(puzzles, new KropkiGenerator(encoder, 1, 7).generate(3));
+    SudokuModel model = new SudokuModel();
+    for (KropkiPuzzle puzzle : puzzles) {
+      assertFalse(puzzle.isAllDotsGiven());
+      assertTrue(model.isUnique(puzzle));
+      List<Integer> whiteDots = new ArrayList<>();
+      for (CellPair pair : puzzle.getWhiteDotPairs()) {
+        whiteDots.add(pair.getFirstCell());
+        whiteDots.add(pair.getSecondCell());
+      }
+      List<Integer> blackDots = new ArrayList<>();
+      for (CellPair pair : puzzle.getBlackDotPairs()) {
+        blackDots.add(pair.getFirstCell());
+        blackDots.add(pair.getSecondCell());
+      }
+      for (int i = 0; i < whiteDots.size(); i += 2) {
+        List<Integer> fewer = new ArrayList<>(whiteDots);
+        fewer.subList(i, i + 2).clear();
+        assertFalse(model.isUnique(new KropkiPuzzle(encoder, fewer, blackDots, false)));
+      }
+      for (int i = 0; i < blackDots.size(); i += 2) {
+        List<Integer> fewer = new ArrayList<>(blackDots);
+        fewer.subList(i, i + 2).clear();
+        assertFalse(model.isUnique(new KropkiPuzzle(encoder, whiteDots, fewer, false)));
+      }
+    }
+  }
+
+  /**
+   * Tests that givens fix their cells in every engine, are pruned before encoding, and make a
+   * puzzle unsatisfiable when they clash.
+   */
+  @Test
+  public void testGivens() {
+    SudokuEncoder encoder = SudokuEncoder.getStandard();
+    Map<Integer, Integer> givens = KropkiPuzzle.parseGivens("11=" + firstTest[0][0] + " 55="
+        + firstTest[4][4] + " 99=" + firstTest[8][8], encoder);
+    assertEquals(3, givens.size());
+    KropkiPuzzle empty = new KropkiPuzzle(new ArrayList<>(), new ArrayList<>());
+    Map<Integer, Integer> rows = new HashMap<>();
+    for (int i = 1; i <= 3; i++) {
+      for (int j = 1; j <= 9; j++) {
+        rows.put(i * 10 + j, firstTest[i - 1][j - 1]);
+      }
+    }
+    KropkiPuzzle clued = empty.withGivens(givens);
+    assertEquals(clued, KropkiPuzzle.parse(" | | 11=" + firstTest[0][0] + " 55="
+        + firstTest[4][4] + " 99=" + firstTest[8][8], encoder));
+    KropkiSolver[] solvers = {new SudokuModel(),
+        new SudokuModel(AtMostOneEncoding.Pairwise, false),
+        new SudokuModel(SudokuModel.Engine.Backtracking), new KropkiSolverSession()};
+    for (KropkiSolver solver : solvers) {
+      int[][] sudoku = solver.solve(clued).getSudoku();
+      for (Map.Entry<Integer, Integer> given : givens.entrySet()) {
+        assertEquals((int) given.getValue(), valueAt(encoder, sudoku, given.getKey()));
+      }
+      KropkiPuzzle first = new KropkiPuzzle(firstWhiteDots, firstBlackDots).withGivens(rows);
+      assertArrayEquals(firstTest, solver.solve(first).getSudoku());
+    }
+    assertTrue(CandidatePropagator.propagate(empty.withGivens(rows)).eliminatedCount()
+        > CandidatePropagator.propagate(empty).eliminatedCount());
+    Map<Integer, Integer> clash = new HashMap<>();
+    clash.put(11, 5);
+    clash.put(19, 5);
+    for (KropkiSolver solver : solvers) {
+      assertEquals(SolveResult.Status.Unsatisfiable,
+          solver.solve(empty.withGivens(clash)).getStatus());
+    }
+  }
+
+  /**
+   * Tests that the conflict of an unsatisfiable puzzle is narrowed down to a minimal set of dots
+   * or givens, and that a satisfiable puzzle has no conflict.
+   */
+  @Test
+  public void testConflictExplainer() {
+    ConflictExplainer explainer = new ConflictExplainer();
+    KropkiPuzzle unsatisfiable = new KropkiPuzzle(new ArrayList<>(), unsatisfiableBlackDots);
+    ConflictExplanation explanation = explainer.explain(unsatisfiable);
+    assertEquals(SolveResult.Status.Unsatisfiable, explanation.getStatus());
+    assertTrue(explanation.isMinimal());
+    assertEquals(3, explanation.getBlackDotPairs().size());
+    assertTrue(unsatisfiable.getBlackDotPairs().containsAll(explanation.getBlackDotPairs()));
+    assertTrue(explanation.getWhiteDotPairs().isEmpty());
+    assertTrue(explanation.getNoDotPairs().isEmpty());
+    List<Integer> blackDots = new ArrayList<>();
+    for (CellPair pair : explanation.getBlackDotPairs()) {
+      blackDots.add(pair.getFirstCell());
+      blackDots.add(pair.getSecondCell());
+    }
+    KropkiPuzzle conflict = new KropkiPuzzle(SudokuEncoder.getStandard(), new ArrayList<>(),
+        blackDots, false);
+    assertEquals(SolveResult.Status.Unsatisfiable, new SudokuModel().solve(conflict).getStatus());
+    Map<Integer, Integer> clash = new HashMap<>();
+    clash.put(11, 5);
+    clash.put(19, 5);
+    clash.put(55, 1);
+    KropkiPuzzle empty = new KropkiPuzzle(new ArrayList<>(), new ArrayList<>());
+    ConflictExplanation givens = explainer.explain(empty.withGivens(clash));
+    assertEquals(new HashSet<>(Arrays.asList(11, 19)), givens.getGivenCells());
+    assertTrue(givens.isMinimal());
+    KropkiPuzzle first = new KropkiPuzzle(firstWhiteDots, firstBlackDots);
+    assertEquals(SolveResult.Status.Satisfiable, explainer.explain(first).getStatus());
+    // A variant constraint is named in the conflict rather than the innocent dots
+    KropkiPuzzle dotted = new KropkiPuzzle(SudokuEncoder.getStandard(), Arrays.asList(55, 56),
+        new ArrayList<>(), false);
+    KillerCage cage = new KillerCage(Arrays.asList(11, 13), 3);
+    Map<Integer, Integer> five = new HashMap<>();
+    five.put(11, 5);
+    ConflictExplanation caged = explainer.explain(
+        dotted.withGivens(five).withConstraints(Arrays.asList(cage)));
+    assertTrue(caged.isMinimal());
+    assertEquals(Arrays.asList(cage), caged.getConstraints());
+    assertEquals(new HashSet<>(Arrays.asList(11)), caged.getGivenCells());
+    assertTrue(caged.getWhiteDotPairs().isEmpty());
+    // A pair with both dots is white, as in every solve
+    KropkiPuzzle both = new KropkiPuzzle(SudokuEncoder.getStandard(), Arrays.asList(11, 12),
+        Arrays.asList(11, 12), false);
+    Map<Integer, Integer> apart = new HashMap<>();
+    apart.put(11, 1);
+    apart.put(12, 3);
+    ConflictExplanation white = explainer.explain(both.withGivens(apart));
+    assertEquals(new HashSet<>(Arrays.asList(new CellPair(11, 12))), white.getWhiteDotPairs());
+    assertTrue(white.getBlackDotPairs().isEmpty());
+    KillerCage overlapping = new KillerCage(Arrays.asList(11, 12), 3);
+    ConflictExplanation cages = explainer.explain(
+        dotted.withConstraints(Arrays.asList(cage, overlapping)));
+    assertTrue(cages.isMinimal());
+    assertEquals(Arrays.asList(cage, overlapping), cages.getConstraints());
+    assertTrue(cages.getWhiteDotPairs().isEmpty());
+    assertTrue(cages.getGivenCells().isEmpty());
+    KillerCage impossible = new KillerCage(Arrays.asList(11, 12), 2);
+    ConflictExplanation alone = explainer.explain(
+        dotted.withConstraints(Arrays.asList(cage, impossible)));
+    assertEquals(Arrays.asList(impossible), alone.getConstraints());
+    assertTrue(alone.getWhiteDotPairs().isEmpty());
+  }
+
+  /**
+   * Tests that a rotated puzzle is answered from the cache in its own orientation, that the least
+   * recently used result is evicted, and that results in the store survive reopening it.
+   */
+  @Test
+  public void testSolutionCache() throws IOException {
+    KropkiPuzzle first = new KropkiPuzzle(firstWhiteDots, firstBlackDots);
+    KropkiPuzzle rotated = new KropkiPuzzle(rotate(firstWhiteDots), rotate(firstBlackDots));
+    int[][] rotatedTest = new int[9][9];
+    for (int i = 0; i < 9; i++) {
+      for (int j = 0; j < 9; j++) {
+        rotatedTest[j][8 - i] = firstTest[i][j];
+      }
+    }
+    assertEquals(PuzzleFingerprint.of(first), PuzzleFingerprint.of(rotated));
+    assertArrayEquals(rotatedTest, new SudokuModel().solve(rotated).getSudoku());
+    // A pair with both dots is solved as a white dot, and pairs that aren't orthogonal are ignored
+    List<Integer> pair = Arrays.asList(11, 12);
+    KropkiPuzzle both = new KropkiPuzzle(pair, pair);
+    KropkiPuzzle white = new KropkiPuzzle(pair, new ArrayList<>());
+    KropkiPuzzle black = new KropkiPuzzle(new ArrayList<>(), pair);
+    KropkiPuzzle diagonal = new KropkiPuzzle(Arrays.asList(11, 22), new ArrayList<>());
+    assertEquals(PuzzleFingerprint.of(white), PuzzleFingerprint.of(both));
+    assertFalse(PuzzleFingerprint.of(black).equals(PuzzleFingerprint.of(both)));
+    assertEquals(PuzzleFingerprint.of(new KropkiPuzzle(new ArrayList<>(), new ArrayList<>())),
+        PuzzleFingerprint.of(diagonal));
+    try (SolutionCache memory = new SolutionCache(new SudokuModel(), 8)) {
+      for (KropkiPuzzle puzzle : Arrays.asList(black, both, diagonal)) {
+        SolveResult expected = new SudokuModel().solve(puzzle);
+        SolveResult cached = memory.solve(puzzle);
+        assertEquals(expected.getStatus(), cached.getStatus());
+        assertArrayEquals(expected.getSudoku(), cached.getSudoku());
+      }
+    }
+    File file = File.createTempFile("kropki", ".cache");
+    file.delete();
+    file.deleteOnExit();
+    try (SolutionCache cache = new SolutionCache(new SudokuModel(), 2,
+        new MappedSolutionStore(file.toPath(), SudokuEncoder.getStandard(), 64))) {
+      assertArrayEquals(firstTest, cache.solve(first).getSudoku());
+      assertArrayEquals(rotatedTest, cache.solve(rotated).getSudoku());
+      assertEquals(1, cache.getMisses());
+      assertEquals(1, cache.getMemoryHits());
+      KropkiPuzzle unsatisfiable = new KropkiPuzzle(new ArrayList<>(), unsatisfiableBlackDots);
+      KropkiPuzzle second = new KropkiPuzzle(secondWhiteDots, secondBlackDots);
+      assertEquals(SolveResult.Status.Unsatisfiable, cache.solve(unsatisfiable).getStatus());
+      assertArrayEquals(secondTest, cache.solve(second).getSudoku());
+      assertEquals(2, cache.size());
+      assertArrayEquals(firstTest, cache.solve(first).getSudoku());
+      assertEquals(1, cache.getStoreHits());
+    }
+    try (SolutionCache cache = new SolutionCache(new SudokuModel(), 2,
+        new MappedSolutionStore(file.toPath(), SudokuEncoder.getStandard(), 64))) {
+      assertArrayEquals(rotatedTest, cache.solve(rotated).getSudoku());
+      assertArrayEquals(secondTest, cache.solve(new KropkiPuzzle(secondWhiteDots,
+          secondBlackDots)).getSudoku());
+      assertEquals(2, cache.getStoreHits());
+      assertEquals(0, cache.getMisses());
+    }
+  }
+
+  /**
+   * Rotates a list of cell pairs on the standard board a quarter turn clockwise, keeping the
+   * smaller cell of each pair first.
+   * @param cells The list of cells, with every two cells forming a pair.
+   * @return The list of rotated cells.
+   */
+  private static ArrayList<Integer> rotate(ArrayList<Integer> cells) {
+    ArrayList<Integer> ans = new ArrayList<>();
+    for (int i = 0; i + 1 < cells.size(); i += 2) {
+      int first = (cells.get(i) % 10) * 10 + 10 - cells.get(i) / 10;
+      int second = (cells.get(i + 1) % 10) * 10 + 10 - cells.get(i + 1) / 10;
+      ans.add(Math.min(first, second));
+      ans.add(Math.max(first, second));
+    }
+    return ans;
+  }
+
+  /**
+   * Tests that variant constraints keep exactly the solutions of a puzzle that meet them, with
+   * either engine, and combine with one another and with the dots.
+   */
+  @Test
+  public void testVariantConstraints() {
+    SudokuEncoder small = new SudokuEncoder(4, 2, 2);
+    KropkiPuzzle hidden = new KropkiPuzzle(small, new ArrayList<>(), new ArrayList<>(), false);
+    List<int[][]> all = new SudokuModel().solutionStream(hidden).collect(Collectors.toList());
+    List<List<ConstraintPlugin>> variants = Arrays.asList(
+        Arrays.asList(RelationConstraint.thermometer(Arrays.asList(11, 12, 13))),
+        Arrays.asList(RelationConstraint.v(Arrays.asList(new CellPair(11, 21))),
+            new KillerCage(Arrays.asList(22, 33), 7)),
+        Arrays.asList(RelationConstraint.germanWhispers(Arrays.asList(11, 12))));
+    SudokuModel backtracking = new SudokuModel(SudokuModel.Engine.Backtracking);
+    for (List<ConstraintPlugin> constraints : variants) {
+      KropkiPuzzle puzzle = hidden.withConstraints(constraints);
+      int expected = 0;
+      for (int[][] solution : all) {
+        boolean kept = true;
+        for (ConstraintPlugin constraint : constraints) {
+          kept &= constraint.isSatisfied(small, solution);
+        }
+        expected += kept ? 1 : 0;
+      }
+      assertEquals(expected, new SudokuModel().countSolutions(puzzle, 1000));
+      SolveResult.Status status = expected > 0 ? SolveResult.Status.Satisfiable
+          : SolveResult.Status.Unsatisfiable;
+      for (SudokuModel model : new SudokuModel[] {new SudokuModel(), backtracking}) {
+        SolveResult result = model.solve(puzzle);
+        assertEquals(status, result.getStatus());
+        for (ConstraintPlugin constraint : constraints) {
+          assertTrue(expected == 0 || constraint.isSatisfied(small, result.getSudoku()));
+        }
+      }
+    }
+    KropkiPuzzle first = new KropkiPuzzle(firstWhiteDots, firstBlackDots);
+    KillerCage cage = new KillerCage(Arrays.asList(11, 12, 21), 4 + 6 + 7);
+    assertArrayEquals(firstTest, new SudokuModel().solve(
+        first.withConstraints(Arrays.asList(cage))).getSudoku());
+    KropkiPuzzle wrong = first.withConstraints(
+        Arrays.asList(new KillerCage(Arrays.asList(11, 12, 21), 18)));
+    assertEquals(SolveResult.Status.Unsatisfiable, new SudokuModel().solve(wrong).getStatus());
+    assertEquals(SolveResult.Status.Unsatisfiable, backtracking.solve(wrong).getStatus());
+    assertEquals(first.withConstraints(Arrays.asList(cage)),
+        first.withConstraints(Arrays.asList(new KillerCage(Arrays.asList(11, 12, 21), 17))));
+  }
+
+  /**
+   * Tests that a variant constraint that doesn't fit the board is rejected.
+   */
+  @Test(expected = IllegalArgumentException.class)
+  public void testInvalidVariantConstraint() {
+    new KropkiPuzzle(firstWhiteDots, firstBlackDots).withConstraints(
+        Arrays.asList(new KillerCage(Arrays.asList(11, 10), 3)));
+  }
+
+  /**
+   * Tests that the symmetries of a puzzle are detected, and that breaking them leaves exactly one
+   * solution of every class of symmetric solutions without losing any puzzle's answer.
+   */
+  @Test
+  public void testSymmetryBreaking() {
+    KropkiPuzzle empty = new KropkiPuzzle(new ArrayList<>(), new ArrayList<>());
+    KropkiPuzzle first = new KropkiPuzzle(firstWhiteDots, firstBlackDots);
+    assertEquals(8, SymmetryBreaker.forPuzzle(empty).groupSize());
+    assertEquals(1, SymmetryBreaker.forPuzzle(first).groupSize());
+    SudokuEncoder small = new SudokuEncoder(4, 2, 2);
+    KropkiPuzzle hidden = new KropkiPuzzle(small, new ArrayList<>(), new ArrayList<>(), false);
+    assertEquals(16, SymmetryBreaker.forPuzzle(hidden).groupSize());
+    SudokuModel breaking = new SudokuModel(SudokuModel.Engine.Sat, AtMostOneEncoding.Pairwise,
+        true, true);
+    List<int[][]> all = new SudokuModel().solutionStream(hidden).collect(Collectors.toList());
+    List<int[][]> classes = breaking.solutionStream(hidden).collect(Collectors.toList());
+    assertEquals(288, all.size());
+    HashSet<String> expected = new HashSet<>();
+    for (int[][] solution : all) {
+      expected.add(canonical(solution));
+    }
+    HashSet<String> found = new HashSet<>();
+    for (int[][] solution : classes) {
+      found.add(canonical(solution));
+    }
+    assertEquals(expected.size(), classes.size());
+    assertEquals(expected, found);
+    assertArrayEquals(firstTest, breaking.solve(first).getSudoku());
+    assertTrue(breaking.isUnique(first));
+    assertEquals(SolveResult.Status.Satisfiable, breaking.solve(empty).getStatus());
+    assertFalse(breaking.isUnique(empty));
+    KropkiPuzzle unsatisfiable = new KropkiPuzzle(new ArrayList<>(), unsatisfiableBlackDots);
+    assertEquals(SolveResult.Status.Unsatisfiable, breaking.solve(unsatisfiable).getStatus());
+    // The pairs with both dots are white, so the black dots don't mirror each other
+    KropkiPuzzle both = new KropkiPuzzle(small, Arrays.asList(13, 14),
+        Arrays.asList(11, 12, 13, 14), false);
+    assertEquals(48, new SudokuModel().countSolutions(both, 1000));
+    assertEquals(SolveResult.Status.Satisfiable, breaking.solve(both).getStatus());
+    // A diagonal pair has no dot rather than being rejected
+    KropkiPuzzle diagonal = new KropkiPuzzle(new ArrayList<>(), Arrays.asList(11, 22));
+    assertEquals(SolveResult.Status.Satisfiable, breaking.solve(diagonal).getStatus());
+  }
+
+  /**
+   * Gets the smallest image of a 4x4 board under every rotation and reflection, with or without
+   * reversing its values.
+   * @param sudoku The board.
+   * @return The smallest image, as a string.
+   */
+  private static String canonical(int[][] sudoku) {
+    String best = null;
+    for (int symmetry = 0; symmetry < 16; symmetry++) {
+      int[][] image = new int[4][4];
+      for (int i = 0; i < 4; i++) {
+        for (int j = 0; j < 4; j++) {
+          int row = symmetry % 8 < 4 ? i : j;
+          int column = symmetry % 8 < 4 ? j : i;
+          row = symmetry % 2 == 1 ? 3 - row : row;
+          column = symmetry % 4 >= 2 ? 3 - column : column;
+          image[row][column] = symmetry >= 8 ? 5 - sudoku[i][j] : sudoku[i][j];
+        }
+      }
+      String current = Arrays.deepToString(image);
+      if (best == null || current.compareTo(best) < 0) {
+        best = current;
+      }
+    }
+    return best;
+  }
+
+  /**
+   * Tests that a solution file ending partway through a solution is rejected rather than read as
+   * one solution shorter.
+   */
+  @Test(expected = IllegalArgumentException.class)
+  public void testTruncatedSolutionFile() throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (SolutionSink sink = new SolutionSink(bytes, SudokuEncoder.getStandard())) {
+      sink.write(firstTest);
+      sink.write(secondTest);
+    }
+    byte[] truncated = Arrays.copyOf(bytes.toByteArray(), bytes.size() - 10);
+    Iterator<int[][]> read = SolutionSink.read(new ByteArrayInputStream(truncated));
+    assertArrayEquals(firstTest, read.next());
+    read.next();
+  }
+
+  /**
+   * Tests that a given digit that doesn't fit the board is rejected.
+   */
+  @Test(expected = IllegalArgumentException.class)
+  public void testInvalidGiven() {
+    KropkiPuzzle.parseGivens("11=10", SudokuEncoder.getStandard());
+  }
+
+  /**
+   * Gets the value of a cell in a solved puzzle.
+   * @param encoder The shape of the board.
+   * @param sudoku The solved puzzle.
+   * @param cell The coordinates of the cell.
+   * @return The value of the cell.
+   */
+  private static int valueAt(SudokuEncoder encoder, int[][] sudoku, int cell) {
+    return sudoku[encoder.rowOfCell(cell) - 1][encoder.columnOfCell(cell) - 1];
   }
 
   @Test
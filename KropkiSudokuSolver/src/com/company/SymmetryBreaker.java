@@ -0,0 +1,244 @@
+package com.company;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import org.sat4j.specs.ContradictionException;
+import org.sat4j.specs.ISolver;
+import org.sat4j.specs.IVecInt;
+
+/**
+ * Breaks the symmetries of a Kropki sudoku puzzle with lex-leader clauses, so that the solver only
+ * explores one solution of every class of symmetric solutions. The symmetry group of a puzzle is
+ * every rotation or reflection of the board, from its BoardSymmetries, possibly combined with
+ * reversing the values, v to size + 1 - v, that maps its white dots, black dots, pairs without a
+ * dot and givens onto themselves. Reversing the values keeps consecutive values consecutive, but
+ * not doubles, so it is only a symmetry of puzzles with no constraint on doubles, meaning no black
+ * dots and either some dots hidden or no pair without a dot. Puzzles with variant constraints
+ * are left with no symmetry but the identity.
+ *
+ * Each symmetry permutes the cell variables, and the lex-leader clauses only allow the solutions
+ * whose variables, in order, are no larger than their image under every symmetry. Variables a
+ * symmetry maps onto themselves are skipped. As every element of the group is used, not just its
+ * generators, exactly one solution of every class is left, so counting the solutions counts the
+ * classes.
+ */
+public final class SymmetryBreaker {
+
+  private final SudokuEncoder encoder;
+  private final List<int[]> permutations;
+
+  /**
+   * Constructs a breaker.
+   * @param encoder The shape of the board.
+   * @param permutations The image of every cell variable, indexed from 1, under every symmetry
+   * but the identity.
+   */
+  private SymmetryBreaker(SudokuEncoder encoder, List<int[]> permutations) {
+    this.encoder = encoder;
+    this.permutations = permutations;
+  }
+
+  /**
+   * Finds the symmetries of a puzzle.
+   * @param puzzle The puzzle.
+   * @return The breaker of its symmetries.
+   */
+  public static SymmetryBreaker forPuzzle(KropkiPuzzle puzzle) {
+    SudokuEncoder encoder = puzzle.getEncoder();
+    if (!puzzle.getConstraints().isEmpty()) {
+      return new SymmetryBreaker(encoder, new ArrayList<>());
+    }
+    BoardSymmetries symmetries = BoardSymmetries.forBoard(encoder);
+    int size = encoder.getSize();
+    // The symmetries number the pairs like the encoder, so the dots come from the puzzle's table
+    byte[] dots = new byte[symmetries.pairCount()];
+    for (int i = 0; i < dots.length; i++) {
+      dots[i] = puzzle.dotAt(i);
+    }
+    int[] givens = new int[symmetries.cellCount()];
+    for (Map.Entry<Integer, Integer> given : puzzle.getGivens().entrySet()) {
+      givens[symmetries.index(given.getKey())] = given.getValue();
+    }
+    boolean reversible = reversible(puzzle, size, dots);
+    List<int[]> permutations = new ArrayList<>();
+    for (int s = 0; s < symmetries.count(); s++) {
+      for (boolean reverse : new boolean[] {false, true}) {
+        if ((s == 0 && !reverse) || (reverse && !reversible)
+            || !maps(symmetries, s, reverse, size, dots, givens)) {
+          continue;
+        }
+        int[] cells = symmetries.cells(s);
+        int[] permutation = new int[encoder.numberOfVariables() + 1];
+        for (int i = 0; i < cells.length; i++) {
+          for (int value = 1; value <= size; value++) {
+            int image = reverse ? size + 1 - value : value;
+            permutation[encoder.var(i / size + 1, i % size + 1, value)] =
+                encoder.var(cells[i] / size + 1, cells[i] % size + 1, image);
+          }
+        }
+        permutations.add(permutation);
+      }
+    }
+    return new SymmetryBreaker(encoder, permutations);
+  }
+
+  /**
+   * Getter for the size of the symmetry group.
+   * @return The number of symmetries, including the identity.
+   */
+  public int groupSize() {
+    return permutations.size() + 1;
+  }
+
+  /**
+   * Counts the extra variables the lex-leader clauses need, one for every variable a symmetry
+   * moves but the last.
+   * @return The number of extra variables.
+   */
+  public int auxiliaryVariables() {
+    int count = 0;
+    for (int[] permutation : permutations) {
+      count += Math.max(0, moved(permutation) - 1);
+    }
+    return count;
+  }
+
+  /**
+   * Adds the lex-leader clauses of every symmetry. The extra variable e of each moved variable x,
+   * with image y, is forced true while every variable up to x equals its image, and while the
+   * previous one is true x can't be larger than y.
+   * @param solver The solver to add the clauses to.
+   * @param clause The buffer used to build each clause.
+   * @param firstAuxiliary The first of the auxiliaryVariables() extra variables to use.
+   * @throws ContradictionException If the solver finds the clauses trivially unsatisfiable.
+   */
+  public void addTo(ISolver solver, IVecInt clause, int firstAuxiliary)
+      throws ContradictionException {
+    int next = firstAuxiliary;
+    for (int[] permutation : permutations) {
+      int previous = 0;
+      int left = moved(permutation);
+      for (int x = 1; x <= encoder.numberOfVariables(); x++) {
+        int y = permutation[x];
+        if (y == x) {
+          continue;
+        }
+        left--;
+        clause.clear();
+        push(clause, -previous);
+        clause.push(-x);
+        clause.push(y);
+        solver.addClause(clause);
+        if (left == 0) {
+          break;
+        }
+        int equal = next++;
+        clause.clear();
+        push(clause, -previous);
+        clause.push(-x);
+        clause.push(-y);
+        clause.push(equal);
+        solver.addClause(clause);
+        clause.clear();
+        push(clause, -previous);
+        clause.push(x);
+        clause.push(y);
+        clause.push(equal);
+        solver.addClause(clause);
+        previous = equal;
+      }
+    }
+  }
+
+  /**
+   * Adds a literal to a clause, unless it stands for no variable.
+   * @param clause The clause.
+   * @param literal The literal, or 0.
+   */
+  private static void push(IVecInt clause, int literal) {
+    if (literal != 0) {
+      clause.push(literal);
+    }
+  }
+
+  /**
+   * Counts the variables a symmetry moves.
+   * @param permutation The image of every cell variable.
+   * @return The number of variables that aren't their own image.
+   */
+  private static int moved(int[] permutation) {
+    int count = 0;
+    for (int x = 1; x < permutation.length; x++) {
+      if (permutation[x] != x) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Checks whether reversing the values keeps every constraint of a puzzle.
+   * @param puzzle The puzzle.
+   * @param size The size of the board.
+   * @param dots The dot of every pair.
+   * @return True if no constraint depends on doubles.
+   */
+  private static boolean reversible(KropkiPuzzle puzzle, int size, byte[] dots) {
+    boolean blackDots = false;
+    boolean noDots = false;
+    for (byte dot : dots) {
+      blackDots |= dot == KropkiPuzzle.BLACK_DOT;
+      noDots |= dot == KropkiPuzzle.NO_DOT && puzzle.isAllDotsGiven();
+    }
+    if (!blackDots && !noDots) {
+      return true;
+    }
+    for (int a = 1; a <= size; a++) {
+      for (int b = 1; b <= size; b++) {
+        if (isDouble(a, b) != isDouble(size + 1 - a, size + 1 - b)) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Checks whether one value is double the other.
+   * @param a The first value.
+   * @param b The second value.
+   * @return True if either value is double the other.
+   */
+  private static boolean isDouble(int a, int b) {
+    return a == 2 * b || b == 2 * a;
+  }
+
+  /**
+   * Checks whether a symmetry maps the dots and givens of a puzzle onto themselves.
+   * @param symmetries The symmetries of the board.
+   * @param symmetry The symmetry of the board.
+   * @param reverse Whether the values are reversed too.
+   * @param size The size of the board.
+   * @param dots The dot of every pair, 0 for none, 1 for white and 2 for black.
+   * @param givens The given digit of every cell, or 0.
+   * @return True if the puzzle is its own image.
+   */
+  private static boolean maps(BoardSymmetries symmetries, int symmetry, boolean reverse, int size,
+      byte[] dots, int[] givens) {
+    int[] pairs = symmetries.pairs(symmetry);
+    for (int i = 0; i < dots.length; i++) {
+      if (dots[pairs[i]] != dots[i]) {
+        return false;
+      }
+    }
+    int[] cells = symmetries.cells(symmetry);
+    for (int i = 0; i < givens.length; i++) {
+      int image = givens[i] == 0 || !reverse ? givens[i] : size + 1 - givens[i];
+      if (givens[cells[i]] != image) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
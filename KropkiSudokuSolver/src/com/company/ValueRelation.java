@@ -0,0 +1,299 @@
+package com.company;
+
+import java.util.BitSet;
+import java.util.concurrent.ConcurrentHashMap;
+import org.sat4j.specs.ContradictionException;
+import org.sat4j.specs.ISolver;
+import org.sat4j.specs.IVecInt;
+
+/**
+ * A binary relation over the values of two cells, such as the consecutive values of a white dot or
+ * the values of a black dot where one is double the other. A relation is compiled once per board
+ * size into the smallest set of clauses that allows exactly its pairs of values, kept as primitive
+ * arrays, so applying it to a pair of cells only offsets each literal by the variables of the two
+ * cells.
+ *
+ * Either every value of each cell needs one of the values it is related to in the other cell, as
+ * support clauses, or every pair of values that isn't related is ruled out, as conflict clauses.
+ * Both are exact given that every cell holds a single value, and the form with fewer literals is
+ * used, so sparse relations get support clauses and dense ones conflict clauses. Relations are
+ * equal when they allow the same pairs of values on the largest board, whatever their names.
+ */
+public final class ValueRelation {
+
+  /**
+   * Decides which pairs of values a relation allows.
+   */
+  public interface Rule {
+
+    /**
+     * Checks whether two values are related.
+     * @param first The value of the first cell.
+     * @param second The value of the second cell.
+     * @return True if the first cell can hold the first value while the second holds the second.
+     */
+    boolean allows(int first, int second);
+  }
+
+  private static final int LARGEST_SIZE = 99;
+
+  private final String name;
+  private final Rule rule;
+  private final ConcurrentHashMap<Integer, int[][]> compiled;
+  private volatile BitSet allowed;
+
+  /**
+   * Constructs a relation.
+   * @param name The name of the relation.
+   * @param rule The pairs of values the relation allows.
+   */
+  private ValueRelation(String name, Rule rule) {
+    this.name = name;
+    this.rule = rule;
+    this.compiled = new ConcurrentHashMap<>();
+  }
+
+  /**
+   * Creates a relation.
+   * @param name The name of the relation.
+   * @param rule The pairs of values the relation allows.
+   * @return The relation.
+   */
+  public static ValueRelation of(String name, Rule rule) {
+    return new ValueRelation(name, rule);
+  }
+
+  /**
+   * Creates the relation of values that differ by a given amount, so a difference of 1 is the
+   * relation of a white dot.
+   * @param difference The difference between the values.
+   * @return The relation.
+   */
+  public static ValueRelation difference(int difference) {
+    return of("difference " + difference, (a, b) -> Math.abs(a - b) == difference);
+  }
+
+  /**
+   * Creates the relation of values where one is a multiple of the other, so a ratio of 2 is the
+   * relation of a black dot.
+   * @param ratio The ratio between the values.
+   * @return The relation.
+   */
+  public static ValueRelation ratio(int ratio) {
+    return of("ratio " + ratio, (a, b) -> a == b * ratio || b == a * ratio);
+  }
+
+  /**
+   * Creates the relation of values adding up to a given sum.
+   * @param sum The sum of the values.
+   * @return The relation.
+   */
+  public static ValueRelation sum(int sum) {
+    return of("sum " + sum, (a, b) -> a + b == sum);
+  }
+
+  /**
+   * Creates the relation allowing the pairs of values this relation or another one allows.
+   * @param other The other relation.
+   * @return The union of both relations.
+   */
+  public ValueRelation or(ValueRelation other) {
+    return of(name + " or " + other.name, (a, b) -> rule.allows(a, b) || other.rule.allows(a, b));
+  }
+
+  /**
+   * Creates the relation allowing every pair of values this relation doesn't.
+   * @return The complement of this relation.
+   */
+  public ValueRelation negate() {
+    return of("not " + name, (a, b) -> !rule.allows(a, b));
+  }
+
+  /**
+   * Creates the relation with the cells swapped.
+   * @return The relation allowing the second value with the first whenever this one allows the
+   * first with the second.
+   */
+  public ValueRelation reverse() {
+    return of("reverse " + name, (a, b) -> rule.allows(b, a));
+  }
+
+  /**
+   * Checks whether two values are related.
+   * @param first The value of the first cell.
+   * @param second The value of the second cell.
+   * @return True if the relation allows the pair of values.
+   */
+  public boolean allows(int first, int second) {
+    return rule.allows(first, second);
+  }
+
+  /**
+   * Builds the values each value is related to, as bitmasks.
+   * @param size The size of the board, at most 64.
+   * @return The bitmask of the values of the second cell related to each value of the first,
+   * indexed by value, with bit v - 1 standing for v.
+   */
+  public long[] supportMasks(int size) {
+    long[] masks = new long[size + 1];
+    for (int a = 1; a <= size; a++) {
+      for (int b = 1; b <= size; b++) {
+        if (rule.allows(a, b)) {
+          masks[a] |= 1L << (b - 1);
+        }
+      }
+    }
+    return masks;
+  }
+
+  /**
+   * Counts the clauses the relation compiles to.
+   * @param size The size of the board.
+   * @return The number of clauses added for every pair of cells.
+   */
+  public int clauseCount(int size) {
+    return compile(size)[0].length - 1;
+  }
+
+  /**
+   * Adds the clauses of the relation between two cells to a solver.
+   * @param solver The solver to add the clauses to.
+   * @param clause The buffer used to build each clause.
+   * @param encoder The shape of the board.
+   * @param pair The cell pair to be constrained upon.
+   * @param selector The selector guarding the clauses, or KropkiClauses.NO_SELECTOR.
+   * @throws ContradictionException If the solver finds the clauses trivially unsatisfiable.
+   */
+  public void addTo(ISolver solver, IVecInt clause, SudokuEncoder encoder, CellPair pair,
+      int selector) throws ContradictionException {
+    int size = encoder.getSize();
+    int[][] tables = compile(size);
+    int[] offsets = tables[0];
+    int[] literals = tables[1];
+    int firstBase = encoder.cellVar(pair.getFirstCell(), 0);
+    int secondBase = encoder.cellVar(pair.getSecondCell(), 0);
+    for (int c = 0; c < offsets.length - 1; c++) {
+      clause.clear();
+      for (int l = offsets[c]; l < offsets[c + 1]; l++) {
+        int value = Math.abs(literals[l]);
+        int var = value <= size ? firstBase + value : secondBase + value - size;
+        clause.push(literals[l] < 0 ? -var : var);
+      }
+      if (selector != KropkiClauses.NO_SELECTOR) {
+        clause.push(-selector);
+      }
+      solver.addClause(clause);
+    }
+  }
+
+  /**
+   * Gets the clauses of the relation on a board size, compiling them on the first call.
+   * @param size The size of the board.
+   * @return The offset of every clause, plus the end of the last one, and then the literals, with
+   * 1 to size standing for the values of the first cell and size + 1 to 2 * size for the second.
+   */
+  private int[][] compile(int size) {
+    int[][] tables = compiled.get(size);
+    if (tables == null) {
+      tables = compiled.computeIfAbsent(size, this::build);
+    }
+    return tables;
+  }
+
+  /**
+   * Builds both clause forms of the relation on a board size, and keeps the smaller one.
+   * @param size The size of the board.
+   * @return The offsets and literals of the clauses.
+   */
+  private int[][] build(int size) {
+    int related = 0;
+    int supportLiterals = 2 * size;
+    for (int a = 1; a <= size; a++) {
+      for (int b = 1; b <= size; b++) {
+        if (rule.allows(a, b)) {
+          related++;
+        }
+      }
+    }
+    supportLiterals += 2 * related;
+    int conflictLiterals = 2 * (size * size - related);
+    int count = supportLiterals <= conflictLiterals ? 2 * size : size * size - related;
+    int[] offsets = new int[count + 1];
+    int[] literals = new int[Math.min(supportLiterals, conflictLiterals)];
+    int c = 0;
+    int l = 0;
+    if (supportLiterals <= conflictLiterals) {
+      for (int v = 1; v <= size; v++) {
+        // The value in the first cell needs support in the second, and the other way around
+        literals[l++] = -v;
+        for (int w = 1; w <= size; w++) {
+          if (rule.allows(v, w)) {
+            literals[l++] = size + w;
+          }
+        }
+        offsets[++c] = l;
+        literals[l++] = -(size + v);
+        for (int w = 1; w <= size; w++) {
+          if (rule.allows(w, v)) {
+            literals[l++] = w;
+          }
+        }
+        offsets[++c] = l;
+      }
+    } else {
+      for (int v = 1; v <= size; v++) {
+        for (int w = 1; w <= size; w++) {
+          if (!rule.allows(v, w)) {
+            literals[l++] = -v;
+            literals[l++] = -(size + w);
+            offsets[++c] = l;
+          }
+        }
+      }
+    }
+    return new int[][] {offsets, literals};
+  }
+
+  @Override
+  public String toString() {
+    return name;
+  }
+
+  /**
+   * Gets the pairs of values the relation allows on the largest board, building them on the first
+   * call.
+   * @return The bit of every allowed pair, with bit (a - 1) * LARGEST_SIZE + b - 1 standing for
+   * the values a and b.
+   */
+  private BitSet allowed() {
+    BitSet pairs = allowed;
+    if (pairs == null) {
+      pairs = new BitSet(LARGEST_SIZE * LARGEST_SIZE);
+      for (int a = 1; a <= LARGEST_SIZE; a++) {
+        for (int b = 1; b <= LARGEST_SIZE; b++) {
+          if (rule.allows(a, b)) {
+            pairs.set((a - 1) * LARGEST_SIZE + b - 1);
+          }
+        }
+      }
+      allowed = pairs;
+    }
+    return pairs;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o instanceof ValueRelation) {
+      return this.allowed().equals(((ValueRelation) o).allowed());
+    }
+    return false;
+  }
+
+  @Override
+  public int hashCode() {
+    return allowed().hashCode();
+  }
+}